@@ -1,7 +1,12 @@
 package dev.vertcode.vertstorage;
 
+import org.jetbrains.annotations.Nullable;
+
 public abstract class StorageObject<T> {
 
+    private transient boolean partial;
+    private transient Object[] storedValues;
+
     /**
      * Get the ID of the object.
      *
@@ -9,4 +14,41 @@ public abstract class StorageObject<T> {
      */
     public abstract T getIdentifier();
 
+    /**
+     * Returns whether this object was loaded with only some of its fields (see
+     * {@link dev.vertcode.vertstorage.query.Query#select(String...)}). Partial objects
+     * can't be cached or upserted, since that would overwrite the fields that weren't loaded.
+     *
+     * @return Whether this object is partial
+     */
+    public boolean isPartial() {
+        return this.partial;
+    }
+
+    /**
+     * Marks this object as partial, this is done by the storage services when they load a projection.
+     */
+    void markPartial() {
+        this.partial = true;
+    }
+
+    /**
+     * Gets the values of the storage fields as they were when this object was loaded or last written,
+     * this is used by the storage services to only write the fields that changed.
+     *
+     * @return The stored values or null if they aren't tracked
+     */
+    public @Nullable Object[] getStoredValues() {
+        return this.storedValues;
+    }
+
+    /**
+     * Sets the values of the storage fields as they are in the database, this is done by the storage services.
+     *
+     * @param storedValues The stored values
+     */
+    void setStoredValues(@Nullable Object[] storedValues) {
+        this.storedValues = storedValues;
+    }
+
 }
@@ -0,0 +1,35 @@
+package dev.vertcode.vertstorage;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Gives the storage services access to the state they keep on a {@link StorageObject}. This state
+ * must only be changed by the services, so it can't be changed through the object itself.
+ */
+@UtilityClass
+@ApiStatus.Internal
+public class StorageObjects {
+
+    /**
+     * Marks the object as partial, see {@link StorageObject#isPartial()}.
+     *
+     * @param object The object
+     */
+    public static void markPartial(StorageObject<?> object) {
+        object.markPartial();
+    }
+
+    /**
+     * Sets the values of the storage fields of the object as they are in the database, see
+     * {@link StorageObject#getStoredValues()}.
+     *
+     * @param object       The object
+     * @param storedValues The stored values
+     */
+    public static void setStoredValues(StorageObject<?> object, @Nullable Object[] storedValues) {
+        object.setStoredValues(storedValues);
+    }
+
+}
@@ -3,59 +3,45 @@ package dev.vertcode.vertstorage.adapters;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
-import dev.vertcode.vertstorage.annotations.StorageField;
+import dev.vertcode.vertstorage.mapping.StorageClassModel;
+import dev.vertcode.vertstorage.mapping.StorageFieldModel;
+import dev.vertcode.vertstorage.mapping.StorageMapper;
 import dev.vertcode.vertstorage.util.StorageUtil;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
 
 public class StorageObjectTypeAdapter<T> extends TypeAdapter<T> {
 
-    private final Class<T> clazz;
-    private final Map<String, Field> fieldMappings = new HashMap<>();
+    private final StorageClassModel<T> model;
+    private final @Nullable TypeAdapter<T> generatedAdapter;
 
     public StorageObjectTypeAdapter(Class<T> clazz) {
-        this.clazz = clazz;
+        this.model = StorageClassModel.of(clazz);
 
-        for (Field field : clazz.getDeclaredFields()) {
-            // Check if the field isn't annotated with StorageField
-            if (!field.isAnnotationPresent(StorageField.class)) {
-                continue;
-            }
-
-            // Get the StorageField annotation & the column name
-            StorageField storageField = field.getAnnotation(StorageField.class);
-            String columnName = storageField.columnName();
-
-            // Put the field into the field mappings
-            fieldMappings.put(columnName, field);
-        }
+        // Prefer the type adapter of the generated mapper, it accesses the fields directly
+        StorageMapper<T> mapper = this.model.getMapper();
+        this.generatedAdapter = mapper == null ? null : mapper.getTypeAdapter();
     }
 
     @Override
     public void write(JsonWriter out, T value) throws IOException {
+        if (this.generatedAdapter != null) {
+            this.generatedAdapter.write(out, value);
+            return;
+        }
+
         // Begin the object
         out.beginObject();
 
-        // Loop through the field mappings
-        for (Map.Entry<String, Field> entry : fieldMappings.entrySet()) {
-            // Get the column name & the field
-            String columnName = entry.getKey();
-            Field field = entry.getValue();
-
-            // Set the field accessible
-            field.setAccessible(true);
-
+        // Loop through the storage fields
+        for (StorageFieldModel field : this.model.getFields()) {
             try {
-
                 // Get the field value
                 Object fieldValue = field.get(value);
 
                 // Write the column name
-                out.name(columnName);
+                out.name(field.getColumnName());
 
                 // Parse the fieldValue to a String
                 String json = StorageUtil.getGson().toJson(fieldValue);
@@ -72,29 +58,28 @@ public class StorageObjectTypeAdapter<T> extends TypeAdapter<T> {
 
     @Override
     public T read(JsonReader in) throws IOException {
+        if (this.generatedAdapter != null) {
+            return this.generatedAdapter.read(in);
+        }
+
         try {
-            T instance = clazz.getConstructor().newInstance();
+            T instance = this.model.newInstance();
 
             // Read the object
             in.beginObject();
             // Iterate through the object
             while (in.hasNext()) {
                 String columnName = in.nextName();
-                Field field = fieldMappings.get(columnName);
+                StorageFieldModel field = this.model.getFieldByColumn(columnName);
                 // Check if the field is null
                 if (field == null) {
                     in.skipValue();
                     continue;
                 }
 
-                // Set the field accessible
-                field.setAccessible(true);
-
                 try {
-                    // Get the generic type of the field
-                    Type genericType = field.getGenericType();
                     // Get the field value
-                    Object fieldValue = StorageUtil.getGson().fromJson(in, genericType);
+                    Object fieldValue = StorageUtil.getGson().fromJson(in, field.getGenericType());
 
                     // Set the field value
                     field.set(instance, fieldValue);
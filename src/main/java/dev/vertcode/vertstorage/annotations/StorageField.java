@@ -15,4 +15,12 @@ public @interface StorageField {
      * @return The name of the column
      */
     String columnName();
+
+    /**
+     * Whether the cached values of this field should be kept in an in-memory index, so
+     * field lookups can be answered from the cache (see {@code StorageService#findOne}).
+     *
+     * @return Whether the field is indexed
+     */
+    boolean indexed() default false;
 }
@@ -34,6 +34,8 @@ public class MySQLStorageDatabase extends SQLStorageDatabase {
         hikariConfig.setMaxLifetime(1800000);
         hikariConfig.setIdleTimeout(300000);
         hikariConfig.setAutoCommit(false);
+        // Let the driver fetch the rows of streams in batches, instead of reading the whole result at once
+        hikariConfig.addDataSourceProperty("useCursorFetch", "true");
 
         this.dataSource = new HikariDataSource(hikariConfig);
     }
@@ -0,0 +1,74 @@
+package dev.vertcode.vertstorage.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids from blocks reserved through an {@link IdBlockSource} (the hi/lo algorithm). Ids within a
+ * block are handed out from memory, so the backend is only contacted once per block instead of for every id.
+ * <p>
+ * The ids that are left in the current block when the application stops are never handed out, so the ids
+ * are unique and increasing within a node, but they can have gaps.
+ */
+public class IdAllocator {
+
+    private final IdBlockSource source;
+    private final int blockSize;
+    private volatile Block block = new Block(0, 0);
+
+    public IdAllocator(IdBlockSource source, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("The block size must be positive!");
+        }
+
+        this.source = source;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Gets the next id, a new block is reserved when the current block is used up.
+     *
+     * @return The next id
+     */
+    public long nextId() {
+        while (true) {
+            Block block = this.block;
+            long id = block.next.getAndIncrement();
+            if (id < block.end) {
+                return id;
+            }
+
+            // Only one thread reserves the next block, the others retry with the block it reserved
+            synchronized (this) {
+                if (this.block == block) {
+                    long first = this.source.reserveBlock(this.blockSize);
+                    this.block = new Block(first, first + this.blockSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of ids that are reserved per block.
+     *
+     * @return The block size
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * A reserved block of ids.
+     */
+    private static class Block {
+
+        private final AtomicLong next;
+        private final long end;
+
+        public Block(long first, long end) {
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package dev.vertcode.vertstorage.id;
+
+/**
+ * Reserves blocks of ids from a shared counter, e.g. a counter row in the database. Every block is
+ * reserved atomically, so multiple nodes that use the same counter never get the same ids.
+ */
+@FunctionalInterface
+public interface IdBlockSource {
+
+    /**
+     * Reserves the next block of ids.
+     *
+     * @param blockSize The amount of ids to reserve
+     * @return The first id of the block, the block contains the ids from this id up to (but not including) this id + the block size
+     */
+    long reserveBlock(int blockSize);
+
+}
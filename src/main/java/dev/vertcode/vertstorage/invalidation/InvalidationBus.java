@@ -0,0 +1,184 @@
+package dev.vertcode.vertstorage.invalidation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Sends the ids that were changed on this node to the other nodes and applies the ids the other
+ * nodes changed, through an {@link InvalidationChannel}. A single bus is usually shared by all the
+ * services of a node.
+ * <p>
+ * Ids are not published one by one, they're collected per table for a short delay (or until the
+ * batch is full) and published as a single message.
+ */
+public class InvalidationBus {
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final InvalidationChannel channel;
+    private final long batchDelayMillis;
+    private final int maximumBatchSize;
+    private final Consumer<InvalidationMessage> subscriber = this::receive;
+
+    private final Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> pendingIds = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledFlush;
+    private int pendingCount;
+
+    public InvalidationBus(InvalidationChannel channel) {
+        this(channel, 50, TimeUnit.MILLISECONDS, 500);
+    }
+
+    public InvalidationBus(InvalidationChannel channel, long batchDelay, TimeUnit batchDelayUnit, int maximumBatchSize) {
+        if (maximumBatchSize <= 0) {
+            throw new IllegalArgumentException("The maximum batch size must be positive!");
+        }
+
+        this.channel = channel;
+        this.batchDelayMillis = batchDelayUnit.toMillis(batchDelay);
+        this.maximumBatchSize = maximumBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VertStorage Invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        channel.subscribe(this.subscriber);
+    }
+
+    /**
+     * Queues the id to be invalidated on the other nodes, it's published with the next batch.
+     *
+     * @param tableName The name of the table the id belongs to
+     * @param id        The id that was changed
+     */
+    public void invalidate(String tableName, String id) {
+        boolean flush;
+
+        synchronized (this) {
+            if (this.pendingIds.computeIfAbsent(tableName, ignored -> new LinkedHashSet<>()).add(id)) {
+                this.pendingCount++;
+            }
+
+            // Publish right away when the batch is full, otherwise make sure a flush is scheduled
+            flush = this.pendingCount >= this.maximumBatchSize;
+            if (!flush && this.scheduledFlush == null) {
+                this.scheduledFlush = this.scheduler.schedule(this::flush, this.batchDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (flush) {
+            flush();
+        }
+    }
+
+    /**
+     * Publishes all the queued ids right away.
+     */
+    public void flush() {
+        Map<String, Set<String>> batch;
+
+        synchronized (this) {
+            if (this.scheduledFlush != null) {
+                this.scheduledFlush.cancel(false);
+                this.scheduledFlush = null;
+            }
+            if (this.pendingIds.isEmpty()) {
+                return;
+            }
+
+            batch = new HashMap<>(this.pendingIds);
+            this.pendingIds.clear();
+            this.pendingCount = 0;
+        }
+
+        for (Map.Entry<String, Set<String>> entry : batch.entrySet()) {
+            try {
+                this.channel.publish(new InvalidationMessage(this.nodeId, entry.getKey(), new ArrayList<>(entry.getValue())));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Registers a handler for the ids of the given table that are invalidated by other nodes.
+     *
+     * @param tableName The name of the table
+     * @param handler   The handler to call for every invalidated id
+     */
+    public void register(String tableName, Consumer<String> handler) {
+        this.handlers.computeIfAbsent(tableName, ignored -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    /**
+     * Removes the given handler of the table.
+     *
+     * @param tableName The name of the table
+     * @param handler   The handler to remove
+     */
+    public void unregister(String tableName, Consumer<String> handler) {
+        List<Consumer<String>> tableHandlers = this.handlers.get(tableName);
+        if (tableHandlers != null) {
+            tableHandlers.remove(handler);
+        }
+    }
+
+    /**
+     * Publishes the queued ids and stops listening to the channel.
+     */
+    public void close() {
+        flush();
+
+        this.channel.unsubscribe(this.subscriber);
+        this.scheduler.shutdown();
+    }
+
+    /**
+     * Gets the id of this node, messages published by this node carry this id.
+     *
+     * @return The id of this node
+     */
+    public String getNodeId() {
+        return this.nodeId;
+    }
+
+    /**
+     * Applies a message received from the channel, messages published by this node are ignored.
+     *
+     * @param message The received message
+     */
+    private void receive(InvalidationMessage message) {
+        if (this.nodeId.equals(message.getSourceId())) {
+            return;
+        }
+
+        List<Consumer<String>> tableHandlers = this.handlers.get(message.getTableName());
+        if (tableHandlers == null) {
+            return;
+        }
+
+        for (String id : message.getIds()) {
+            for (Consumer<String> handler : tableHandlers) {
+                try {
+                    handler.accept(id);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+}
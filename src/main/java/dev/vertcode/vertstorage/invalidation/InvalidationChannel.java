@@ -0,0 +1,33 @@
+package dev.vertcode.vertstorage.invalidation;
+
+import java.util.function.Consumer;
+
+/**
+ * A channel that carries {@link InvalidationMessage}s between the nodes (JVMs) that use the same
+ * database, e.g. a Redis pub/sub channel or a message queue. Every message that is published should
+ * be delivered to the subscribers of every node, including the node that published it.
+ */
+public interface InvalidationChannel {
+
+    /**
+     * Publishes the message to all the nodes.
+     *
+     * @param message The message to publish
+     */
+    void publish(InvalidationMessage message);
+
+    /**
+     * Subscribes to the messages published on this channel.
+     *
+     * @param subscriber The subscriber to call for every message
+     */
+    void subscribe(Consumer<InvalidationMessage> subscriber);
+
+    /**
+     * Removes the given subscriber.
+     *
+     * @param subscriber The subscriber to remove
+     */
+    void unsubscribe(Consumer<InvalidationMessage> subscriber);
+
+}
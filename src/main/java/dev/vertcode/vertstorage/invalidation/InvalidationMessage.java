@@ -0,0 +1,102 @@
+package dev.vertcode.vertstorage.invalidation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of ids of a single table that were changed (or deleted) by a node, the other
+ * nodes remove these ids from their caches.
+ */
+public class InvalidationMessage {
+
+    private final String sourceId;
+    private final String tableName;
+    private final List<String> ids;
+
+    public InvalidationMessage(String sourceId, String tableName, List<String> ids) {
+        this.sourceId = sourceId;
+        this.tableName = tableName;
+        this.ids = Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Encodes this message into a compact binary form, for channels that send bytes.
+     *
+     * @return The encoded message
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try (DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
+            dataOutputStream.writeUTF(this.sourceId);
+            dataOutputStream.writeUTF(this.tableName);
+            dataOutputStream.writeInt(this.ids.size());
+
+            for (String id : this.ids) {
+                dataOutputStream.writeUTF(id);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to encode the invalidation message!", ex);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Decodes a message that was encoded using {@link #encode()}.
+     *
+     * @param bytes The encoded message
+     * @return The decoded message
+     */
+    public static InvalidationMessage decode(byte[] bytes) {
+        try (DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            String sourceId = dataInputStream.readUTF();
+            String tableName = dataInputStream.readUTF();
+            int size = dataInputStream.readInt();
+
+            List<String> ids = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                ids.add(dataInputStream.readUTF());
+            }
+
+            return new InvalidationMessage(sourceId, tableName, ids);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to decode the invalidation message!", ex);
+        }
+    }
+
+    /**
+     * Gets the id of the node that published this message.
+     *
+     * @return The id of the source node
+     */
+    public String getSourceId() {
+        return this.sourceId;
+    }
+
+    /**
+     * Gets the name of the table the ids belong to.
+     *
+     * @return The name of the table
+     */
+    public String getTableName() {
+        return this.tableName;
+    }
+
+    /**
+     * Gets the ids that were invalidated.
+     *
+     * @return The invalidated ids
+     */
+    public List<String> getIds() {
+        return this.ids;
+    }
+
+}
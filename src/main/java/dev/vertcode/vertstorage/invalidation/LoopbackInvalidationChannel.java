@@ -0,0 +1,33 @@
+package dev.vertcode.vertstorage.invalidation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * An in-process {@link InvalidationChannel} that delivers messages to its subscribers right away,
+ * on the publishing thread. This is useful for tests, multiple {@link InvalidationBus}ses sharing
+ * this channel behave like separate nodes.
+ */
+public class LoopbackInvalidationChannel implements InvalidationChannel {
+
+    private final List<Consumer<InvalidationMessage>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(InvalidationMessage message) {
+        for (Consumer<InvalidationMessage> subscriber : this.subscribers) {
+            subscriber.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationMessage> subscriber) {
+        this.subscribers.add(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(Consumer<InvalidationMessage> subscriber) {
+        this.subscribers.remove(subscriber);
+    }
+
+}
@@ -0,0 +1,236 @@
+package dev.vertcode.vertstorage.mapping;
+
+import dev.vertcode.vertstorage.annotations.StorageField;
+import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The storage model of a class: its metadata, storage fields and no-args constructor. This is computed
+ * once per class (see {@link #of(Class)}) and shared by the storage services and the type adapter, the
+ * fields are accessed through the generated {@link StorageMapper} if there is one and through method
+ * handles otherwise.
+ *
+ * @param <T> The type of the class
+ */
+public final class StorageClassModel<T> {
+
+    private static final ClassValue<StorageClassModel<?>> MODELS = new ClassValue<>() {
+        @Override
+        protected StorageClassModel<?> computeValue(Class<?> type) {
+            return new StorageClassModel<>(type);
+        }
+    };
+
+    private final Class<T> clazz;
+    private final @Nullable StorageMetadata metadata;
+    private final List<StorageFieldModel> fields;
+    private final Map<Field, StorageFieldModel> fieldsByField = new HashMap<>();
+    private final Map<String, StorageFieldModel> fieldsByName = new HashMap<>();
+    private final Map<String, StorageFieldModel> fieldsByColumn = new HashMap<>();
+    private final @Nullable StorageFieldModel idField;
+    private final @Nullable MethodHandle constructor;
+    private final @Nullable StorageMapper<T> mapper;
+
+    @SuppressWarnings("unchecked")
+    private StorageClassModel(Class<T> clazz) {
+        this.clazz = clazz;
+        this.metadata = clazz.getAnnotation(StorageMetadata.class);
+        this.mapper = findMapper(clazz);
+
+        List<StorageFieldModel> fields = new ArrayList<>();
+        StorageFieldModel idField = null;
+        // Loop through all the fields in the class, only the fields with a @StorageField annotation are stored
+        for (Field declaredField : clazz.getDeclaredFields()) {
+            StorageField annotation = declaredField.getAnnotation(StorageField.class);
+            if (annotation == null) {
+                continue;
+            }
+
+            // Fields the generated mapper knows are accessed through it
+            int index = this.mapper == null ? -1 : this.mapper.getColumnNames().indexOf(annotation.columnName());
+            StorageMapper<Object> fieldMapper = index == -1 ? null : (StorageMapper<Object>) this.mapper;
+
+            StorageFieldModel field = new StorageFieldModel(declaredField, annotation, fieldMapper, index);
+            fields.add(field);
+            this.fieldsByField.put(declaredField, field);
+            this.fieldsByName.put(field.getName(), field);
+            this.fieldsByColumn.put(field.getColumnName(), field);
+
+            if (field.isId()) {
+                idField = field;
+            }
+        }
+
+        this.fields = Collections.unmodifiableList(fields);
+        this.idField = idField;
+        this.constructor = this.mapper == null ? findConstructor(clazz) : null;
+    }
+
+    /**
+     * Gets the model of the class, this is only computed the first time.
+     *
+     * @param clazz The class
+     * @param <T>   The type of the class
+     * @return The model of the class
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> StorageClassModel<T> of(Class<T> clazz) {
+        return (StorageClassModel<T>) MODELS.get(clazz);
+    }
+
+    /**
+     * Creates a new instance of the class with its no-args constructor.
+     *
+     * @return The new instance
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance() {
+        if (this.mapper != null) {
+            return this.mapper.newInstance();
+        }
+
+        if (this.constructor == null) {
+            throw new IllegalStateException("The class " + this.clazz.getName() + " doesn't have a no-args constructor!");
+        }
+
+        try {
+            return (T) (Object) this.constructor.invokeExact();
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Failed to create a new instance of " + this.clazz.getName() + "!", ex);
+        }
+    }
+
+    /**
+     * Gets the mapper that was generated for the class.
+     *
+     * @return The generated mapper or null if there is none
+     */
+    public @Nullable StorageMapper<T> getMapper() {
+        return this.mapper;
+    }
+
+    /**
+     * Gets the class of this model.
+     *
+     * @return The class
+     */
+    public Class<T> getType() {
+        return this.clazz;
+    }
+
+    /**
+     * Gets the StorageMetadata annotation of the class.
+     *
+     * @return The StorageMetadata annotation or null if the class doesn't have one
+     */
+    public @Nullable StorageMetadata getMetadata() {
+        return this.metadata;
+    }
+
+    /**
+     * Gets the storage fields of the class, in order of declaration.
+     *
+     * @return The storage fields
+     */
+    public List<StorageFieldModel> getFields() {
+        return this.fields;
+    }
+
+    /**
+     * Gets the model of the given field.
+     *
+     * @param field The field
+     * @return The model of the field or null if it isn't a storage field of this class
+     */
+    public @Nullable StorageFieldModel getField(Field field) {
+        return this.fieldsByField.get(field);
+    }
+
+    /**
+     * Gets the storage field with the given field or column name.
+     *
+     * @param name The name of the field or its column
+     * @return The storage field or null if there is none
+     */
+    public @Nullable StorageFieldModel getField(String name) {
+        StorageFieldModel field = this.fieldsByName.get(name);
+
+        return field != null ? field : this.fieldsByColumn.get(name);
+    }
+
+    /**
+     * Gets the storage field with the given column name.
+     *
+     * @param columnName The column name
+     * @return The storage field or null if there is none
+     */
+    public @Nullable StorageFieldModel getFieldByColumn(String columnName) {
+        return this.fieldsByColumn.get(columnName);
+    }
+
+    /**
+     * Gets the field annotated with @StorageId.
+     *
+     * @return The id field or null if there is none
+     */
+    public @Nullable StorageFieldModel getIdField() {
+        return this.idField;
+    }
+
+    /**
+     * Finds the mapper that was generated for the class, see {@link StorageMapper}.
+     *
+     * @param clazz The class
+     * @return The generated mapper or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> @Nullable StorageMapper<T> findMapper(Class<T> clazz) {
+        Class<?> mapperClass;
+        try {
+            mapperClass = Class.forName(clazz.getName() + "_StorageMapper", true, clazz.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return null;
+        }
+
+        if (!StorageMapper.class.isAssignableFrom(mapperClass)) {
+            return null;
+        }
+
+        try {
+            StorageMapper<T> mapper = (StorageMapper<T>) mapperClass.getConstructor().newInstance();
+            // The mapper may be stale (e.g. the class was recompiled without the processor), so it must match
+            return mapper.getType() == clazz ? mapper : null;
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the no-args constructor of the class.
+     *
+     * @param clazz The class
+     * @return The constructor (returning an Object) or null if there is none
+     */
+    private static @Nullable MethodHandle findConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+}
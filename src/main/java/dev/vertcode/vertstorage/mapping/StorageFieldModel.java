@@ -0,0 +1,172 @@
+package dev.vertcode.vertstorage.mapping;
+
+import dev.vertcode.vertstorage.annotations.StorageField;
+import dev.vertcode.vertstorage.annotations.StorageId;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+
+/**
+ * A storage field of a {@link StorageClassModel}, this keeps the annotations and method handles
+ * of the field so they don't have to be looked up (or made accessible) on every access.
+ */
+public final class StorageFieldModel {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final StorageField annotation;
+    private final @Nullable StorageId idAnnotation;
+    private final Type genericType;
+    private final @Nullable MethodHandle getter;
+    private final @Nullable MethodHandle setter;
+    private final @Nullable StorageMapper<Object> mapper;
+    private final int index;
+
+    StorageFieldModel(Field field, StorageField annotation, @Nullable StorageMapper<Object> mapper, int index) {
+        this.field = field;
+        this.annotation = annotation;
+        this.idAnnotation = field.getAnnotation(StorageId.class);
+        this.genericType = field.getGenericType();
+        this.mapper = mapper;
+        this.index = index;
+
+        // The generated mapper accesses the field directly, so no method handles are needed
+        if (mapper != null) {
+            this.getter = null;
+            this.setter = null;
+            return;
+        }
+
+        try {
+            // Accessible fields can be unreflected by any lookup (final instance fields included)
+            field.setAccessible(true);
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Failed to access field " + field.getName() + " in class " + field.getDeclaringClass().getName() + "!", ex);
+        }
+    }
+
+    /**
+     * Gets the value of this field in the object.
+     *
+     * @param object The object
+     * @return The value of the field
+     */
+    public Object get(Object object) {
+        if (this.mapper != null) {
+            return this.mapper.getValue(object, this.index);
+        }
+
+        try {
+            return (Object) this.getter.invokeExact(object);
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Failed to get the value of field " + this.field.getName() + " in class " + this.field.getDeclaringClass().getName() + "!", ex);
+        }
+    }
+
+    /**
+     * Sets the value of this field in the object.
+     *
+     * @param object The object
+     * @param value  The value of the field
+     */
+    public void set(Object object, @Nullable Object value) {
+        if (this.mapper != null) {
+            this.mapper.setValue(object, this.index, value);
+            return;
+        }
+
+        try {
+            this.setter.invokeExact(object, value);
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Failed to set the value of field " + this.field.getName() + " in class " + this.field.getDeclaringClass().getName() + "!", ex);
+        }
+    }
+
+    /**
+     * Gets the (accessible) field.
+     *
+     * @return The field
+     */
+    public Field getField() {
+        return this.field;
+    }
+
+    /**
+     * Gets the name of the field.
+     *
+     * @return The name of the field
+     */
+    public String getName() {
+        return this.field.getName();
+    }
+
+    /**
+     * Gets the StorageField annotation of the field.
+     *
+     * @return The StorageField annotation
+     */
+    public StorageField getAnnotation() {
+        return this.annotation;
+    }
+
+    /**
+     * Gets the name of the column of the field.
+     *
+     * @return The column name
+     */
+    public String getColumnName() {
+        return this.annotation.columnName();
+    }
+
+    /**
+     * Gets the type of the field.
+     *
+     * @return The type of the field
+     */
+    public Class<?> getType() {
+        return this.field.getType();
+    }
+
+    /**
+     * Gets the generic type of the field.
+     *
+     * @return The generic type of the field
+     */
+    public Type getGenericType() {
+        return this.genericType;
+    }
+
+    /**
+     * Returns whether this is the id field.
+     *
+     * @return Whether this is the id field
+     */
+    public boolean isId() {
+        return this.idAnnotation != null;
+    }
+
+    /**
+     * Returns whether this is an id field that is automatically generated.
+     *
+     * @return Whether the id is automatically generated
+     */
+    public boolean isAutomaticallyGenerated() {
+        return this.idAnnotation != null && this.idAnnotation.automaticallyGenerated();
+    }
+
+    @Override
+    public String toString() {
+        return this.field.getName() + " (" + this.annotation.columnName() + ")";
+    }
+
+}
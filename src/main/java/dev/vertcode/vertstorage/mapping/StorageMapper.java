@@ -0,0 +1,80 @@
+package dev.vertcode.vertstorage.mapping;
+
+import com.google.gson.TypeAdapter;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * A mapper generated at compile time by the {@link dev.vertcode.vertstorage.processor.StorageMapperProcessor}
+ * for a {@link dev.vertcode.vertstorage.annotations.StorageMetadata} class, it accesses the storage fields
+ * directly instead of through reflection. The mapper of a class is named {@code <Class>_StorageMapper} (in the
+ * same package) and is picked up by {@link StorageClassModel#of(Class)}.
+ *
+ * @param <T> The type of the class
+ */
+public interface StorageMapper<T> {
+
+    /**
+     * Gets the class this mapper is for.
+     *
+     * @return The class
+     */
+    Class<T> getType();
+
+    /**
+     * Creates a new instance of the class with its no-args constructor.
+     *
+     * @return The new instance
+     */
+    T newInstance();
+
+    /**
+     * Gets the column names of the storage fields, the index of a column is used to access its field.
+     *
+     * @return The column names, in order of declaration
+     */
+    List<String> getColumnNames();
+
+    /**
+     * Gets the generic type of the field with the given index.
+     *
+     * @param index The index of the field
+     * @return The generic type
+     */
+    Type getGenericType(int index);
+
+    /**
+     * Gets the value of the field with the given index.
+     *
+     * @param object The object
+     * @param index  The index of the field
+     * @return The value of the field
+     */
+    @Nullable Object getValue(T object, int index);
+
+    /**
+     * Sets the value of the field with the given index, null is ignored for primitive fields.
+     *
+     * @param object The object
+     * @param index  The index of the field
+     * @param value  The value of the field
+     */
+    void setValue(T object, int index, @Nullable Object value);
+
+    /**
+     * Gets the SQL definition of the columns of the table.
+     *
+     * @return The table definition
+     */
+    String getTableDefinition();
+
+    /**
+     * Gets the Gson type adapter of the class, this writes the fields by their column names.
+     *
+     * @return The type adapter
+     */
+    TypeAdapter<T> getTypeAdapter();
+
+}
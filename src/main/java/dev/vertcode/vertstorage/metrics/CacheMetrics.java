@@ -0,0 +1,151 @@
+package dev.vertcode.vertstorage.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of an {@link dev.vertcode.vertstorage.object.ObjectCache}, these are
+ * {@link LongAdder}s so recording them is cheap even when many threads use the cache.
+ */
+public class CacheMetrics {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Records a lookup that found a cached value.
+     */
+    public void recordHit() {
+        this.hits.increment();
+    }
+
+    /**
+     * Records a lookup that didn't find a cached value.
+     */
+    public void recordMiss() {
+        this.misses.increment();
+    }
+
+    /**
+     * Records a call to the loader that completed.
+     */
+    public void recordLoad() {
+        this.loads.increment();
+    }
+
+    /**
+     * Records a call to the loader that threw an exception.
+     */
+    public void recordLoadFailure() {
+        this.loadFailures.increment();
+    }
+
+    /**
+     * Records an entry that was evicted because of the size bound.
+     */
+    public void recordEviction() {
+        this.evictions.increment();
+    }
+
+    /**
+     * Records an entry that was removed because it expired.
+     */
+    public void recordExpiration() {
+        this.expirations.increment();
+    }
+
+    /**
+     * Gets the amount of lookups that found a cached value.
+     *
+     * @return The amount of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the amount of lookups that didn't find a cached value.
+     *
+     * @return The amount of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the amount of calls to the loader that completed.
+     *
+     * @return The amount of loads
+     */
+    public long getLoads() {
+        return this.loads.sum();
+    }
+
+    /**
+     * Gets the amount of calls to the loader that threw an exception.
+     *
+     * @return The amount of failed loads
+     */
+    public long getLoadFailures() {
+        return this.loadFailures.sum();
+    }
+
+    /**
+     * Gets the amount of entries that were evicted because of the size bound.
+     *
+     * @return The amount of evictions
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Gets the amount of entries that were removed because they expired.
+     *
+     * @return The amount of expirations
+     */
+    public long getExpirations() {
+        return this.expirations.sum();
+    }
+
+    /**
+     * Gets the ratio of lookups that found a cached value.
+     *
+     * @return The hit rate (between 0 and 1), 1 if there were no lookups
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+
+        return lookups == 0 ? 1.0 : (double) hits / lookups;
+    }
+
+    /**
+     * Resets all the counters to 0.
+     */
+    public void reset() {
+        this.hits.reset();
+        this.misses.reset();
+        this.loads.reset();
+        this.loadFailures.reset();
+        this.evictions.reset();
+        this.expirations.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheMetrics{" +
+                "hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", hitRate=" + getHitRate() +
+                ", loads=" + getLoads() +
+                ", loadFailures=" + getLoadFailures() +
+                ", evictions=" + getEvictions() +
+                ", expirations=" + getExpirations() +
+                '}';
+    }
+
+}
@@ -0,0 +1,136 @@
+package dev.vertcode.vertstorage.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of operation latencies with power-of-two buckets, recording a latency is a
+ * single {@link LongAdder} increment so it can be done on every operation. Percentiles are
+ * estimated as the upper bound of the bucket they fall in (so at most 2x the real value).
+ */
+public class LatencyHistogram {
+
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        // Bucket i contains the latencies below 2^i nanoseconds
+        int bucket = Math.min(this.buckets.length - 1, 64 - Long.numberOfLeadingZeros(nanos));
+
+        this.buckets[bucket].increment();
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Gets the amount of recorded latencies.
+     *
+     * @return The amount of recorded latencies
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @param unit The unit to return the latency in
+     * @return The mean latency, 0 if nothing was recorded
+     */
+    public double getMean(TimeUnit unit) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+
+        return (double) this.totalNanos.sum() / count / unit.toNanos(1);
+    }
+
+    /**
+     * Gets the highest recorded latency.
+     *
+     * @param unit The unit to return the latency in
+     * @return The highest latency
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(this.maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the estimated latency at the given percentile.
+     *
+     * @param percentile The percentile (e.g. 0.99 for the p99)
+     * @param unit       The unit to return the latency in
+     * @return The estimated latency, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        long[] counts = new long[this.buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets[i].sum();
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= threshold) {
+                // Never report more than the highest latency we've actually seen
+                long upperBound = i == 0 ? 0 : Math.min(1L << i, this.maxNanos.get());
+                return unit.convert(upperBound, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        return getMax(unit);
+    }
+
+    /**
+     * Resets the histogram.
+     */
+    public void reset() {
+        for (LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+
+        this.count.reset();
+        this.totalNanos.reset();
+        this.maxNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + getCount() +
+                ", meanMicros=" + getMean(TimeUnit.MICROSECONDS) +
+                ", p50Micros=" + getPercentile(0.5, TimeUnit.MICROSECONDS) +
+                ", p99Micros=" + getPercentile(0.99, TimeUnit.MICROSECONDS) +
+                ", maxMicros=" + getMax(TimeUnit.MICROSECONDS) +
+                '}';
+    }
+
+}
@@ -0,0 +1,71 @@
+package dev.vertcode.vertstorage.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The metrics of a {@link dev.vertcode.vertstorage.service.StorageService}, this contains a
+ * {@link LatencyHistogram} for every {@link StorageOperation} and the metrics of its cache.
+ */
+public class StorageMetrics {
+
+    private final Map<StorageOperation, LatencyHistogram> latencies = new EnumMap<>(StorageOperation.class);
+    private final CacheMetrics cacheMetrics;
+
+    public StorageMetrics(CacheMetrics cacheMetrics) {
+        this.cacheMetrics = cacheMetrics;
+
+        for (StorageOperation operation : StorageOperation.values()) {
+            this.latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the latency of an operation that started at the given time.
+     *
+     * @param operation The operation
+     * @param startTime The time the operation started at ({@link System#nanoTime()})
+     */
+    public void record(StorageOperation operation, long startTime) {
+        this.latencies.get(operation).record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Gets the latency histogram of the given operation.
+     *
+     * @param operation The operation
+     * @return The latency histogram of the operation
+     */
+    public LatencyHistogram getLatency(StorageOperation operation) {
+        return this.latencies.get(operation);
+    }
+
+    /**
+     * Gets the metrics of the cache of the service.
+     *
+     * @return The cache metrics
+     */
+    public CacheMetrics getCacheMetrics() {
+        return this.cacheMetrics;
+    }
+
+    /**
+     * Resets all the latency histograms and the cache metrics.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : this.latencies.values()) {
+            histogram.reset();
+        }
+
+        this.cacheMetrics.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "StorageMetrics{" +
+                "latencies=" + this.latencies +
+                ", cacheMetrics=" + this.cacheMetrics +
+                '}';
+    }
+
+}
@@ -0,0 +1,53 @@
+package dev.vertcode.vertstorage.metrics;
+
+/**
+ * The operations of a {@link dev.vertcode.vertstorage.service.StorageService} that are timed.
+ */
+public enum StorageOperation {
+
+    /**
+     * Finding an object by its id, through the cache.
+     */
+    FIND,
+    /**
+     * Loading an object from the database because it wasn't cached.
+     */
+    LOAD,
+    /**
+     * Querying the database for all (matching) objects.
+     */
+    FIND_ALL,
+    /**
+     * Querying the database for a page of objects.
+     */
+    FIND_PAGE,
+    /**
+     * Querying the database with a {@link dev.vertcode.vertstorage.query.Query}.
+     */
+    QUERY,
+    /**
+     * Upserting an object into the database.
+     */
+    UPSERT,
+    /**
+     * Deleting an object from the database.
+     */
+    DELETE,
+    /**
+     * Finding multiple objects by their ids, through the cache.
+     */
+    FIND_MANY,
+    /**
+     * Upserting multiple objects into the database at once.
+     */
+    UPSERT_ALL,
+    /**
+     * Deleting multiple objects from the database at once.
+     */
+    DELETE_ALL,
+    /**
+     * Getting the next id for a new object.
+     */
+    GET_NEXT_ID
+
+}
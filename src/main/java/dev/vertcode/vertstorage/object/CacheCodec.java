@@ -0,0 +1,26 @@
+package dev.vertcode.vertstorage.object;
+
+/**
+ * Converts cache values from and to bytes, this is used to store values outside of the heap.
+ *
+ * @param <V> The type of the value
+ */
+public interface CacheCodec<V> {
+
+    /**
+     * Serializes the value to bytes.
+     *
+     * @param value The value to serialize
+     * @return The serialized value
+     */
+    byte[] encode(V value);
+
+    /**
+     * Deserializes the value from bytes.
+     *
+     * @param bytes The serialized value
+     * @return The deserialized value
+     */
+    V decode(byte[] bytes);
+
+}
@@ -0,0 +1,116 @@
+package dev.vertcode.vertstorage.object;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A single entry of an {@link ObjectCache}, this keeps the value and the
+ * expiration time together so they can be read and replaced atomically.
+ *
+ * @param <K> The type of the key
+ * @param <V> The type of the value
+ */
+public class CacheEntry<K, V> {
+
+    /**
+     * The expiration time used for entries that never expire.
+     */
+    public static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<CacheEntry> REFRESHING = AtomicIntegerFieldUpdater.newUpdater(CacheEntry.class, "refreshing");
+
+    private final K key;
+    private final V value;
+    private final long writeTime;
+    private final long expirationTime;
+    private final int weight;
+    // Set once a refresh of this entry was started, a refresh always replaces the entry
+    private volatile int refreshing;
+
+    // These are managed by the EvictionPolicy (while holding the policy lock)
+    CacheEntry<K, V> previous;
+    CacheEntry<K, V> next;
+    int queue;
+
+    // These are managed by the TimerWheel (while holding the policy lock)
+    TimerWheel.Bucket<K, V> wheelBucket;
+    CacheEntry<K, V> wheelPrevious;
+    CacheEntry<K, V> wheelNext;
+
+    public CacheEntry(K key, V value, long expirationTime) {
+        this(key, value, 0, expirationTime, 1);
+    }
+
+    public CacheEntry(K key, V value, long writeTime, long expirationTime, int weight) {
+        this.key = key;
+        this.value = value;
+        this.writeTime = writeTime;
+        this.expirationTime = expirationTime;
+        this.weight = weight;
+    }
+
+    /**
+     * Gets the key of this entry.
+     *
+     * @return The key of this entry
+     */
+    public K getKey() {
+        return this.key;
+    }
+
+    /**
+     * Gets the value of this entry.
+     *
+     * @return The value of this entry
+     */
+    public V getValue() {
+        return this.value;
+    }
+
+    /**
+     * Gets the time (in nanoseconds of the cache clock) this entry was put in the cache.
+     *
+     * @return The write time of this entry
+     */
+    public long getWriteTime() {
+        return this.writeTime;
+    }
+
+    /**
+     * Gets the time (in nanoseconds of the cache clock) this entry expires at.
+     *
+     * @return The expiration time of this entry
+     */
+    public long getExpirationTime() {
+        return this.expirationTime;
+    }
+
+    /**
+     * Gets the weight of this entry, this is 1 unless the cache uses a {@link CacheWeigher}.
+     *
+     * @return The weight of this entry
+     */
+    public int getWeight() {
+        return this.weight;
+    }
+
+    /**
+     * Returns whether this entry has expired at the given time.
+     *
+     * @param currentTime The current time of the cache clock
+     * @return Whether this entry has expired
+     */
+    public boolean isExpired(long currentTime) {
+        return this.expirationTime != NEVER_EXPIRES && this.expirationTime - currentTime <= 0;
+    }
+
+    /**
+     * Marks this entry as being refreshed, this only succeeds for the first caller.
+     *
+     * @return Whether the caller should refresh this entry
+     */
+    boolean startRefresh() {
+        return REFRESHING.compareAndSet(this, 0, 1);
+    }
+
+}
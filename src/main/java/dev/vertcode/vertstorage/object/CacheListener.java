@@ -0,0 +1,29 @@
+package dev.vertcode.vertstorage.object;
+
+/**
+ * Gets notified when values are put in or removed from an {@link ObjectCache}, this includes
+ * values that are evicted or expire. Listeners are called on the thread that changed the cache
+ * (sometimes while the cache holds a lock), so they should be quick.
+ *
+ * @param <K> The type of the key
+ * @param <V> The type of the value
+ */
+public interface CacheListener<K, V> {
+
+    /**
+     * Called after a value was put in the cache.
+     *
+     * @param key   The key
+     * @param value The value
+     */
+    void onPut(K key, V value);
+
+    /**
+     * Called after a value was removed from the cache.
+     *
+     * @param key   The key
+     * @param value The value that was removed
+     */
+    void onRemove(K key, V value);
+
+}
@@ -0,0 +1,22 @@
+package dev.vertcode.vertstorage.object;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Loads the value for a key that isn't cached (yet), e.g. by querying the database.
+ *
+ * @param <K> The type of the key
+ * @param <V> The type of the value
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+    /**
+     * Loads the value for the given key.
+     *
+     * @param key The key to load the value for
+     * @return The loaded value or null if there is no value for the key
+     */
+    @Nullable V load(K key);
+
+}
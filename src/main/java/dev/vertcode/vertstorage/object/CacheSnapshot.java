@@ -0,0 +1,154 @@
+package dev.vertcode.vertstorage.object;
+
+import lombok.experimental.UtilityClass;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes the contents of an {@link ObjectCache} to a compact binary file and restores them,
+ * so a restarted application doesn't start with a cold cache.
+ * <p>
+ * The file starts with a magic number and a version, followed by the entries. Every entry is
+ * a marker byte, the key (as a string), the wall-clock time it expires at (or -1) and the
+ * encoded value. The expiration time is stored in wall-clock time, since the cache clock
+ * doesn't survive a restart. Snapshots are read through a memory mapping.
+ */
+@UtilityClass
+public class CacheSnapshot {
+
+    private static final int MAGIC = 0x56534353; // VSCS
+    private static final int VERSION = 1;
+    private static final byte ENTRY = 1;
+    private static final byte END = 0;
+
+    /**
+     * Writes the entries of the cache to the file, the file is replaced atomically
+     * so a crash while writing never leaves a broken snapshot behind.
+     *
+     * @param cache      The cache to write
+     * @param file       The file to write the snapshot to
+     * @param keyEncoder Converts a key to a string
+     * @param codec      Encodes the values
+     * @return The amount of entries that were written
+     * @throws IOException If the file couldn't be written
+     */
+    public static <K, V> int write(ObjectCache<K, V> cache, Path file, Function<K, String> keyEncoder, CacheCodec<V> codec) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        long currentTime = ObjectCache.currentTime();
+        long currentTimeMillis = System.currentTimeMillis();
+        int written = 0;
+
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+
+            for (CacheEntry<K, V> entry : cache.entries()) {
+                // Expired entries that weren't cleaned up yet aren't worth restoring
+                if (entry.isExpired(currentTime)) {
+                    continue;
+                }
+
+                byte[] key = keyEncoder.apply(entry.getKey()).getBytes(StandardCharsets.UTF_8);
+                byte[] value = codec.encode(entry.getValue());
+                long expiresAt = -1;
+                if (entry.getExpirationTime() != CacheEntry.NEVER_EXPIRES) {
+                    expiresAt = currentTimeMillis + (entry.getExpirationTime() - currentTime) / 1_000_000;
+                }
+
+                outputStream.writeByte(ENTRY);
+                outputStream.writeInt(key.length);
+                outputStream.write(key);
+                outputStream.writeLong(expiresAt);
+                outputStream.writeInt(value.length);
+                outputStream.write(value);
+                written++;
+            }
+
+            outputStream.writeByte(END);
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Restores the entries of the snapshot into the cache, entries that have expired since the
+     * snapshot was written are skipped. Entries keep their remaining cache time.
+     *
+     * @param cache      The cache to restore the entries into
+     * @param file       The snapshot file
+     * @param keyDecoder Converts a string back to a key
+     * @param codec      Decodes the values
+     * @return The keys that were restored
+     * @throws IOException If the file couldn't be read or isn't a snapshot
+     */
+    public static <K, V> List<K> read(ObjectCache<K, V> cache, Path file, Function<String, K> keyDecoder, CacheCodec<V> codec) throws IOException {
+        List<K> restoredKeys = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("The file " + file + " is not a cache snapshot!");
+            }
+
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("The cache snapshot " + file + " has an unsupported version " + version + "!");
+            }
+
+            long currentTimeMillis = System.currentTimeMillis();
+            while (buffer.get() == ENTRY) {
+                K key = keyDecoder.apply(readString(buffer));
+                long expiresAt = buffer.getLong();
+                byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+
+                // Check if the entry expired while the application was down
+                long remainingNanos = -1;
+                if (expiresAt != -1) {
+                    remainingNanos = (expiresAt - currentTimeMillis) * 1_000_000;
+                    if (remainingNanos <= 0) {
+                        continue;
+                    }
+                }
+
+                cache.restore(key, codec.decode(value), remainingNanos);
+                restoredKeys.add(key);
+            }
+        }
+
+        return restoredKeys;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from the buffer.
+     *
+     * @param buffer The buffer to read from
+     * @return The string
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,23 @@
+package dev.vertcode.vertstorage.object;
+
+/**
+ * Calculates the weight of a cache entry, this is used by a size-bounded
+ * {@link ObjectCache} to decide when entries need to be evicted.
+ *
+ * @param <K> The type of the key
+ * @param <V> The type of the value
+ */
+@FunctionalInterface
+public interface CacheWeigher<K, V> {
+
+    /**
+     * Calculates the weight of the given key-value pair, the weight
+     * may not be negative and is only calculated when the value is put.
+     *
+     * @param key   The key
+     * @param value The value
+     * @return The weight of the key-value pair
+     */
+    int weigh(K key, V value);
+
+}
@@ -0,0 +1,334 @@
+package dev.vertcode.vertstorage.object;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Consumer;
+
+/**
+ * The W-TinyLFU eviction policy used by size-bounded {@link ObjectCache}s.
+ * <p>
+ * New entries first go into a small LRU "window" (1% of the maximum weight), entries that
+ * fall out of the window are candidates for the "main" space. The main space is a segmented
+ * LRU (probation & protected), a candidate is only admitted when the {@link FrequencySketch}
+ * says it's used more often than the entry that would be evicted for it. This keeps hot
+ * entries resident while one-hit wonders are evicted quickly, all operations are O(1).
+ * <p>
+ * This class is not thread-safe, the owning cache must hold its policy lock while calling it.
+ */
+class EvictionPolicy<K, V> {
+
+    private static final int NONE = 0;
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    private final AccessOrderQueue<K, V> window = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> probation = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<>();
+
+    private final FrequencySketch sketch;
+    private final Consumer<CacheEntry<K, V>> evictionHandler;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private long windowWeight;
+    private long mainWeight;
+    private long protectedWeight;
+
+    public EvictionPolicy(long maximumWeight, Consumer<CacheEntry<K, V>> evictionHandler) {
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (long) ((maximumWeight - this.windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(maximumWeight);
+        this.evictionHandler = evictionHandler;
+    }
+
+    /**
+     * Records a new entry, this may evict other entries (or the new entry itself).
+     *
+     * @param entry The entry that was added
+     */
+    public void onAdd(CacheEntry<K, V> entry) {
+        this.sketch.increment(entry.getKey());
+
+        // New entries always start in the window
+        entry.queue = WINDOW;
+        this.window.addLast(entry);
+        this.windowWeight += entry.getWeight();
+
+        evict();
+    }
+
+    /**
+     * Records that the entry was read.
+     *
+     * @param entry The entry that was read
+     */
+    public void onAccess(CacheEntry<K, V> entry) {
+        this.sketch.increment(entry.getKey());
+
+        switch (entry.queue) {
+            case WINDOW:
+                this.window.moveToLast(entry);
+                break;
+            case PROBATION:
+                // A second hit in probation promotes the entry to the protected segment
+                this.probation.remove(entry);
+                this.protectedQueue.addLast(entry);
+                entry.queue = PROTECTED;
+                this.protectedWeight += entry.getWeight();
+
+                demoteProtected();
+                break;
+            case PROTECTED:
+                this.protectedQueue.moveToLast(entry);
+                break;
+            default:
+                // The entry was removed in the meantime, nothing to do
+                break;
+        }
+    }
+
+    /**
+     * Records that the entry was removed from the cache (not by this policy).
+     *
+     * @param entry The entry that was removed
+     */
+    public void onRemove(CacheEntry<K, V> entry) {
+        unlink(entry);
+    }
+
+    /**
+     * Forgets all entries, the frequency sketch is kept.
+     */
+    public void clear() {
+        this.window.clear();
+        this.probation.clear();
+        this.protectedQueue.clear();
+        this.windowWeight = 0;
+        this.mainWeight = 0;
+        this.protectedWeight = 0;
+    }
+
+    /**
+     * Gets the total weight of all the entries known by this policy.
+     *
+     * @return The total weight
+     */
+    public long getWeightedSize() {
+        return this.windowWeight + this.mainWeight;
+    }
+
+    /**
+     * Gets the maximum weight of the cache.
+     *
+     * @return The maximum weight
+     */
+    public long getMaximumWeight() {
+        return this.maximumWeight;
+    }
+
+    /**
+     * Evicts entries until the cache is back within its bounds.
+     */
+    private void evict() {
+        long mainMaximum = this.maximumWeight - this.windowMaximum;
+
+        // Move the entries that fell out of the window into the main space, if they're admitted
+        while (this.windowWeight > this.windowMaximum) {
+            CacheEntry<K, V> candidate = this.window.peekFirst();
+            if (candidate == null) {
+                break;
+            }
+
+            this.window.remove(candidate);
+            this.windowWeight -= candidate.getWeight();
+            candidate.queue = NONE;
+
+            admit(candidate, mainMaximum);
+        }
+
+        // Entries heavier than the window can still push the cache over its bounds
+        while (getWeightedSize() > this.maximumWeight) {
+            CacheEntry<K, V> victim = nextVictim();
+            if (victim == null) {
+                break;
+            }
+
+            evictEntry(victim);
+        }
+    }
+
+    /**
+     * Tries to admit the candidate into the main space, evicting the
+     * victims it beats in frequency to make room for it.
+     *
+     * @param candidate   The candidate that fell out of the window
+     * @param mainMaximum The maximum weight of the main space
+     */
+    private void admit(CacheEntry<K, V> candidate, long mainMaximum) {
+        while (this.mainWeight + candidate.getWeight() > mainMaximum) {
+            CacheEntry<K, V> victim = mainVictim();
+            // Check if there's nothing left to evict or the candidate isn't used more often than the victim
+            if (victim == null || this.sketch.frequency(candidate.getKey()) <= this.sketch.frequency(victim.getKey())) {
+                this.evictionHandler.accept(candidate);
+                return;
+            }
+
+            evictEntry(victim);
+        }
+
+        candidate.queue = PROBATION;
+        this.probation.addLast(candidate);
+        this.mainWeight += candidate.getWeight();
+    }
+
+    /**
+     * Moves entries from the protected segment back to probation while it's too big.
+     */
+    private void demoteProtected() {
+        while (this.protectedWeight > this.protectedMaximum) {
+            CacheEntry<K, V> entry = this.protectedQueue.peekFirst();
+            if (entry == null) {
+                return;
+            }
+
+            this.protectedQueue.remove(entry);
+            this.protectedWeight -= entry.getWeight();
+            entry.queue = PROBATION;
+            this.probation.addLast(entry);
+        }
+    }
+
+    /**
+     * Gets the entry in the main space that should be evicted first.
+     *
+     * @return The victim or null if the main space is empty
+     */
+    private @Nullable CacheEntry<K, V> mainVictim() {
+        CacheEntry<K, V> victim = this.probation.peekFirst();
+
+        return victim != null ? victim : this.protectedQueue.peekFirst();
+    }
+
+    /**
+     * Gets the entry that should be evicted first from the whole cache.
+     *
+     * @return The victim or null if the cache is empty
+     */
+    private @Nullable CacheEntry<K, V> nextVictim() {
+        CacheEntry<K, V> victim = mainVictim();
+
+        return victim != null ? victim : this.window.peekFirst();
+    }
+
+    /**
+     * Unlinks the entry and lets the cache know it was evicted.
+     *
+     * @param entry The entry to evict
+     */
+    private void evictEntry(CacheEntry<K, V> entry) {
+        unlink(entry);
+
+        this.evictionHandler.accept(entry);
+    }
+
+    /**
+     * Unlinks the entry from whatever queue it's in and updates the weights.
+     *
+     * @param entry The entry to unlink
+     */
+    private void unlink(CacheEntry<K, V> entry) {
+        switch (entry.queue) {
+            case WINDOW:
+                this.window.remove(entry);
+                this.windowWeight -= entry.getWeight();
+                break;
+            case PROBATION:
+                this.probation.remove(entry);
+                this.mainWeight -= entry.getWeight();
+                break;
+            case PROTECTED:
+                this.protectedQueue.remove(entry);
+                this.mainWeight -= entry.getWeight();
+                this.protectedWeight -= entry.getWeight();
+                break;
+            default:
+                return;
+        }
+
+        entry.queue = NONE;
+    }
+
+    /**
+     * An intrusive doubly-linked list of cache entries ordered from least to most recently used.
+     */
+    private static class AccessOrderQueue<K, V> {
+
+        private CacheEntry<K, V> first;
+        private CacheEntry<K, V> last;
+
+        public @Nullable CacheEntry<K, V> peekFirst() {
+            return this.first;
+        }
+
+        public void addLast(CacheEntry<K, V> entry) {
+            entry.previous = this.last;
+            entry.next = null;
+
+            if (this.last == null) {
+                this.first = entry;
+            } else {
+                this.last.next = entry;
+            }
+
+            this.last = entry;
+        }
+
+        public void remove(CacheEntry<K, V> entry) {
+            if (entry.previous == null) {
+                this.first = entry.next;
+            } else {
+                entry.previous.next = entry.next;
+            }
+
+            if (entry.next == null) {
+                this.last = entry.previous;
+            } else {
+                entry.next.previous = entry.previous;
+            }
+
+            entry.previous = null;
+            entry.next = null;
+        }
+
+        public void moveToLast(CacheEntry<K, V> entry) {
+            if (this.last == entry) {
+                return;
+            }
+
+            remove(entry);
+            addLast(entry);
+        }
+
+        public void clear() {
+            // Unlink all entries, so readers holding on to an old entry don't touch this queue anymore
+            CacheEntry<K, V> entry = this.first;
+            while (entry != null) {
+                CacheEntry<K, V> next = entry.next;
+
+                entry.previous = null;
+                entry.next = null;
+                entry.queue = NONE;
+                entry = next;
+            }
+
+            this.first = null;
+            this.last = null;
+        }
+
+    }
+
+}
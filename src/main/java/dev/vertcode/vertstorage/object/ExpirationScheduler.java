@@ -0,0 +1,58 @@
+package dev.vertcode.vertstorage.object;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Periodically removes the expired entries of all the expiring {@link ObjectCache}s,
+ * this way expired entries don't stay in memory until someone happens to read them.
+ * <p>
+ * All caches share a single daemon thread, caches are only weakly referenced so
+ * a cache that is no longer used will be garbage collected (and unregistered).
+ */
+final class ExpirationScheduler {
+
+    private static final long TICK_MILLIS = 1000;
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "VertStorage Cache Expiration");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private ExpirationScheduler() {
+    }
+
+    /**
+     * Registers the cache, its expired entries will be removed every second.
+     *
+     * @param cache The cache to register
+     */
+    public static void register(ObjectCache<?, ?> cache) {
+        WeakReference<ObjectCache<?, ?>> reference = new WeakReference<>(cache);
+        AtomicReference<ScheduledFuture<?>> future = new AtomicReference<>();
+
+        future.set(EXECUTOR.scheduleWithFixedDelay(() -> {
+            ObjectCache<?, ?> registeredCache = reference.get();
+            // Check if the cache was garbage collected, if so we stop cleaning it up
+            if (registeredCache == null) {
+                ScheduledFuture<?> scheduledFuture = future.get();
+                if (scheduledFuture != null) {
+                    scheduledFuture.cancel(false);
+                }
+                return;
+            }
+
+            try {
+                registeredCache.cleanUp();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,105 @@
+package dev.vertcode.vertstorage.object;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A hash index over a field of the values in an {@link ObjectCache}, it maps every field value to the
+ * keys of the cached values that have it. The index is kept up to date by listening to the cache.
+ *
+ * @param <K> The type of the key
+ * @param <V> The type of the value
+ */
+public class FieldIndex<K, V> implements CacheListener<K, V> {
+
+    private static final Object NULL_VALUE = new Object();
+
+    private final Function<V, Object> fieldExtractor;
+    private final Map<Object, Set<K>> keysByValue = new ConcurrentHashMap<>();
+    private final Map<K, Object> valuesByKey = new ConcurrentHashMap<>();
+
+    public FieldIndex(Function<V, Object> fieldExtractor) {
+        this.fieldExtractor = fieldExtractor;
+    }
+
+    @Override
+    public synchronized void onPut(K key, V value) {
+        Object fieldValue = wrap(this.fieldExtractor.apply(value));
+        Object previousValue = this.valuesByKey.put(key, fieldValue);
+        // Check if the field value didn't change, if so there's nothing to do
+        if (fieldValue.equals(previousValue)) {
+            return;
+        }
+
+        if (previousValue != null) {
+            unlink(previousValue, key);
+        }
+
+        this.keysByValue.computeIfAbsent(fieldValue, ignored -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    @Override
+    public synchronized void onRemove(K key, V value) {
+        Object previousValue = this.valuesByKey.remove(key);
+        if (previousValue != null) {
+            unlink(previousValue, key);
+        }
+    }
+
+    /**
+     * Gets the keys of the cached values with the given field value.
+     *
+     * @param fieldValue The field value
+     * @return The keys of the values with the field value
+     */
+    public Set<K> getKeys(Object fieldValue) {
+        Set<K> keys = this.keysByValue.get(wrap(fieldValue));
+        if (keys == null) {
+            return Collections.emptySet();
+        }
+
+        // Copy the keys, so the caller isn't affected by changes to the index
+        return new HashSet<>(keys);
+    }
+
+    /**
+     * Removes all the keys from the index.
+     */
+    public synchronized void clear() {
+        this.keysByValue.clear();
+        this.valuesByKey.clear();
+    }
+
+    /**
+     * Removes the key from the keys of the given field value.
+     *
+     * @param fieldValue The field value
+     * @param key        The key
+     */
+    private void unlink(Object fieldValue, K key) {
+        Set<K> keys = this.keysByValue.get(fieldValue);
+        if (keys == null) {
+            return;
+        }
+
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            this.keysByValue.remove(fieldValue, keys);
+        }
+    }
+
+    /**
+     * Wraps the field value, since the maps can't contain null.
+     *
+     * @param fieldValue The field value
+     * @return The field value or a placeholder for null
+     */
+    private static Object wrap(Object fieldValue) {
+        return fieldValue == null ? NULL_VALUE : fieldValue;
+    }
+
+}
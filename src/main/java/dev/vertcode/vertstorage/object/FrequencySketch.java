@@ -0,0 +1,136 @@
+package dev.vertcode.vertstorage.object;
+
+/**
+ * A Count-Min sketch with 4-bit counters that estimates how often a key has been
+ * used recently, this is the "TinyLFU" part of the W-TinyLFU eviction policy.
+ * <p>
+ * Every long in the table holds 16 counters, a key uses 4 counters spread over
+ * the table. Once enough increments have been done all counters are halved, so
+ * keys that were popular a long time ago slowly lose their frequency.
+ * <p>
+ * This class is not thread-safe, it's only used while holding the policy lock.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 22;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    public FrequencySketch(long expectedSize) {
+        int tableSize = (int) Math.min(MAXIMUM_TABLE_SIZE, Math.max(16, expectedSize));
+        // Round the table size up to the next power of two, so we can use a mask instead of a modulo
+        tableSize = Integer.highestOneBit(tableSize - 1) << 1;
+
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    /**
+     * Gets the estimated frequency of the given key, this is a value between 0 and 15.
+     *
+     * @param key The key to get the frequency for
+     * @return The estimated frequency of the key
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Increments the frequency of the given key, if the sample size has been
+     * reached all the counters will be halved.
+     *
+     * @param key The key to increment the frequency for
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        // Once we've seen enough increments we age all counters
+        if (added && ++this.size == this.sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Increments the counter at the given index, unless it's already at its maximum (15).
+     *
+     * @param index   The index of the long in the table
+     * @param counter The counter inside the long (0-15)
+     * @return Whether the counter was incremented
+     */
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((this.table[index] & mask) == mask) {
+            return false;
+        }
+
+        this.table[index] += 1L << offset;
+        return true;
+    }
+
+    /**
+     * Halves all the counters in the table.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            odd += Long.bitCount(this.table[i] & ONE_MASK);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+
+        this.size = (this.size - (odd >>> 2)) >>> 1;
+    }
+
+    /**
+     * Gets the table index for the given hash and counter depth.
+     *
+     * @param hash  The spread hash of the key
+     * @param depth The depth (0-3)
+     * @return The index in the table
+     */
+    private int indexOf(int hash, int depth) {
+        long value = (hash + SEEDS[depth]) * SEEDS[depth];
+        value += value >>> 32;
+
+        return ((int) value) & this.tableMask;
+    }
+
+    /**
+     * Spreads the bits of the hash code, so keys with bad hash codes (e.g. small integers) still
+     * end up in different counters.
+     *
+     * @param hashCode The hash code to spread
+     * @return The spread hash code
+     */
+    private static int spread(int hashCode) {
+        hashCode = ((hashCode >>> 16) ^ hashCode) * 0x45d9f3b;
+        hashCode = ((hashCode >>> 16) ^ hashCode) * 0x45d9f3b;
+
+        return (hashCode >>> 16) ^ hashCode;
+    }
+
+}
@@ -0,0 +1,42 @@
+package dev.vertcode.vertstorage.object;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import dev.vertcode.vertstorage.adapters.StorageObjectTypeAdapter;
+import dev.vertcode.vertstorage.util.StorageUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CacheCodec} that serializes values to JSON using the {@link StorageObjectTypeAdapter},
+ * this is the same format the {@link dev.vertcode.vertstorage.service.json.JsonStorageService} uses.
+ *
+ * @param <V> The type of the value
+ */
+public class GsonCacheCodec<V> implements CacheCodec<V> {
+
+    private final Class<V> clazz;
+    private final Gson gson;
+
+    public GsonCacheCodec(Class<V> clazz) {
+        this.clazz = clazz;
+
+        GsonBuilder gsonBuilder = StorageUtil.getGsonBuilder();
+
+        // Register the StorageObject type adapter
+        gsonBuilder.registerTypeAdapter(clazz, new StorageObjectTypeAdapter<>(clazz));
+
+        this.gson = gsonBuilder.create();
+    }
+
+    @Override
+    public byte[] encode(V value) {
+        return this.gson.toJson(value, this.clazz).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public V decode(byte[] bytes) {
+        return this.gson.fromJson(new String(bytes, StandardCharsets.UTF_8), this.clazz);
+    }
+
+}
@@ -0,0 +1,233 @@
+package dev.vertcode.vertstorage.object;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An open-addressing hash table from primitive long keys to cache entries, this lets an
+ * {@link ObjectCache} with int or long keys look up entries without boxing the key.
+ * <p>
+ * The table uses linear probing and backward-shift deletion, so there are no tombstones.
+ * Lookups are lock-free (optimistic reads of a {@link StampedLock}) unless they race with
+ * a write, writes are serialized by the write lock.
+ */
+class LongKeyTable<K, V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] keys;
+    private CacheEntry<K, V>[] entries;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public LongKeyTable() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.entries = new CacheEntry[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Gets the entry for the given key.
+     *
+     * @param key The key
+     * @return The entry or null if there is none
+     */
+    public @Nullable CacheEntry<K, V> get(long key) {
+        long stamp = this.lock.tryOptimisticRead();
+        CacheEntry<K, V> entry = find(key);
+        if (this.lock.validate(stamp)) {
+            return entry;
+        }
+
+        // A write happened while reading, so we read again while holding the read lock
+        stamp = this.lock.readLock();
+        try {
+            return find(key);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Puts the entry in the table, replacing the current entry of the key.
+     *
+     * @param key   The key
+     * @param entry The entry
+     */
+    public void put(long key, CacheEntry<K, V> entry) {
+        long stamp = this.lock.writeLock();
+        try {
+            int mask = this.keys.length - 1;
+            int index = hash(key) & mask;
+
+            while (this.entries[index] != null) {
+                if (this.keys[index] == key) {
+                    this.entries[index] = entry;
+                    return;
+                }
+
+                index = (index + 1) & mask;
+            }
+
+            this.keys[index] = key;
+            this.entries[index] = entry;
+
+            // Keep the table at most half full, so probe sequences stay short
+            if (++this.size > this.keys.length >>> 1) {
+                resize();
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key from the table, only if its entry is still the expected entry.
+     *
+     * @param key      The key
+     * @param expected The entry that should be removed
+     */
+    public void remove(long key, CacheEntry<K, V> expected) {
+        long stamp = this.lock.writeLock();
+        try {
+            int mask = this.keys.length - 1;
+            int index = hash(key) & mask;
+
+            while (this.entries[index] != null) {
+                if (this.keys[index] == key) {
+                    if (this.entries[index] == expected) {
+                        delete(index);
+                    }
+                    return;
+                }
+
+                index = (index + 1) & mask;
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        long stamp = this.lock.writeLock();
+        try {
+            Arrays.fill(this.entries, null);
+            this.size = 0;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Finds the entry of the key, without any locking.
+     *
+     * @param key The key
+     * @return The entry or null if there is none
+     */
+    private @Nullable CacheEntry<K, V> find(long key) {
+        long[] keys = this.keys;
+        CacheEntry<K, V>[] entries = this.entries;
+        // The arrays may be from different sizes if we race with a resize, the read is validated afterwards anyway
+        int mask = Math.min(keys.length, entries.length) - 1;
+        int index = hash(key) & mask;
+
+        for (int i = 0; i <= mask; i++) {
+            CacheEntry<K, V> entry = entries[index];
+            if (entry == null) {
+                return null;
+            }
+            if (keys[index] == key) {
+                return entry;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Deletes the slot at the given index, shifting the entries after it back so
+     * every entry can still be reached from its home slot.
+     *
+     * @param index The index of the slot to delete
+     */
+    private void delete(int index) {
+        int mask = this.keys.length - 1;
+        int hole = index;
+        int next = (index + 1) & mask;
+
+        while (this.entries[next] != null) {
+            int home = hash(this.keys[next]) & mask;
+
+            // Move the entry into the hole if its home slot isn't between the hole and the entry
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                this.keys[hole] = this.keys[next];
+                this.entries[hole] = this.entries[next];
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        this.entries[hole] = null;
+        this.size--;
+    }
+
+    /**
+     * Doubles the capacity of the table, this must be called while holding the write lock.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize() {
+        long[] oldKeys = this.keys;
+        CacheEntry<K, V>[] oldEntries = this.entries;
+        long[] newKeys = new long[oldKeys.length << 1];
+        CacheEntry<K, V>[] newEntries = new CacheEntry[oldKeys.length << 1];
+        int mask = newKeys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldEntries[i] == null) {
+                continue;
+            }
+
+            int index = hash(oldKeys[i]) & mask;
+            while (newEntries[index] != null) {
+                index = (index + 1) & mask;
+            }
+
+            newKeys[index] = oldKeys[i];
+            newEntries[index] = oldEntries[i];
+        }
+
+        this.keys = newKeys;
+        this.entries = newEntries;
+    }
+
+    /**
+     * Returns whether the key can be stored in this table (it's an Integer or a Long).
+     *
+     * @param key The key to check
+     * @return Whether the key is a primitive key
+     */
+    public static boolean isPrimitiveKey(Object key) {
+        return key instanceof Integer || key instanceof Long;
+    }
+
+    /**
+     * Mixes the bits of the key, so sequential ids are spread over the table.
+     *
+     * @param key The key
+     * @return The hash of the key
+     */
+    private static int hash(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+}
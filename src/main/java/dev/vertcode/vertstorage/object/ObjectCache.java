@@ -1,37 +1,138 @@
 package dev.vertcode.vertstorage.object;
 
+import dev.vertcode.vertstorage.metrics.CacheMetrics;
 import org.jetbrains.annotations.Nullable;
 
-import java.time.Instant;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class is used to cache key-value pairs for a certain amount of time or
  * forever. This is useful for caching data that is used often and is expensive
+ * <p>
+ * The cache is safe to use from multiple threads, the value and expiration time
+ * of a key are stored together in a single {@link CacheEntry} so reads never see
+ * a value without its expiration time (or the other way around).
+ * <p>
+ * A cache can optionally be bounded by a maximum size (or weight), in that case
+ * entries are evicted using a W-TinyLFU policy (see {@link EvictionPolicy}).
+ * <p>
+ * Expiration times are based on a monotonic clock ({@link System#nanoTime()}), expired
+ * entries are removed in the background by a {@link TimerWheel} so reading from the cache
+ * never allocates.
+ * <p>
+ * Writes never wait for the eviction policy or the timer wheel, the map is updated right away
+ * and the added & removed entries are buffered. The buffer is applied by whichever thread gets
+ * the policy lock (without waiting for it), like the reads that are recorded by the policy.
+ * <p>
+ * Values can be loaded through a {@link CacheLoader}, concurrent misses for the same key
+ * are coalesced into a single load of which every caller gets the result. Optionally keys
+ * the loader didn't find can be remembered for a short time (negative caching), so repeated
+ * lookups for missing keys don't go to the loader every time.
+ * <p>
+ * Expiring caches can refresh entries ahead of time, once an entry is past a part of its
+ * cache time it's reloaded in the background while readers keep getting the current value.
+ * <p>
+ * A bounded cache can have a second-level {@link OffHeapCacheTier}, entries evicted because of
+ * the size bound are moved to that tier and loads check it before calling the loader.
+ * <p>
+ * {@link CacheListener}s can be added to get notified of every value that is put in or removed
+ * from the cache, for a single key these notifications are never reordered.
+ * <p>
+ * Caches with int or long keys can enable primitive keys, the entries are then also kept in an
+ * open-addressing table so {@link #getPrimitive(long)} can look them up without boxing the key.
  */
 public class ObjectCache<K, V> {
 
-    private final Map<K, V> cachedValues = new HashMap<>();
-    private final Map<K, Instant> expirationTimes = new HashMap<>();
+    /**
+     * The maximum size used for caches that are not bounded.
+     */
+    public static final long UNBOUNDED = -1;
+
+    private static final long CLOCK_ORIGIN = System.nanoTime();
+    private static final int MISS_GENERATION_STRIPES = 64;
+
+    private final ConcurrentMap<K, CacheEntry<K, V>> cachedEntries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, CompletableFuture<V>> pendingLoads = new ConcurrentHashMap<>();
 
-    private final long cacheTime;
-    private final TimeUnit cacheTimeUnit;
+    private final long cacheTimeNanos;
     private final boolean cacheExpires;
 
+    private final @Nullable CacheWeigher<K, V> weigher;
+    private final @Nullable EvictionPolicy<K, V> evictionPolicy;
+    private final @Nullable TimerWheel<K, V> timerWheel;
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final boolean hasPolicy;
+    // The entries that were added to & removed from the map, but not yet applied to the policy and the wheel
+    private final ConcurrentLinkedQueue<CacheEntry<K, V>> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<CacheEntry<K, V>> pendingRemovals = new ConcurrentLinkedQueue<>();
+
+    private volatile @Nullable ObjectCache<K, Boolean> missingKeys;
+    // Bumped (per stripe of keys) whenever a key is put or invalidated, so a load can tell its miss became stale
+    private final AtomicLongArray missGenerations = new AtomicLongArray(MISS_GENERATION_STRIPES);
+    private volatile @Nullable RefreshAhead<K, V> refreshAhead;
+    private volatile @Nullable OffHeapCacheTier<K, V> secondLevel;
+
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final List<CacheListener<K, V>> listeners = new CopyOnWriteArrayList<>();
+    private volatile @Nullable LongKeyTable<K, V> primitiveKeys;
+
     public ObjectCache(long cacheTime, TimeUnit cacheTimeUnit) {
-        this.cacheTime = cacheTime;
-        this.cacheTimeUnit = cacheTimeUnit;
-        this.cacheExpires = true;
+        this(UNBOUNDED, null, cacheTime, cacheTimeUnit, true);
     }
 
     public ObjectCache() {
-        this.cacheTime = 0;
-        this.cacheTimeUnit = TimeUnit.SECONDS;
-        this.cacheExpires = false;
+        this(UNBOUNDED, null, 0, TimeUnit.SECONDS, false);
+    }
+
+    public ObjectCache(long maximumSize) {
+        this(maximumSize, null, 0, TimeUnit.SECONDS, false);
+    }
+
+    public ObjectCache(long maximumSize, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(maximumSize, null, cacheTime, cacheTimeUnit, true);
+    }
+
+    public ObjectCache(long maximumWeight, CacheWeigher<K, V> weigher) {
+        this(maximumWeight, weigher, 0, TimeUnit.SECONDS, false);
+    }
+
+    public ObjectCache(long maximumWeight, CacheWeigher<K, V> weigher, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(maximumWeight, weigher, cacheTime, cacheTimeUnit, true);
+    }
+
+    private ObjectCache(long maximumWeight, @Nullable CacheWeigher<K, V> weigher, long cacheTime, TimeUnit cacheTimeUnit, boolean cacheExpires) {
+        if (maximumWeight != UNBOUNDED && maximumWeight <= 0) {
+            throw new IllegalArgumentException("The maximum size of the cache must be positive!");
+        }
+
+        this.cacheTimeNanos = cacheTimeUnit.toNanos(cacheTime);
+        this.cacheExpires = cacheExpires;
+        this.weigher = weigher;
+        this.evictionPolicy = maximumWeight == UNBOUNDED ? null : new EvictionPolicy<>(maximumWeight, this::handleEviction);
+        this.timerWheel = cacheExpires ? new TimerWheel<>(currentTime(), this::handleExpiration) : null;
+        this.hasPolicy = this.evictionPolicy != null || this.timerWheel != null;
+
+        // Let the scheduler remove the expired entries in the background
+        if (cacheExpires) {
+            ExpirationScheduler.register(this);
+        }
     }
 
     /**
@@ -41,17 +142,145 @@ public class ObjectCache<K, V> {
      * @return The value for the given key
      */
     public @Nullable V get(K key) {
-        if (!this.cacheExpires) {
-            return this.cachedValues.get(key);
+        CacheEntry<K, V> entry = getEntry(key);
+        if (entry == null) {
+            this.metrics.recordMiss();
+            return null;
         }
 
-        // First we check if the key is cached
-        if (!isCached(key)) {
+        return readEntry(entry);
+    }
+
+    /**
+     * Gets the cached values of the given keys, keys that aren't cached are left out. Keys that
+     * were moved to the second level are promoted back, like a single load does.
+     *
+     * @param keys The keys to get the values for
+     * @return The cached values by their key
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> values = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = get(key);
+            if (value == null) {
+                value = promote(key);
+            }
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Gets the value for the given int or long key without boxing it, this only works once
+     * {@link #enablePrimitiveKeys()} has been called. Only hits are recorded in the metrics,
+     * since a miss is usually followed by a (boxed) load that records it.
+     *
+     * @param key The key to get the value for
+     * @return The value for the given key or null if it isn't cached
+     */
+    public @Nullable V getPrimitive(long key) {
+        LongKeyTable<K, V> primitiveKeys = this.primitiveKeys;
+        if (primitiveKeys == null) {
+            return null;
+        }
+
+        CacheEntry<K, V> entry = primitiveKeys.get(key);
+        if (entry == null) {
             return null;
         }
 
-        // Now we know its cached, we can return the value since the isCached method also checks if the cache has expired
-        return this.cachedValues.get(key);
+        // Check if the entry has expired, if so we remove it (only if it wasn't replaced in the meantime)
+        if (this.cacheExpires && entry.isExpired(currentTime())) {
+            if (removeEntry(entry)) {
+                this.metrics.recordExpiration();
+            }
+            return null;
+        }
+
+        return readEntry(entry);
+    }
+
+    /**
+     * Records a hit on the entry and refreshes it if needed.
+     *
+     * @param entry The entry that was read
+     * @return The value of the entry
+     */
+    private V readEntry(CacheEntry<K, V> entry) {
+        this.metrics.recordHit();
+        recordAccess(entry);
+
+        // Check if the entry should be refreshed, the current value is returned either way
+        RefreshAhead<K, V> refreshAhead = this.refreshAhead;
+        if (refreshAhead != null && currentTime() - entry.getWriteTime() >= refreshAhead.refreshAfterNanos) {
+            refresh(entry, refreshAhead);
+        }
+
+        return entry.getValue();
+    }
+
+    /**
+     * Gets the value for the given key, if it isn't cached it will be loaded using the loader and
+     * put in the cache. If another thread is already loading the key, this waits for that load
+     * instead of loading the key again.
+     *
+     * @param key    The key to get the value for
+     * @param loader The loader used if the key isn't cached
+     * @return The value for the given key or null if the loader didn't find it
+     */
+    public @Nullable V get(K key, CacheLoader<K, V> loader) {
+        V value = get(key);
+        if (value != null || isMissing(key)) {
+            return value;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> pendingLoad = this.pendingLoads.putIfAbsent(key, future);
+        // Check if another thread is already loading this key, if so we wait for its result
+        if (pendingLoad != null) {
+            return awaitLoad(pendingLoad);
+        }
+
+        load(key, loader, future);
+        return awaitLoad(future);
+    }
+
+    /**
+     * Asynchronously gets the value for the given key, if it isn't cached it will be loaded on the
+     * executor using the loader. Concurrent calls (also those to {@link #get(Object, CacheLoader)})
+     * for the same key share a single load.
+     *
+     * @param key      The key to get the value for
+     * @param loader   The loader used if the key isn't cached
+     * @param executor The executor to load the value on
+     * @return A future completed with the value (or null if the loader didn't find it)
+     */
+    public CompletableFuture<V> getAsync(K key, CacheLoader<K, V> loader, Executor executor) {
+        V value = get(key);
+        if (value != null || isMissing(key)) {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> pendingLoad = this.pendingLoads.putIfAbsent(key, future);
+        // Check if another thread is already loading this key, if so we share its result
+        if (pendingLoad != null) {
+            return pendingLoad.copy();
+        }
+
+        try {
+            executor.execute(() -> load(key, loader, future));
+        } catch (RuntimeException ex) {
+            // The executor rejected the load, make sure the key can be loaded again
+            this.pendingLoads.remove(key, future);
+            future.completeExceptionally(ex);
+        }
+
+        // We hand out a copy, so a caller completing its future can't affect the other callers
+        return future.copy();
     }
 
     /**
@@ -61,22 +290,169 @@ public class ObjectCache<K, V> {
      * @param value The value
      */
     public void put(K key, V value) {
-        if (!this.cacheExpires) {
-            this.cachedValues.put(key, value);
-            return;
+        putEntry(key, value, null);
+    }
+
+    /**
+     * Puts the given key-value pair in the cache, if an expected entry is given
+     * the value is only put if the current entry of the key is still that entry.
+     *
+     * @param key      The key
+     * @param value    The value
+     * @param expected The entry that should currently be cached or null to always put the value
+     * @return Whether the value was put
+     */
+    private boolean putEntry(K key, V value, @Nullable CacheEntry<K, V> expected) {
+        long writeTime = currentTime();
+        long expirationTime = CacheEntry.NEVER_EXPIRES;
+        if (this.cacheExpires) {
+            expirationTime = writeTime + this.cacheTimeNanos;
+        }
+
+        return putEntry(key, value, expected, writeTime, expirationTime);
+    }
+
+    /**
+     * Puts the given key-value pair in the cache with the given expiration time, if an expected entry
+     * is given the value is only put if the current entry of the key is still that entry.
+     *
+     * @param key            The key
+     * @param value          The value
+     * @param expected       The entry that should currently be cached or null to always put the value
+     * @param writeTime      The time the value was written
+     * @param expirationTime The time the value expires at
+     * @return Whether the value was put
+     */
+    private boolean putEntry(K key, V value, @Nullable CacheEntry<K, V> expected, long writeTime, long expirationTime) {
+
+        int weight = weigh(key, value);
+
+        // The key exists now, so it should no longer be remembered as missing
+        forgetMissing(key);
+
+        CacheEntry<K, V> entry = new CacheEntry<>(key, value, writeTime, expirationTime, weight);
+        CacheEntry<K, V> previous;
+        if (!hasHooks()) {
+            // Replace the entry in one go, so other threads either see the old or the new entry
+            if (expected == null) {
+                previous = this.cachedEntries.put(key, entry);
+            } else if (this.cachedEntries.replace(key, expected, entry)) {
+                previous = expected;
+            } else {
+                return false;
+            }
+        } else {
+            // The listeners are notified while the key is locked by the map, so their notifications can't be reordered
+            @SuppressWarnings("unchecked")
+            CacheEntry<K, V>[] replaced = new CacheEntry[1];
+            CacheEntry<K, V> current = this.cachedEntries.compute(key, (ignored, existing) -> {
+                if (expected != null && existing != expected) {
+                    return existing;
+                }
+
+                entryAdded(entry);
+
+                replaced[0] = existing;
+                return entry;
+            });
+
+            if (current != entry) {
+                return false;
+            }
+            previous = replaced[0];
+        }
+
+        if (this.hasPolicy) {
+            if (previous != null) {
+                this.pendingRemovals.add(previous);
+            }
+            this.pendingAdds.add(entry);
+
+            drainPolicyEvents();
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the weight of the key-value pair, this is 1 unless the cache uses a weigher.
+     *
+     * @param key   The key
+     * @param value The value
+     * @return The weight of the pair
+     */
+    private int weigh(K key, V value) {
+        if (this.weigher == null) {
+            return 1;
+        }
+
+        int weight = this.weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("The weight of a cache entry may not be negative!");
+        }
+
+        return weight;
+    }
+
+    /**
+     * Replaces the value of the key, only if the key is still cached with the expected value.
+     *
+     * @param key      The key
+     * @param expected The value that should currently be cached (compared by identity)
+     * @param value    The new value
+     * @return Whether the value was replaced
+     */
+    public boolean replace(K key, V expected, V value) {
+        CacheEntry<K, V> entry = getEntry(key);
+        if (entry == null || entry.getValue() != expected) {
+            return false;
         }
 
-        // First we check if the key is cached
-        if (isCached(key)) {
-            // If it is, we remove it from the cache
-            remove(key);
+        return putEntry(key, value, entry);
+    }
+
+    /**
+     * Removes the key from the cache, only if it's still cached with the expected value.
+     *
+     * @param key      The key
+     * @param expected The value that should currently be cached (compared by identity)
+     * @return Whether the key was removed
+     */
+    public boolean remove(K key, V expected) {
+        CacheEntry<K, V> entry = getEntry(key);
+        if (entry == null || entry.getValue() != expected) {
+            return false;
         }
 
-        Instant expirationTime = Instant.now().plusMillis(this.cacheTimeUnit.toMillis(this.cacheTime));
+        return removeEntry(entry);
+    }
+
+    /**
+     * Puts a value restored from a snapshot in the cache, keeping its remaining cache time.
+     *
+     * @param key            The key
+     * @param value          The value
+     * @param remainingNanos The remaining cache time in nanoseconds or -1 if the value never expired
+     */
+    void restore(K key, V value, long remainingNanos) {
+        long writeTime = currentTime();
+        long expirationTime = CacheEntry.NEVER_EXPIRES;
+        if (this.cacheExpires) {
+            // Values that didn't expire before (or live longer than our cache time) get our cache time
+            long cacheTimeNanos = remainingNanos < 0 ? this.cacheTimeNanos : Math.min(remainingNanos, this.cacheTimeNanos);
+            expirationTime = writeTime + cacheTimeNanos;
+        }
+
+        putEntry(key, value, null, writeTime, expirationTime);
+    }
 
-        // Now we know its not cached, we can put it in the cache
-        this.cachedValues.put(key, value);
-        this.expirationTimes.put(key, expirationTime);
+    /**
+     * Gets the entries of the cache, this is a live view that may include expired entries.
+     *
+     * @return The entries of the cache
+     */
+    Collection<CacheEntry<K, V>> entries() {
+        return this.cachedEntries.values();
     }
 
     /**
@@ -85,8 +461,35 @@ public class ObjectCache<K, V> {
      * @param key The key to remove
      */
     public void remove(K key) {
-        this.cachedValues.remove(key);
-        this.expirationTimes.remove(key);
+        // The key was invalidated, so a miss that's being loaded right now may be stale
+        forgetMissing(key);
+
+        OffHeapCacheTier<K, V> secondLevel = this.secondLevel;
+        CacheEntry<K, V> entry;
+        if (!hasHooks() && secondLevel == null) {
+            entry = this.cachedEntries.remove(key);
+        } else {
+            // The second level is cleared while the key is locked by the map, demotions & promotions of the key use the same lock
+            @SuppressWarnings("unchecked")
+            CacheEntry<K, V>[] removed = new CacheEntry[1];
+            this.cachedEntries.compute(key, (ignored, existing) -> {
+                if (existing != null) {
+                    entryRemoved(existing);
+                }
+                if (secondLevel != null) {
+                    secondLevel.remove(key);
+                }
+
+                removed[0] = existing;
+                return null;
+            });
+            entry = removed[0];
+        }
+
+        if (entry != null && this.hasPolicy) {
+            this.pendingRemovals.add(entry);
+            drainPolicyEvents();
+        }
     }
 
     /**
@@ -96,34 +499,152 @@ public class ObjectCache<K, V> {
      * @return Whether the given key is cached
      */
     public boolean isCached(K key) {
+        return getEntry(key) != null;
+    }
+
+    /**
+     * Enables negative caching, keys the loader didn't find will be remembered as missing for the
+     * given amount of time. Lookups for those keys through {@link #get(Object, CacheLoader)} will
+     * return null without calling the loader. Putting or removing a key forgets that it was missing, also
+     * when that happens while the key is being loaded.
+     *
+     * @param maximumSize   The maximum amount of missing keys to remember
+     * @param cacheTime     The amount of time to remember a missing key
+     * @param cacheTimeUnit The unit of the cache time
+     */
+    public void enableNegativeCaching(long maximumSize, long cacheTime, TimeUnit cacheTimeUnit) {
+        this.missingKeys = new ObjectCache<>(maximumSize, cacheTime, cacheTimeUnit);
+    }
+
+    /**
+     * Enables refresh-ahead, once an entry is older than the given fraction of the cache time it
+     * will be reloaded on the executor using the loader. Readers keep getting the current value
+     * while it's being refreshed, so they never have to wait for the loader.
+     *
+     * @param refreshFraction The part of the cache time after which an entry is refreshed (e.g. 0.75)
+     * @param loader          The loader used to refresh entries
+     * @param executor        The executor to refresh entries on
+     */
+    public void enableRefreshAhead(double refreshFraction, CacheLoader<K, V> loader, Executor executor) {
         if (!this.cacheExpires) {
-            return this.cachedValues.containsKey(key);
+            throw new IllegalStateException("Refresh-ahead can only be enabled for caches that expire!");
         }
-
-        // First we check if the key is cached
-        if (!this.cachedValues.containsKey(key)) {
-            return false;
+        if (refreshFraction <= 0 || refreshFraction >= 1) {
+            throw new IllegalArgumentException("The refresh fraction must be between 0 and 1!");
         }
 
-        // Get the expiration time
-        Instant expirationTime = this.expirationTimes.get(key);
-        // Check if the expiration time is before the current time
-        boolean isExpired = expirationTime.isBefore(Instant.now());
-        // If it is, we remove it from the cache
-        if (isExpired) {
-            remove(key);
+        this.refreshAhead = new RefreshAhead<>((long) (this.cacheTimeNanos * refreshFraction), loader, executor);
+    }
+
+    /**
+     * Sets the second-level tier of this cache, entries evicted because of the size bound are
+     * moved to this tier and are promoted back when they're loaded again.
+     *
+     * @param secondLevel The second-level tier or null to remove it
+     */
+    public void setSecondLevel(@Nullable OffHeapCacheTier<K, V> secondLevel) {
+        if (secondLevel != null && this.evictionPolicy == null) {
+            throw new IllegalStateException("A second-level tier can only be used by caches with a maximum size!");
         }
 
-        // Return whether the key is cached
-        return !isExpired;
+        this.secondLevel = secondLevel;
+    }
+
+    /**
+     * Gets the second-level tier of this cache.
+     *
+     * @return The second-level tier or null if the cache doesn't have one
+     */
+    public @Nullable OffHeapCacheTier<K, V> getSecondLevel() {
+        return this.secondLevel;
+    }
+
+    /**
+     * Disables refresh-ahead, entries that are already being refreshed will still be updated.
+     */
+    public void disableRefreshAhead() {
+        this.refreshAhead = null;
+    }
+
+    /**
+     * Disables negative caching, forgetting all the keys that were remembered as missing.
+     */
+    public void disableNegativeCaching() {
+        this.missingKeys = null;
+    }
+
+    /**
+     * Returns whether the given key is remembered as missing, this is always
+     * false if negative caching isn't enabled.
+     *
+     * @param key The key to check
+     * @return Whether the key is remembered as missing
+     */
+    public boolean isMissing(K key) {
+        ObjectCache<K, Boolean> missingKeys = this.missingKeys;
+
+        return missingKeys != null && missingKeys.isCached(key);
+    }
+
+    /**
+     * Forgets that the given key was missing, this should be called when the
+     * key is created without being put in the cache (e.g. when it's saved).
+     *
+     * @param key The key to forget
+     */
+    public void forgetMissing(K key) {
+        ObjectCache<K, Boolean> missingKeys = this.missingKeys;
+        if (missingKeys != null) {
+            // Bump the generation first, so a load that remembers the key after this sees it changed
+            this.missGenerations.incrementAndGet(missStripe(key));
+            missingKeys.remove(key);
+        }
     }
 
     /**
      * Clears the cache.
      */
     public void clear() {
-        this.cachedValues.clear();
-        this.expirationTimes.clear();
+        ObjectCache<K, Boolean> missingKeys = this.missingKeys;
+        if (missingKeys != null) {
+            missingKeys.clear();
+        }
+
+        OffHeapCacheTier<K, V> secondLevel = this.secondLevel;
+        if (secondLevel != null) {
+            secondLevel.clear();
+        }
+
+        if (!hasHooks() && !this.hasPolicy) {
+            this.cachedEntries.clear();
+            return;
+        }
+
+        // Remove the entries one by one, so the listeners and the policy hear about every one of them
+        for (CacheEntry<K, V> entry : this.cachedEntries.values()) {
+            removeEntry(entry);
+        }
+    }
+
+    /**
+     * Removes all the entries that have expired and applies the eviction policy to the writes it
+     * hasn't seen yet. Expired entries are removed automatically in the background every second,
+     * but this can be called to clean up the cache right away.
+     */
+    public void cleanUp() {
+        if (!this.hasPolicy) {
+            return;
+        }
+
+        this.policyLock.lock();
+        try {
+            applyPolicyEvents();
+            if (this.timerWheel != null) {
+                this.timerWheel.advance(currentTime());
+            }
+        } finally {
+            this.policyLock.unlock();
+        }
     }
 
     /**
@@ -132,16 +653,646 @@ public class ObjectCache<K, V> {
      * @return The cached values
      */
     public List<V> getValues() {
-        List<V> values = new ArrayList<>();
+        return new ArrayList<>(values());
+    }
+
+    /**
+     * Gets a live, read-only view of the cached values. Iterating over the view doesn't copy
+     * the cache, it reflects the changes made while iterating and skips expired entries.
+     *
+     * @return A view of the cached values
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+
+            @Override
+            public int size() {
+                return ObjectCache.this.cachedEntries.size();
+            }
+        };
+    }
+
+    /**
+     * Gets the amount of entries in the cache, this may include
+     * entries that have expired but haven't been removed yet.
+     *
+     * @return The amount of entries in the cache
+     */
+    public int size() {
+        return this.cachedEntries.size();
+    }
+
+    /**
+     * Gets the total weight of the entries in the cache, if the cache
+     * doesn't use a weigher this is the same as the size.
+     *
+     * @return The total weight of the entries in the cache
+     */
+    public long getWeightedSize() {
+        if (this.evictionPolicy == null) {
+            return this.cachedEntries.size();
+        }
+
+        this.policyLock.lock();
+        try {
+            applyPolicyEvents();
+            return this.evictionPolicy.getWeightedSize();
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the maximum size (or weight when using a weigher) of the cache.
+     *
+     * @return The maximum size of the cache or {@link #UNBOUNDED} if the cache isn't bounded
+     */
+    public long getMaximumSize() {
+        return this.evictionPolicy == null ? UNBOUNDED : this.evictionPolicy.getMaximumWeight();
+    }
+
+    /**
+     * Enables primitive keys, int and long keys are also kept in an open-addressing table so
+     * {@link #getPrimitive(long)} can find them without boxing. This should be enabled before
+     * the cache is used, since entries cached concurrently with enabling it may be missed.
+     */
+    public synchronized void enablePrimitiveKeys() {
+        if (this.primitiveKeys != null) {
+            return;
+        }
+
+        LongKeyTable<K, V> primitiveKeys = new LongKeyTable<>();
+        this.primitiveKeys = primitiveKeys;
+
+        // Add the entries that are already cached
+        for (CacheEntry<K, V> entry : this.cachedEntries.values()) {
+            if (LongKeyTable.isPrimitiveKey(entry.getKey())) {
+                primitiveKeys.put(((Number) entry.getKey()).longValue(), entry);
+            }
+        }
+    }
+
+    /**
+     * Returns whether primitive keys are enabled, see {@link #enablePrimitiveKeys()}.
+     *
+     * @return Whether primitive keys are enabled
+     */
+    public boolean usesPrimitiveKeys() {
+        return this.primitiveKeys != null;
+    }
+
+    /**
+     * Returns whether the entries of this cache expire.
+     *
+     * @return Whether the entries of this cache expire
+     */
+    public boolean isExpiring() {
+        return this.cacheExpires;
+    }
+
+    /**
+     * Adds a listener that gets notified of every value that is put in or removed from the cache.
+     * Values that are already cached when the listener is added are not reported.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(CacheListener<K, V> listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes the given listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(CacheListener<K, V> listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Gets the metrics (hits, misses, loads, evictions & expirations) of this cache.
+     *
+     * @return The metrics of this cache
+     */
+    public CacheMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets the entry for the given key, if the entry has expired
+     * it will be removed from the cache and null will be returned.
+     *
+     * @param key The key to get the entry for
+     * @return The entry for the given key or null if it isn't cached
+     */
+    private @Nullable CacheEntry<K, V> getEntry(K key) {
+        CacheEntry<K, V> entry = this.cachedEntries.get(key);
+        if (entry == null || !this.cacheExpires) {
+            return entry;
+        }
+
+        // Check if the entry has expired, if so we remove it (only if it wasn't replaced in the meantime)
+        if (entry.isExpired(currentTime())) {
+            if (removeEntry(entry)) {
+                this.metrics.recordExpiration();
+            }
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Loads the key and completes the future with the result, the future must
+     * already be registered as the pending load of the key.
+     *
+     * @param key    The key to load
+     * @param loader The loader to use
+     * @param future The pending load of the key
+     */
+    private void load(K key, CacheLoader<K, V> loader, CompletableFuture<V> future) {
+        long missGeneration = this.missGenerations.get(missStripe(key));
+        try {
+            // Another thread may have finished loading the key between our miss and registering the load
+            CacheEntry<K, V> entry = getEntry(key);
+            V value = entry == null ? null : entry.getValue();
+            if (value == null) {
+                value = promote(key);
+            }
+            if (value == null) {
+                value = loader.load(key);
+                this.metrics.recordLoad();
+
+                if (value != null) {
+                    put(key, value);
+                } else {
+                    rememberMissing(key, missGeneration);
+                }
+            }
+
+            future.complete(value);
+        } catch (Throwable throwable) {
+            this.metrics.recordLoadFailure();
+            future.completeExceptionally(throwable);
+        } finally {
+            this.pendingLoads.remove(key, future);
+        }
+    }
+
+    /**
+     * Promotes the value of the key from the second level back into this cache.
+     *
+     * @param key The key to promote
+     * @return The promoted value or null if the second level doesn't have it
+     */
+    private @Nullable V promote(K key) {
+        OffHeapCacheTier<K, V> secondLevel = this.secondLevel;
+        if (secondLevel == null) {
+            return null;
+        }
+
+        // Move the value while the key is locked by the map, so a concurrent remove can't be undone by the promotion
+        @SuppressWarnings("unchecked")
+        CacheEntry<K, V>[] promoted = new CacheEntry[1];
+        CacheEntry<K, V> current = this.cachedEntries.compute(key, (ignored, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+
+            long currentTime = currentTime();
+            long expirationTime = secondLevel.getExpirationTime(key);
+            V value = secondLevel.get(key, currentTime);
+            if (value == null) {
+                return null;
+            }
+
+            // The value may have been removed from the second level in the meantime, in that case it gets a fresh expiration time
+            if (this.cacheExpires && expirationTime == CacheEntry.NEVER_EXPIRES) {
+                expirationTime = currentTime + this.cacheTimeNanos;
+            }
+
+            // Keep the original expiration time, so the value doesn't live longer because it was demoted
+            CacheEntry<K, V> entry = new CacheEntry<>(key, value, currentTime, expirationTime, weigh(key, value));
+            secondLevel.remove(key);
+            entryAdded(entry);
+
+            promoted[0] = entry;
+            return entry;
+        });
+
+        if (promoted[0] != null) {
+            this.pendingAdds.add(promoted[0]);
+            drainPolicyEvents();
+        }
+
+        return current == null ? null : current.getValue();
+    }
+
+    /**
+     * Reloads the entry in the background, unless the key is already being loaded. The new value
+     * only replaces the entry if it wasn't replaced (or removed) in the meantime.
+     *
+     * @param entry        The entry to refresh
+     * @param refreshAhead The refresh-ahead settings
+     */
+    private void refresh(CacheEntry<K, V> entry, RefreshAhead<K, V> refreshAhead) {
+        // Only the first read past the refresh time starts a refresh, the entry is replaced once it lands.
+        // If the refresh fails, the current value stays cached until it expires and is loaded again.
+        if (!entry.startRefresh()) {
+            return;
+        }
+
+        K key = entry.getKey();
+        CompletableFuture<V> future = new CompletableFuture<>();
+        // Check if the key is already being loaded (or refreshed), if so there's nothing to do
+        if (this.pendingLoads.putIfAbsent(key, future) != null) {
+            return;
+        }
+
+        Runnable refreshTask = () -> {
+            long missGeneration = this.missGenerations.get(missStripe(key));
+            try {
+                V value = refreshAhead.loader.load(key);
+                this.metrics.recordLoad();
+
+                if (value != null) {
+                    putEntry(key, value, entry);
+                } else {
+                    // The value no longer exists, so we remove the entry if it's still the one we refreshed
+                    removeEntry(entry);
+                    rememberMissing(key, missGeneration);
+                }
+
+                future.complete(value);
+            } catch (Throwable throwable) {
+                // The current value stays cached until it expires
+                this.metrics.recordLoadFailure();
+                future.completeExceptionally(throwable);
+            } finally {
+                this.pendingLoads.remove(key, future);
+            }
+        };
+
+        try {
+            refreshAhead.executor.execute(refreshTask);
+        } catch (RuntimeException ex) {
+            this.pendingLoads.remove(key, future);
+            future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Remembers the key as missing, if negative caching is enabled. The key is only remembered if it
+     * wasn't put or invalidated since the load started, otherwise the miss may already be stale.
+     *
+     * @param key            The key the loader didn't find
+     * @param missGeneration The generation of the key when the load started
+     */
+    private void rememberMissing(K key, long missGeneration) {
+        ObjectCache<K, Boolean> missingKeys = this.missingKeys;
+        int stripe = missStripe(key);
+        if (missingKeys == null || this.missGenerations.get(stripe) != missGeneration) {
+            return;
+        }
+
+        missingKeys.put(key, Boolean.TRUE);
+
+        // The key may have been put or invalidated while we remembered it, if so it could have missed our entry
+        if (this.missGenerations.get(stripe) != missGeneration) {
+            missingKeys.remove(key);
+        }
+    }
+
+    /**
+     * Gets the stripe of the miss generations the key belongs to.
+     *
+     * @param key The key
+     * @return The stripe of the key
+     */
+    private static int missStripe(Object key) {
+        int hash = key.hashCode();
+
+        return (hash ^ (hash >>> 16)) & (MISS_GENERATION_STRIPES - 1);
+    }
+
+    /**
+     * Waits for the load to complete, rethrowing the exception the loader threw (if any).
+     *
+     * @param future The load to wait for
+     * @return The loaded value
+     */
+    private @Nullable V awaitLoad(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Lets the eviction policy know the entry was read. Reads should never wait for the
+     * policy lock, so if another thread is holding it we simply skip recording this read.
+     *
+     * @param entry The entry that was read
+     */
+    private void recordAccess(CacheEntry<K, V> entry) {
+        if (this.evictionPolicy == null || !this.policyLock.tryLock()) {
+            return;
+        }
+
+        try {
+            applyPolicyEvents();
+            this.evictionPolicy.onAccess(entry);
+        } finally {
+            this.policyLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given entry from the cache, if the key was
+     * replaced in the meantime the new entry is kept.
+     *
+     * @param entry The entry to remove
+     * @return Whether the entry was removed
+     */
+    private boolean removeEntry(CacheEntry<K, V> entry) {
+        if (!removeMapping(entry)) {
+            return false;
+        }
+
+        if (this.hasPolicy) {
+            this.pendingRemovals.add(entry);
+            drainPolicyEvents();
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the given entry from the map (not from the policy), if the key was replaced in the
+     * meantime the new entry is kept. The listeners are notified while the key is locked by the map.
+     *
+     * @param entry The entry to remove
+     * @return Whether the entry was removed
+     */
+    private boolean removeMapping(CacheEntry<K, V> entry) {
+        return removeMapping(entry, null);
+    }
+
+    /**
+     * Removes the given entry from the map (not from the policy) and optionally moves it to the
+     * second level, if the key was replaced in the meantime the new entry is kept. The entry is
+     * demoted while the key is locked by the map, so a concurrent {@link #remove(Object)} of the
+     * key either happens before (and the entry isn't demoted) or after (and removes it again).
+     *
+     * @param entry       The entry to remove
+     * @param secondLevel The second level to move the entry to or null to drop it
+     * @return Whether the entry was removed
+     */
+    private boolean removeMapping(CacheEntry<K, V> entry, @Nullable OffHeapCacheTier<K, V> secondLevel) {
+        if (!hasHooks() && secondLevel == null) {
+            return this.cachedEntries.remove(entry.getKey(), entry);
+        }
+
+        boolean[] removed = new boolean[1];
+        this.cachedEntries.computeIfPresent(entry.getKey(), (ignored, current) -> {
+            if (current != entry) {
+                return current;
+            }
+
+            entryRemoved(entry);
+            if (secondLevel != null) {
+                demote(secondLevel, entry);
+            }
+            removed[0] = true;
+            return null;
+        });
 
-        for (K key : new ArrayList<>(this.cachedValues.keySet())) {
-            if (!isCached(key)) {
+        return removed[0];
+    }
+
+    /**
+     * Moves the entry that was evicted because of the size bound to the second level.
+     *
+     * @param secondLevel The second level
+     * @param entry       The evicted entry
+     */
+    private void demote(OffHeapCacheTier<K, V> secondLevel, CacheEntry<K, V> entry) {
+        try {
+            secondLevel.put(entry.getKey(), entry.getValue(), entry.getExpirationTime());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Applies the buffered policy events if the policy lock is free, if another thread is holding
+     * the lock it applies them instead. This never waits for the lock.
+     */
+    private void drainPolicyEvents() {
+        // Check the buffers again after unlocking, events added while we held the lock would be stuck otherwise
+        while ((!this.pendingRemovals.isEmpty() || !this.pendingAdds.isEmpty()) && this.policyLock.tryLock()) {
+            try {
+                applyPolicyEvents();
+            } finally {
+                this.policyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the buffered added & removed entries to the eviction policy and the timer wheel, this
+     * must be called while holding the policy lock. An entry is only removed from the map before its
+     * removal is buffered, so added entries that are no longer in the map are simply skipped.
+     */
+    private void applyPolicyEvents() {
+        CacheEntry<K, V> entry;
+        while ((entry = this.pendingRemovals.poll()) != null) {
+            unlinkEntry(entry);
+        }
+
+        while ((entry = this.pendingAdds.poll()) != null) {
+            if (this.cachedEntries.get(entry.getKey()) != entry) {
                 continue;
             }
 
-            values.add(this.cachedValues.get(key));
+            if (this.timerWheel != null) {
+                this.timerWheel.schedule(entry);
+            }
+            if (this.evictionPolicy != null) {
+                this.evictionPolicy.onAdd(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from the eviction policy and the timer wheel (if it's linked), this
+     * must be called while holding the policy lock.
+     *
+     * @param entry The entry that was removed
+     */
+    private void unlinkEntry(CacheEntry<K, V> entry) {
+        if (this.evictionPolicy != null) {
+            this.evictionPolicy.onRemove(entry);
+        }
+        if (this.timerWheel != null) {
+            this.timerWheel.deschedule(entry);
+        }
+    }
+
+    /**
+     * Called by the eviction policy (while holding the policy lock) when an entry is evicted.
+     *
+     * @param entry The entry that was evicted
+     */
+    private void handleEviction(CacheEntry<K, V> entry) {
+        if (this.timerWheel != null) {
+            this.timerWheel.deschedule(entry);
+        }
+
+        // Only demote the entry if it was still cached (and not replaced in the meantime)
+        if (!removeMapping(entry, this.secondLevel)) {
+            return;
+        }
+
+        this.metrics.recordEviction();
+    }
+
+    /**
+     * Called by the timer wheel (while holding the policy lock) when an entry has expired.
+     *
+     * @param entry The entry that has expired
+     */
+    private void handleExpiration(CacheEntry<K, V> entry) {
+        if (this.evictionPolicy != null) {
+            this.evictionPolicy.onRemove(entry);
+        }
+
+        if (removeMapping(entry)) {
+            this.metrics.recordExpiration();
+        }
+    }
+
+    /**
+     * Returns whether something (listeners or the primitive key table) has to be told about
+     * added & removed entries, if not the cache can take its fast paths.
+     *
+     * @return Whether there are hooks
+     */
+    private boolean hasHooks() {
+        return !this.listeners.isEmpty() || this.primitiveKeys != null;
+    }
+
+    /**
+     * Lets the primitive key table and the listeners know the entry was put in the cache.
+     *
+     * @param entry The entry that was put
+     */
+    private void entryAdded(CacheEntry<K, V> entry) {
+        LongKeyTable<K, V> primitiveKeys = this.primitiveKeys;
+        if (primitiveKeys != null && LongKeyTable.isPrimitiveKey(entry.getKey())) {
+            primitiveKeys.put(((Number) entry.getKey()).longValue(), entry);
+        }
+
+        for (CacheListener<K, V> listener : this.listeners) {
+            try {
+                listener.onPut(entry.getKey(), entry.getValue());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Lets the primitive key table and the listeners know the entry was removed from the cache.
+     *
+     * @param entry The entry that was removed
+     */
+    private void entryRemoved(CacheEntry<K, V> entry) {
+        LongKeyTable<K, V> primitiveKeys = this.primitiveKeys;
+        if (primitiveKeys != null && LongKeyTable.isPrimitiveKey(entry.getKey())) {
+            primitiveKeys.remove(((Number) entry.getKey()).longValue(), entry);
+        }
+
+        for (CacheListener<K, V> listener : this.listeners) {
+            try {
+                listener.onRemove(entry.getKey(), entry.getValue());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Gets the current time of the cache clock, this is a monotonic clock
+     * that starts at 0 when this class is loaded.
+     *
+     * @return The current time in nanoseconds
+     */
+    static long currentTime() {
+        return System.nanoTime() - CLOCK_ORIGIN;
+    }
+
+    /**
+     * The settings used to refresh entries ahead of their expiration.
+     */
+    private static class RefreshAhead<K, V> {
+
+        private final long refreshAfterNanos;
+        private final CacheLoader<K, V> loader;
+        private final Executor executor;
+
+        public RefreshAhead(long refreshAfterNanos, CacheLoader<K, V> loader, Executor executor) {
+            this.refreshAfterNanos = refreshAfterNanos;
+            this.loader = loader;
+            this.executor = executor;
+        }
+
+    }
+
+    /**
+     * Iterates over the values of the cache, skipping the entries that have expired.
+     */
+    private class ValueIterator implements Iterator<V> {
+
+        private final Iterator<CacheEntry<K, V>> iterator = ObjectCache.this.cachedEntries.values().iterator();
+        private final long currentTime = currentTime();
+        private CacheEntry<K, V> nextEntry;
+
+        @Override
+        public boolean hasNext() {
+            while (this.nextEntry == null && this.iterator.hasNext()) {
+                CacheEntry<K, V> entry = this.iterator.next();
+                if (!entry.isExpired(this.currentTime)) {
+                    this.nextEntry = entry;
+                }
+            }
+
+            return this.nextEntry != null;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            V value = this.nextEntry.getValue();
+            this.nextEntry = null;
+            return value;
         }
 
-        return values;
     }
 }
@@ -0,0 +1,277 @@
+package dev.vertcode.vertstorage.object;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A second-level cache tier that keeps serialized values outside of the Java heap, either in
+ * direct {@link ByteBuffer} slabs or in a memory-mapped file.
+ * <p>
+ * The slabs are used as a circular log, values are appended at the write position and once the
+ * log is full the oldest values are overwritten (FIFO eviction by capacity). Replacing or removing
+ * a value only updates the index, its bytes are reclaimed when the log wraps around to them.
+ *
+ * @param <K> The type of the key
+ * @param <V> The type of the value
+ */
+public class OffHeapCacheTier<K, V> {
+
+    /**
+     * The default size of a single slab (16 MiB), values bigger than a slab are never stored.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    private final long capacity;
+    private final CacheCodec<V> codec;
+
+    private final Map<K, Record<K>> index = new HashMap<>();
+    private final Deque<Record<K>> log = new ArrayDeque<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long position;
+
+    public OffHeapCacheTier(long capacity, CacheCodec<V> codec) {
+        this(capacity, (int) Math.min(capacity, DEFAULT_SLAB_SIZE), codec);
+    }
+
+    public OffHeapCacheTier(long capacity, int slabSize, CacheCodec<V> codec) {
+        this.slabs = new ByteBuffer[slabCount(capacity, slabSize)];
+        this.slabSize = slabSize;
+        this.capacity = (long) this.slabs.length * slabSize;
+        this.codec = codec;
+
+        // Allocate the slabs outside of the heap
+        for (int i = 0; i < this.slabs.length; i++) {
+            this.slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        }
+    }
+
+    public OffHeapCacheTier(Path file, long capacity, int slabSize, CacheCodec<V> codec) {
+        this.slabs = new ByteBuffer[slabCount(capacity, slabSize)];
+        this.slabSize = slabSize;
+        this.capacity = (long) this.slabs.length * slabSize;
+        this.codec = codec;
+
+        // Map the slabs to the file, the mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < this.slabs.length; i++) {
+                this.slabs[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * slabSize, slabSize);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to map the cache file " + file + "!", ex);
+        }
+    }
+
+    /**
+     * Gets the value for the given key.
+     *
+     * @param key         The key to get the value for
+     * @param currentTime The current time of the cache clock
+     * @return The value for the given key or null if it isn't stored (or has expired)
+     */
+    public @Nullable V get(K key, long currentTime) {
+        byte[] bytes;
+
+        this.lock.readLock().lock();
+        try {
+            Record<K> record = this.index.get(key);
+            if (record == null || (record.expirationTime != CacheEntry.NEVER_EXPIRES && record.expirationTime - currentTime <= 0)) {
+                return null;
+            }
+
+            // Copy the bytes out of the slab, using an absolute get so concurrent readers don't interfere
+            bytes = new byte[record.length];
+            this.slabs[(int) (record.address / this.slabSize)].get((int) (record.address % this.slabSize), bytes);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        // Deserialize outside of the lock
+        return this.codec.decode(bytes);
+    }
+
+    /**
+     * Gets the expiration time of the value stored for the given key.
+     *
+     * @param key The key to get the expiration time for
+     * @return The expiration time or {@link CacheEntry#NEVER_EXPIRES} if the key isn't stored
+     */
+    public long getExpirationTime(K key) {
+        this.lock.readLock().lock();
+        try {
+            Record<K> record = this.index.get(key);
+
+            return record == null ? CacheEntry.NEVER_EXPIRES : record.expirationTime;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the value for the given key, overwriting the oldest values if the tier is full.
+     *
+     * @param key            The key
+     * @param value          The value
+     * @param expirationTime The time (on the cache clock) the value expires at
+     */
+    public void put(K key, V value, long expirationTime) {
+        // Serialize outside of the lock
+        byte[] bytes = this.codec.encode(value);
+        if (bytes.length > this.slabSize) {
+            remove(key);
+            return;
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            long start = this.position;
+            long slabEnd = (start / this.slabSize + 1) * this.slabSize;
+            // A value never spans two slabs, so if it doesn't fit we skip the rest of this slab
+            long address = start + bytes.length > slabEnd ? slabEnd : start;
+            if (address >= this.capacity) {
+                address = 0;
+            }
+
+            // Evict the oldest values that are in the way
+            evictRange(start, address, address + bytes.length);
+
+            this.slabs[(int) (address / this.slabSize)].put((int) (address % this.slabSize), bytes);
+
+            Record<K> record = new Record<>(key, address, bytes.length, expirationTime);
+            this.index.put(key, record);
+            this.log.addLast(record);
+            this.position = address + bytes.length;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the value for the given key.
+     *
+     * @param key The key to remove
+     */
+    public void remove(K key) {
+        this.lock.writeLock().lock();
+        try {
+            this.index.remove(key);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all the values.
+     */
+    public void clear() {
+        this.lock.writeLock().lock();
+        try {
+            this.index.clear();
+            this.log.clear();
+            this.position = 0;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the amount of values stored in this tier.
+     *
+     * @return The amount of values
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.index.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the capacity of this tier in bytes.
+     *
+     * @return The capacity in bytes
+     */
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Evicts the records that overlap the range that is about to be written, the range starts at the
+     * write position and may wrap around to the start of the log.
+     *
+     * @param start   The write position before this write
+     * @param address The address the value will be written at
+     * @param end     The end of the value
+     */
+    private void evictRange(long start, long address, long end) {
+        boolean wrapped = address < start;
+
+        Record<K> record;
+        while ((record = this.log.peekFirst()) != null) {
+            boolean overlaps = wrapped
+                    ? record.overlaps(start, this.capacity) || record.overlaps(0, end)
+                    : record.overlaps(start, end);
+            // The oldest record is the first one ahead of the write position, if it isn't in the way nothing is
+            if (!overlaps) {
+                return;
+            }
+
+            this.log.pollFirst();
+            // Only remove the key if it wasn't stored again in the meantime
+            this.index.remove(record.key, record);
+        }
+    }
+
+    /**
+     * Calculates the amount of slabs needed for the given capacity.
+     *
+     * @param capacity The capacity in bytes
+     * @param slabSize The size of a single slab
+     * @return The amount of slabs
+     */
+    private static int slabCount(long capacity, int slabSize) {
+        if (capacity <= 0 || slabSize <= 0) {
+            throw new IllegalArgumentException("The capacity and slab size must be positive!");
+        }
+
+        return (int) Math.max(1, (capacity + slabSize - 1) / slabSize);
+    }
+
+    /**
+     * The location of a value in the log.
+     */
+    private static class Record<K> {
+
+        private final K key;
+        private final long address;
+        private final int length;
+        private final long expirationTime;
+
+        public Record(K key, long address, int length, long expirationTime) {
+            this.key = key;
+            this.address = address;
+            this.length = length;
+            this.expirationTime = expirationTime;
+        }
+
+        public boolean overlaps(long start, long end) {
+            // Empty values still take up their address, otherwise they would never be evicted
+            return this.address < end && this.address + Math.max(1, this.length) > start;
+        }
+
+    }
+
+}
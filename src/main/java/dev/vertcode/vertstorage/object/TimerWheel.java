@@ -0,0 +1,216 @@
+package dev.vertcode.vertstorage.object;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timer wheel that expires cache entries in amortized O(1).
+ * <p>
+ * Every level of the wheel is an array of buckets, each bucket covers a span of time
+ * (about a second, a minute, an hour, a day and ~6 days). An entry is put in the bucket
+ * that matches its expiration time, when the wheel is advanced the buckets that were
+ * passed are emptied, entries that have expired are handed to the expiration handler
+ * and the others are moved to a bucket on a lower (finer) level.
+ * <p>
+ * This class is not thread-safe, the owning cache must hold its policy lock while calling it.
+ */
+class TimerWheel<K, V> {
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+            1L << 30, // 1.07s
+            1L << 36, // 1.14m
+            1L << 42, // 1.22h
+            1L << 47, // 1.63d
+            1L << 49, // 6.5d
+            1L << 49 // 6.5d
+    };
+    private static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4])
+    };
+
+    private final Bucket<K, V>[][] wheel;
+    private final Consumer<CacheEntry<K, V>> expirationHandler;
+    private long currentTime;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long currentTime, Consumer<CacheEntry<K, V>> expirationHandler) {
+        this.wheel = new Bucket[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            this.wheel[i] = new Bucket[BUCKETS[i]];
+
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                this.wheel[i][j] = new Bucket<>();
+            }
+        }
+
+        this.currentTime = currentTime;
+        this.expirationHandler = expirationHandler;
+    }
+
+    /**
+     * Schedules the entry to be expired at its expiration time.
+     *
+     * @param entry The entry to schedule
+     */
+    public void schedule(CacheEntry<K, V> entry) {
+        findBucket(entry.getExpirationTime()).add(entry);
+    }
+
+    /**
+     * Removes the entry from the wheel, if it's scheduled.
+     *
+     * @param entry The entry to deschedule
+     */
+    public void deschedule(CacheEntry<K, V> entry) {
+        if (entry.wheelBucket != null) {
+            entry.wheelBucket.remove(entry);
+        }
+    }
+
+    /**
+     * Advances the wheel to the given time, expiring all the entries that are due.
+     *
+     * @param time The current time of the cache clock
+     */
+    public void advance(long time) {
+        long previousTime = this.currentTime;
+        this.currentTime = time;
+
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = time >>> SHIFT[i];
+            // If this level didn't tick, the levels above it didn't either
+            if (currentTicks - previousTicks <= 0) {
+                break;
+            }
+
+            expire(i, previousTicks, currentTicks - previousTicks);
+        }
+    }
+
+    /**
+     * Forgets all the scheduled entries.
+     */
+    public void clear() {
+        for (Bucket<K, V>[] buckets : this.wheel) {
+            for (Bucket<K, V> bucket : buckets) {
+                CacheEntry<K, V> entry;
+                while ((entry = bucket.first) != null) {
+                    bucket.remove(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties the buckets of the given level that were passed, expiring or rescheduling their entries.
+     *
+     * @param level         The level of the wheel
+     * @param previousTicks The ticks of the level before advancing
+     * @param delta         The amount of ticks that passed
+     */
+    private void expire(int level, long previousTicks, long delta) {
+        Bucket<K, V>[] buckets = this.wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(delta + 1, buckets.length);
+        int start = (int) (previousTicks & mask);
+
+        for (int i = start; i < start + steps; i++) {
+            // Detach the entries first, since entries that haven't expired may be rescheduled into this bucket again
+            CacheEntry<K, V> entry = buckets[i & mask].detach();
+
+            while (entry != null) {
+                CacheEntry<K, V> next = entry.wheelNext;
+                entry.wheelBucket = null;
+                entry.wheelPrevious = null;
+                entry.wheelNext = null;
+
+                // Check if the entry has expired, if not it goes to a finer bucket
+                if (entry.getExpirationTime() - this.currentTime <= 0) {
+                    this.expirationHandler.accept(entry);
+                } else {
+                    schedule(entry);
+                }
+
+                entry = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the bucket the given expiration time belongs in.
+     *
+     * @param time The expiration time
+     * @return The bucket for the time
+     */
+    private Bucket<K, V> findBucket(long time) {
+        long duration = time - this.currentTime;
+        int lastLevel = this.wheel.length - 1;
+
+        for (int i = 0; i < lastLevel; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                int index = (int) (ticks & (this.wheel[i].length - 1));
+
+                return this.wheel[i][index];
+            }
+        }
+
+        return this.wheel[lastLevel][0];
+    }
+
+    /**
+     * A bucket of the wheel, this is an intrusive doubly-linked list of entries.
+     */
+    static class Bucket<K, V> {
+
+        private CacheEntry<K, V> first;
+        private CacheEntry<K, V> last;
+
+        public void add(CacheEntry<K, V> entry) {
+            entry.wheelBucket = this;
+            entry.wheelPrevious = this.last;
+            entry.wheelNext = null;
+
+            if (this.last == null) {
+                this.first = entry;
+            } else {
+                this.last.wheelNext = entry;
+            }
+
+            this.last = entry;
+        }
+
+        public void remove(CacheEntry<K, V> entry) {
+            if (entry.wheelPrevious == null) {
+                this.first = entry.wheelNext;
+            } else {
+                entry.wheelPrevious.wheelNext = entry.wheelNext;
+            }
+
+            if (entry.wheelNext == null) {
+                this.last = entry.wheelPrevious;
+            } else {
+                entry.wheelNext.wheelPrevious = entry.wheelPrevious;
+            }
+
+            entry.wheelBucket = null;
+            entry.wheelPrevious = null;
+            entry.wheelNext = null;
+        }
+
+        public CacheEntry<K, V> detach() {
+            CacheEntry<K, V> entry = this.first;
+
+            this.first = null;
+            this.last = null;
+            return entry;
+        }
+
+    }
+
+}
@@ -0,0 +1,426 @@
+package dev.vertcode.vertstorage.processor;
+
+import dev.vertcode.vertstorage.annotations.StorageField;
+import dev.vertcode.vertstorage.annotations.StorageId;
+import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Generates a {@link dev.vertcode.vertstorage.mapping.StorageMapper} for every {@link StorageMetadata} class,
+ * which accesses the storage fields directly. Private fields are accessed through static {@link java.lang.invoke.VarHandle}s,
+ * which the JIT compiles to direct field access as well. Classes the mapper can't access (private constructors,
+ * final fields, generic fields, etc.) are skipped with a note, they keep using reflection at runtime.
+ * <p>
+ * The processor is registered in {@code META-INF/services}, so adding VertStorage as an annotation processor
+ * (e.g. {@code annotationProcessor 'dev.vertcode:vertstorage:<version>'}) is enough to use it.
+ */
+@SupportedAnnotationTypes("dev.vertcode.vertstorage.annotations.StorageMetadata")
+public class StorageMapperProcessor extends AbstractProcessor {
+
+    private static final String MAPPER_SUFFIX = "_StorageMapper";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(StorageMetadata.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            List<MappedField> fields = new ArrayList<>();
+
+            // Check if the mapper can access the class, if not the class keeps using reflection
+            String problem = collectFields(type, fields);
+            if (problem != null) {
+                note(type, "No storage mapper is generated for " + type.getQualifiedName() + ", " + problem);
+                continue;
+            }
+
+            try {
+                writeMapper(type, fields);
+            } catch (IOException ex) {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate the storage mapper for " + type.getQualifiedName() + ": " + ex.getMessage(), type);
+            }
+        }
+
+        // The annotations are claimed, no other processor has to handle them
+        return true;
+    }
+
+    /**
+     * Collects the storage fields of the class.
+     *
+     * @param type   The class
+     * @param fields The list to add the fields to
+     * @return Why the mapper can't access the class or null if it can
+     */
+    private @Nullable String collectFields(TypeElement type, List<MappedField> fields) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return "since it's abstract.";
+        }
+
+        // The class (and the classes it's nested in) must be accessible from its package
+        for (Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+            TypeElement enclosingType = (TypeElement) enclosing;
+            if (enclosingType.getModifiers().contains(Modifier.PRIVATE)) {
+                return "since " + enclosingType.getSimpleName() + " is private.";
+            }
+
+            if (enclosingType.getNestingKind() == NestingKind.MEMBER && !enclosingType.getModifiers().contains(Modifier.STATIC) && enclosingType.getKind() == ElementKind.CLASS) {
+                return "since " + enclosingType.getSimpleName() + " isn't static.";
+            }
+        }
+
+        boolean hasConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor = true;
+                break;
+            }
+        }
+
+        if (!hasConstructor) {
+            return "since it doesn't have a non-private no-args constructor.";
+        }
+
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            StorageField storageField = field.getAnnotation(StorageField.class);
+            if (storageField == null) {
+                continue;
+            }
+
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                return "since the field " + field.getSimpleName() + " is static or final.";
+            }
+
+            TypeMirror fieldType = field.asType();
+            String source = toSource(fieldType);
+            String erasure = toSource(this.processingEnv.getTypeUtils().erasure(fieldType));
+            if (source == null || erasure == null) {
+                return "since the type of the field " + field.getSimpleName() + " can't be referenced.";
+            }
+
+            String boxed = fieldType.getKind().isPrimitive() ? this.processingEnv.getTypeUtils().boxedClass((PrimitiveType) fieldType).getQualifiedName().toString() : null;
+            StorageId storageId = field.getAnnotation(StorageId.class);
+
+            fields.add(new MappedField(fields.size(), field.getSimpleName().toString(), storageField.columnName(), source, erasure, boxed, modifiers.contains(Modifier.PRIVATE), storageId != null, storageId != null && storageId.automaticallyGenerated()));
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes the source of the mapper of the class.
+     *
+     * @param type   The class
+     * @param fields The storage fields of the class
+     * @throws IOException If the source can't be written
+     */
+    private void writeMapper(TypeElement type, List<MappedField> fields) throws IOException {
+        String packageName = this.processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String binaryName = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        // The mapper is named after the binary name, so it can be found with Class.forName at runtime
+        String mapperName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + MAPPER_SUFFIX;
+        String typeName = type.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("/**\n * The storage mapper of {@link ").append(typeName).append("}, generated by the VertStorage annotation processor.\n */\n");
+        source.append("public final class ").append(mapperName).append(" implements dev.vertcode.vertstorage.mapping.StorageMapper<").append(typeName).append("> {\n\n");
+
+        // The column names and the generic types, by index
+        StringJoiner columns = new StringJoiner(", ");
+        StringJoiner types = new StringJoiner(",\n            ");
+        for (MappedField field : fields) {
+            columns.add("\"" + field.columnName + "\"");
+            types.add(field.source.equals(field.erasure) ? field.source + ".class" : "new com.google.gson.reflect.TypeToken<" + field.source + ">() {}.getType()");
+        }
+
+        source.append("    private static final java.util.List<String> COLUMN_NAMES = java.util.List.of(").append(columns).append(");\n");
+        source.append("    private static final java.lang.reflect.Type[] GENERIC_TYPES = {\n            ").append(types).append("\n    };\n\n");
+
+        // The handles of the private fields
+        boolean hasHandles = false;
+        for (MappedField field : fields) {
+            if (field.privateField) {
+                source.append("    private static final java.lang.invoke.VarHandle ").append(field.getHandleName()).append(" = findVarHandle(\"")
+                        .append(field.name).append("\", ").append(field.erasure).append(".class);\n");
+                hasHandles = true;
+            }
+        }
+
+        if (hasHandles) {
+            source.append("\n");
+        }
+
+        source.append("    private final com.google.gson.TypeAdapter<").append(typeName).append("> typeAdapter = new TypeAdapter();\n\n");
+
+        source.append("    @Override\n    public Class<").append(typeName).append("> getType() {\n        return ").append(typeName).append(".class;\n    }\n\n");
+        source.append("    @Override\n    public ").append(typeName).append(" newInstance() {\n        return new ").append(typeName).append("();\n    }\n\n");
+        source.append("    @Override\n    public java.util.List<String> getColumnNames() {\n        return COLUMN_NAMES;\n    }\n\n");
+        source.append("    @Override\n    public java.lang.reflect.Type getGenericType(int index) {\n        return GENERIC_TYPES[index];\n    }\n\n");
+
+        // Direct field access through a switch on the index
+        source.append("    @Override\n    public Object getValue(").append(typeName).append(" object, int index) {\n        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            source.append("            case ").append(i).append(":\n                return ").append(readField(fields.get(i), "object")).append(";\n");
+        }
+        source.append("            default:\n                throw new IndexOutOfBoundsException(\"There is no field with index \" + index + \"!\");\n        }\n    }\n\n");
+
+        source.append("    @Override\n    @SuppressWarnings(\"unchecked\")\n    public void setValue(").append(typeName).append(" object, int index, Object value) {\n        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            MappedField field = fields.get(i);
+            source.append("            case ").append(i).append(":\n");
+            if (field.boxed != null) {
+                // A primitive can't be null, so it keeps its current value
+                source.append("                if (value != null) {\n                    ").append(writeField(field, "object", convertValue(field, "value"))).append(";\n                }\n");
+            } else {
+                source.append("                ").append(writeField(field, "object", convertValue(field, "value"))).append(";\n");
+            }
+            source.append("                break;\n");
+        }
+        source.append("            default:\n                throw new IndexOutOfBoundsException(\"There is no field with index \" + index + \"!\");\n        }\n    }\n\n");
+
+        // The table definition, the defaults are read from a new instance like the reflective definition does
+        source.append("    @Override\n    public String getTableDefinition() {\n        ").append(typeName).append(" defaults = new ").append(typeName).append("();\n");
+        source.append("        java.util.StringJoiner definition = new java.util.StringJoiner(\", \");\n");
+        for (MappedField field : fields) {
+            source.append("        definition.add(dev.vertcode.vertstorage.util.StorageSQLUtil.createColumnDefinition(\"").append(field.columnName).append("\", ")
+                    .append(field.erasure).append(".class, ").append(field.id).append(", ").append(field.automaticallyGenerated).append(", ")
+                    .append(field.id ? "null" : readField(field, "defaults")).append("));\n");
+        }
+        source.append("        return definition.toString();\n    }\n\n");
+
+        source.append("    @Override\n    public com.google.gson.TypeAdapter<").append(typeName).append("> getTypeAdapter() {\n        return this.typeAdapter;\n    }\n\n");
+
+        if (hasHandles) {
+            source.append("    private static java.lang.invoke.VarHandle findVarHandle(String name, Class<?> type) {\n        try {\n");
+            source.append("            return java.lang.invoke.MethodHandles.privateLookupIn(").append(typeName).append(".class, java.lang.invoke.MethodHandles.lookup())")
+                    .append(".findVarHandle(").append(typeName).append(".class, name, type);\n");
+            source.append("        } catch (ReflectiveOperationException ex) {\n            throw new ExceptionInInitializerError(ex);\n        }\n    }\n\n");
+        }
+
+        writeTypeAdapter(source, typeName, fields);
+        source.append("}\n");
+
+        JavaFileObject file = this.processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? mapperName : packageName + "." + mapperName, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    /**
+     * Writes the Gson type adapter of the mapper, this writes the same JSON as the reflective
+     * {@link dev.vertcode.vertstorage.adapters.StorageObjectTypeAdapter}.
+     *
+     * @param source   The source of the mapper
+     * @param typeName The name of the class
+     * @param fields   The storage fields of the class
+     */
+    private void writeTypeAdapter(StringBuilder source, String typeName, List<MappedField> fields) {
+        source.append("    private final class TypeAdapter extends com.google.gson.TypeAdapter<").append(typeName).append("> {\n\n");
+
+        source.append("        @Override\n        public void write(com.google.gson.stream.JsonWriter out, ").append(typeName).append(" value) throws java.io.IOException {\n");
+        source.append("            com.google.gson.Gson gson = dev.vertcode.vertstorage.util.StorageUtil.getGson();\n\n            out.beginObject();\n");
+        for (MappedField field : fields) {
+            source.append("            out.name(\"").append(field.columnName).append("\");\n");
+            source.append("            out.jsonValue(gson.toJson(").append(readField(field, "value")).append("));\n");
+        }
+        source.append("            out.endObject();\n        }\n\n");
+
+        source.append("        @Override\n        public ").append(typeName).append(" read(com.google.gson.stream.JsonReader in) throws java.io.IOException {\n");
+        source.append("            com.google.gson.Gson gson = dev.vertcode.vertstorage.util.StorageUtil.getGson();\n");
+        source.append("            ").append(typeName).append(" instance = newInstance();\n\n            in.beginObject();\n            while (in.hasNext()) {\n");
+        source.append("                switch (in.nextName()) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            source.append("                    case \"").append(fields.get(i).columnName).append("\":\n");
+            source.append("                        setValue(instance, ").append(i).append(", gson.fromJson(in, GENERIC_TYPES[").append(i).append("]));\n                        break;\n");
+        }
+        source.append("                    default:\n                        in.skipValue();\n                }\n            }\n");
+        source.append("            in.endObject();\n\n            return instance;\n        }\n\n    }\n\n");
+    }
+
+    /**
+     * Gets the expression that reads the field, private fields are read through their handle.
+     *
+     * @param field    The field
+     * @param instance The expression of the object
+     * @return The expression
+     */
+    private String readField(MappedField field, String instance) {
+        if (field.privateField) {
+            // Cast to the exact type of the handle, so the access doesn't need any conversion
+            return "(" + field.erasure + ") " + field.getHandleName() + ".get(" + instance + ")";
+        }
+
+        return instance + "." + field.name;
+    }
+
+    /**
+     * Gets the statement that writes the field, private fields are written through their handle.
+     *
+     * @param field    The field
+     * @param instance The expression of the object
+     * @param value    The expression of the value, of the type of the field
+     * @return The statement
+     */
+    private String writeField(MappedField field, String instance, String value) {
+        if (field.privateField) {
+            return field.getHandleName() + ".set(" + instance + ", " + value + ")";
+        }
+
+        return instance + "." + field.name + " = " + value;
+    }
+
+    /**
+     * Gets the expression that converts the (non-null) value to the type of the field. Numbers are converted
+     * through {@link Number}, since the databases don't always return the boxed type of the field (e.g. a
+     * {@code Long} for an {@code int} column).
+     *
+     * @param field The field
+     * @param value The expression of the value
+     * @return The expression
+     */
+    private String convertValue(MappedField field, String value) {
+        if (field.boxed == null) {
+            return "(" + (field.privateField ? field.erasure : field.source) + ") " + value;
+        }
+
+        boolean numeric = !field.source.equals("boolean") && !field.source.equals("char");
+        return "((" + (numeric ? "java.lang.Number" : field.boxed) + ") " + value + ")." + field.source + "Value()";
+    }
+
+    /**
+     * Converts the type to the way it's referenced in source code, without type annotations.
+     *
+     * @param type The type
+     * @return The source of the type or null if it can't be referenced (e.g. a type variable)
+     */
+    private @Nullable String toSource(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case CHAR:
+            case FLOAT:
+            case DOUBLE:
+                return type.getKind().name().toLowerCase();
+            case ARRAY:
+                String component = toSource(((ArrayType) type).getComponentType());
+                return component == null ? null : component + "[]";
+            case DECLARED:
+                DeclaredType declaredType = (DeclaredType) type;
+                StringBuilder builder = new StringBuilder(((TypeElement) declaredType.asElement()).getQualifiedName());
+                if (declaredType.getTypeArguments().isEmpty()) {
+                    return builder.toString();
+                }
+
+                StringJoiner arguments = new StringJoiner(", ", "<", ">");
+                for (TypeMirror argument : declaredType.getTypeArguments()) {
+                    String argumentSource = toSource(argument);
+                    if (argumentSource == null) {
+                        return null;
+                    }
+
+                    arguments.add(argumentSource);
+                }
+
+                return builder.append(arguments).toString();
+            case WILDCARD:
+                WildcardType wildcardType = (WildcardType) type;
+                if (wildcardType.getExtendsBound() != null) {
+                    String bound = toSource(wildcardType.getExtendsBound());
+                    return bound == null ? null : "? extends " + bound;
+                }
+
+                if (wildcardType.getSuperBound() != null) {
+                    String bound = toSource(wildcardType.getSuperBound());
+                    return bound == null ? null : "? super " + bound;
+                }
+
+                return "?";
+            default:
+                return null;
+        }
+    }
+
+    private void note(Element element, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+    /**
+     * A storage field the mapper accesses.
+     */
+    private static class MappedField {
+
+        private final int index;
+        private final String name;
+        private final String columnName;
+        private final String source;
+        private final String erasure;
+        private final @Nullable String boxed;
+        private final boolean privateField;
+        private final boolean id;
+        private final boolean automaticallyGenerated;
+
+        public MappedField(int index, String name, String columnName, String source, String erasure, @Nullable String boxed, boolean privateField, boolean id, boolean automaticallyGenerated) {
+            this.index = index;
+            this.name = name;
+            this.columnName = columnName;
+            this.source = source;
+            this.erasure = erasure;
+            this.boxed = boxed;
+            this.privateField = privateField;
+            this.id = id;
+            this.automaticallyGenerated = automaticallyGenerated;
+        }
+
+        /**
+         * Gets the name of the {@link java.lang.invoke.VarHandle} of this field in the mapper.
+         *
+         * @return The name of the handle
+         */
+        public String getHandleName() {
+            return "HANDLE_" + this.index;
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package dev.vertcode.vertstorage.query;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A condition that compares the value of a field with a value.
+ */
+public final class ComparisonCondition implements Condition {
+
+    private final String fieldName;
+    private final ComparisonOperator operator;
+    private final @Nullable Object value;
+
+    public ComparisonCondition(String fieldName, ComparisonOperator operator, @Nullable Object value) {
+        if (value == null && operator != ComparisonOperator.EQUALS && operator != ComparisonOperator.NOT_EQUALS) {
+            throw new IllegalArgumentException("Only equality can be checked against null!");
+        }
+
+        this.fieldName = fieldName;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    /**
+     * Gets the name of the field (or its column).
+     *
+     * @return The name of the field
+     */
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    /**
+     * Gets the operator to compare with.
+     *
+     * @return The operator
+     */
+    public ComparisonOperator getOperator() {
+        return this.operator;
+    }
+
+    /**
+     * Gets the value to compare with.
+     *
+     * @return The value
+     */
+    public @Nullable Object getValue() {
+        return this.value;
+    }
+
+    @Override
+    public <R> R accept(ConditionVisitor<R> visitor) {
+        return visitor.visitComparison(this);
+    }
+
+    @Override
+    public String toString() {
+        return this.fieldName + " " + this.operator.getSymbol() + " " + this.value;
+    }
+
+}
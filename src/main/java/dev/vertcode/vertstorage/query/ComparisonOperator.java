@@ -0,0 +1,30 @@
+package dev.vertcode.vertstorage.query;
+
+/**
+ * The operators of a {@link ComparisonCondition}.
+ */
+public enum ComparisonOperator {
+
+    EQUALS("="),
+    NOT_EQUALS("<>"),
+    GREATER_THAN(">"),
+    GREATER_THAN_OR_EQUALS(">="),
+    LESS_THAN("<"),
+    LESS_THAN_OR_EQUALS("<=");
+
+    private final String symbol;
+
+    ComparisonOperator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Gets the SQL symbol of this operator.
+     *
+     * @return The SQL symbol
+     */
+    public String getSymbol() {
+        return this.symbol;
+    }
+
+}
@@ -0,0 +1,39 @@
+package dev.vertcode.vertstorage.query;
+
+import java.util.List;
+
+/**
+ * A condition of a {@link Query}, these are created with {@link Conditions}.
+ */
+public interface Condition {
+
+    /**
+     * Accepts the visitor, calling the method for the type of this condition.
+     *
+     * @param visitor The visitor
+     * @param <R>     The type of the result
+     * @return The result of the visitor
+     */
+    <R> R accept(ConditionVisitor<R> visitor);
+
+    /**
+     * Creates a condition that matches if both this and the other condition match.
+     *
+     * @param other The other condition
+     * @return The combined condition
+     */
+    default Condition and(Condition other) {
+        return new AndCondition(List.of(this, other));
+    }
+
+    /**
+     * Creates a condition that matches if this or the other condition matches.
+     *
+     * @param other The other condition
+     * @return The combined condition
+     */
+    default Condition or(Condition other) {
+        return new OrCondition(List.of(this, other));
+    }
+
+}
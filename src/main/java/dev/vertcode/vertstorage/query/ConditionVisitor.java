@@ -0,0 +1,21 @@
+package dev.vertcode.vertstorage.query;
+
+/**
+ * A visitor of the conditions of a {@link Query}, the storage services use this to translate
+ * a condition to their own query language.
+ *
+ * @param <R> The type of the result
+ */
+public interface ConditionVisitor<R> {
+
+    R visitComparison(ComparisonCondition condition);
+
+    R visitIn(InCondition condition);
+
+    R visitLike(LikeCondition condition);
+
+    R visitAnd(AndCondition condition);
+
+    R visitOr(OrCondition condition);
+
+}
@@ -0,0 +1,158 @@
+package dev.vertcode.vertstorage.query;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Creates the conditions of a {@link Query}, the field names may be the names of the fields or their columns.
+ */
+@UtilityClass
+public class Conditions {
+
+    /**
+     * Creates a condition that matches if the field equals the value (or is null, if the value is null).
+     *
+     * @param fieldName The name of the field
+     * @param value     The value
+     * @return The condition
+     */
+    public static Condition eq(String fieldName, @Nullable Object value) {
+        return new ComparisonCondition(fieldName, ComparisonOperator.EQUALS, value);
+    }
+
+    /**
+     * Creates a condition that matches if the field doesn't equal the value (or isn't null, if the value is null).
+     *
+     * @param fieldName The name of the field
+     * @param value     The value
+     * @return The condition
+     */
+    public static Condition ne(String fieldName, @Nullable Object value) {
+        return new ComparisonCondition(fieldName, ComparisonOperator.NOT_EQUALS, value);
+    }
+
+    /**
+     * Creates a condition that matches if the field is greater than the value.
+     *
+     * @param fieldName The name of the field
+     * @param value     The value
+     * @return The condition
+     */
+    public static Condition gt(String fieldName, Object value) {
+        return new ComparisonCondition(fieldName, ComparisonOperator.GREATER_THAN, value);
+    }
+
+    /**
+     * Creates a condition that matches if the field is greater than or equal to the value.
+     *
+     * @param fieldName The name of the field
+     * @param value     The value
+     * @return The condition
+     */
+    public static Condition gte(String fieldName, Object value) {
+        return new ComparisonCondition(fieldName, ComparisonOperator.GREATER_THAN_OR_EQUALS, value);
+    }
+
+    /**
+     * Creates a condition that matches if the field is less than the value.
+     *
+     * @param fieldName The name of the field
+     * @param value     The value
+     * @return The condition
+     */
+    public static Condition lt(String fieldName, Object value) {
+        return new ComparisonCondition(fieldName, ComparisonOperator.LESS_THAN, value);
+    }
+
+    /**
+     * Creates a condition that matches if the field is less than or equal to the value.
+     *
+     * @param fieldName The name of the field
+     * @param value     The value
+     * @return The condition
+     */
+    public static Condition lte(String fieldName, Object value) {
+        return new ComparisonCondition(fieldName, ComparisonOperator.LESS_THAN_OR_EQUALS, value);
+    }
+
+    /**
+     * Creates a condition that matches if the field is between the values (inclusive).
+     *
+     * @param fieldName The name of the field
+     * @param from      The lowest value
+     * @param to        The highest value
+     * @return The condition
+     */
+    public static Condition between(String fieldName, Object from, Object to) {
+        return and(gte(fieldName, from), lte(fieldName, to));
+    }
+
+    /**
+     * Creates a condition that matches if the field is one of the values.
+     *
+     * @param fieldName The name of the field
+     * @param values    The values
+     * @return The condition
+     */
+    public static Condition in(String fieldName, Collection<?> values) {
+        return new InCondition(fieldName, values);
+    }
+
+    /**
+     * Creates a condition that matches if the field is one of the values.
+     *
+     * @param fieldName The name of the field
+     * @param values    The values
+     * @return The condition
+     */
+    public static Condition in(String fieldName, Object... values) {
+        return new InCondition(fieldName, Arrays.asList(values));
+    }
+
+    /**
+     * Creates a condition that matches the field with a SQL LIKE pattern, see {@link LikeCondition}.
+     *
+     * @param fieldName The name of the field
+     * @param pattern   The LIKE pattern
+     * @return The condition
+     */
+    public static Condition like(String fieldName, String pattern) {
+        return new LikeCondition(fieldName, pattern);
+    }
+
+    /**
+     * Creates a condition that matches if the field starts with the prefix.
+     *
+     * @param fieldName The name of the field
+     * @param prefix    The prefix
+     * @return The condition
+     */
+    public static Condition startsWith(String fieldName, String prefix) {
+        return new LikeCondition(fieldName, LikeCondition.escape(prefix) + "%");
+    }
+
+    /**
+     * Creates a condition that matches if all the conditions match.
+     *
+     * @param conditions The conditions
+     * @return The condition
+     */
+    public static Condition and(Condition... conditions) {
+        return new AndCondition(List.of(conditions));
+    }
+
+    /**
+     * Creates a condition that matches if any of the conditions match.
+     *
+     * @param conditions The conditions
+     * @return The condition
+     */
+    public static Condition or(Condition... conditions) {
+        return new OrCondition(List.of(conditions));
+    }
+
+}
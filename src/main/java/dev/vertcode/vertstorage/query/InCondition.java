@@ -0,0 +1,49 @@
+package dev.vertcode.vertstorage.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A condition that matches if the value of a field is one of the given values.
+ */
+public final class InCondition implements Condition {
+
+    private final String fieldName;
+    private final List<Object> values;
+
+    public InCondition(String fieldName, Collection<?> values) {
+        this.fieldName = fieldName;
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+    }
+
+    /**
+     * Gets the name of the field (or its column).
+     *
+     * @return The name of the field
+     */
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    /**
+     * Gets the values the field may have.
+     *
+     * @return The values
+     */
+    public List<Object> getValues() {
+        return this.values;
+    }
+
+    @Override
+    public <R> R accept(ConditionVisitor<R> visitor) {
+        return visitor.visitIn(this);
+    }
+
+    @Override
+    public String toString() {
+        return this.fieldName + " IN " + this.values;
+    }
+
+}
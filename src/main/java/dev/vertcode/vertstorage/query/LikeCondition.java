@@ -0,0 +1,94 @@
+package dev.vertcode.vertstorage.query;
+
+import java.util.regex.Pattern;
+
+/**
+ * A condition that matches the value of a field with a SQL LIKE pattern, where {@code %} matches
+ * any amount of characters, {@code _} matches a single character and {@code \} escapes the next character.
+ */
+public final class LikeCondition implements Condition {
+
+    private final String fieldName;
+    private final String pattern;
+
+    public LikeCondition(String fieldName, String pattern) {
+        this.fieldName = fieldName;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Escapes the special characters of a LIKE pattern in the given text.
+     *
+     * @param text The text to escape
+     * @return The escaped text
+     */
+    public static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Gets the name of the field (or its column).
+     *
+     * @return The name of the field
+     */
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    /**
+     * Gets the LIKE pattern.
+     *
+     * @return The LIKE pattern
+     */
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * Converts the LIKE pattern to an (anchored) regular expression.
+     *
+     * @return The regular expression
+     */
+    public String toRegex() {
+        StringBuilder builder = new StringBuilder("^");
+        StringBuilder literal = new StringBuilder();
+
+        for (int i = 0; i < this.pattern.length(); i++) {
+            char character = this.pattern.charAt(i);
+            if (character == '\\' && i + 1 < this.pattern.length()) {
+                literal.append(this.pattern.charAt(++i));
+                continue;
+            }
+
+            if (character != '%' && character != '_') {
+                literal.append(character);
+                continue;
+            }
+
+            // Quote the literal part before the wildcard
+            if (literal.length() > 0) {
+                builder.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+
+            builder.append(character == '%' ? ".*" : ".");
+        }
+
+        if (literal.length() > 0) {
+            builder.append(Pattern.quote(literal.toString()));
+        }
+
+        return builder.append("$").toString();
+    }
+
+    @Override
+    public <R> R accept(ConditionVisitor<R> visitor) {
+        return visitor.visitLike(this);
+    }
+
+    @Override
+    public String toString() {
+        return this.fieldName + " LIKE " + this.pattern;
+    }
+
+}
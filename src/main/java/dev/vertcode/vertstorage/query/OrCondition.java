@@ -0,0 +1,38 @@
+package dev.vertcode.vertstorage.query;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A condition that matches if any of its conditions match.
+ */
+public final class OrCondition implements Condition {
+
+    private final List<Condition> conditions;
+
+    public OrCondition(List<Condition> conditions) {
+        this.conditions = List.copyOf(conditions);
+    }
+
+    /**
+     * Gets the conditions of this condition.
+     *
+     * @return The conditions
+     */
+    public List<Condition> getConditions() {
+        return this.conditions;
+    }
+
+    @Override
+    public <R> R accept(ConditionVisitor<R> visitor) {
+        return visitor.visitOr(this);
+    }
+
+    @Override
+    public String toString() {
+        return this.conditions.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(" OR ", "(", ")"));
+    }
+
+}
@@ -0,0 +1,179 @@
+package dev.vertcode.vertstorage.query;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A query for the objects of a {@link dev.vertcode.vertstorage.service.StorageService}, the storage services
+ * translate this to their own query language so the filtering happens in the database. Queries are immutable,
+ * every method returns a new query.
+ * <pre>{@code
+ * Query query = Query.where(Conditions.gte("level", 10).and(Conditions.startsWith("name", "Vert")))
+ *         .orderByDescending("level")
+ *         .limit(10);
+ * }</pre>
+ */
+public final class Query {
+
+    /**
+     * The limit of a query without a limit.
+     */
+    public static final int NO_LIMIT = -1;
+
+    private final @Nullable Condition condition;
+    private final List<QueryOrder> orders;
+    private final int limit;
+    private final List<String> projection;
+
+    private Query(@Nullable Condition condition, List<QueryOrder> orders, int limit, List<String> projection) {
+        this.condition = condition;
+        this.orders = orders;
+        this.limit = limit;
+        this.projection = projection;
+    }
+
+    /**
+     * Creates a query that matches all the objects.
+     *
+     * @return The query
+     */
+    public static Query all() {
+        return new Query(null, List.of(), NO_LIMIT, List.of());
+    }
+
+    /**
+     * Creates a query that matches the objects that match the condition.
+     *
+     * @param condition The condition
+     * @return The query
+     */
+    public static Query where(Condition condition) {
+        return new Query(condition, List.of(), NO_LIMIT, List.of());
+    }
+
+    /**
+     * Creates a copy of this query that is also ordered (ascending) by the given field.
+     *
+     * @param fieldName The name of the field (or its column)
+     * @return The new query
+     */
+    public Query orderBy(String fieldName) {
+        return orderBy(new QueryOrder(fieldName, true));
+    }
+
+    /**
+     * Creates a copy of this query that is also ordered (descending) by the given field.
+     *
+     * @param fieldName The name of the field (or its column)
+     * @return The new query
+     */
+    public Query orderByDescending(String fieldName) {
+        return orderBy(new QueryOrder(fieldName, false));
+    }
+
+    /**
+     * Creates a copy of this query that is also ordered by the given order.
+     *
+     * @param order The order
+     * @return The new query
+     */
+    public Query orderBy(QueryOrder order) {
+        List<QueryOrder> orders = new ArrayList<>(this.orders);
+        orders.add(order);
+
+        return new Query(this.condition, Collections.unmodifiableList(orders), this.limit, this.projection);
+    }
+
+    /**
+     * Creates a copy of this query that returns at most the given amount of objects.
+     *
+     * @param limit The maximum amount of objects
+     * @return The new query
+     */
+    public Query limit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit of a query must be positive!");
+        }
+
+        return new Query(this.condition, this.orders, limit, this.projection);
+    }
+
+    /**
+     * Creates a copy of this query that only loads the given fields (and the id). The objects it
+     * returns are marked as partial (see {@link dev.vertcode.vertstorage.StorageObject#isPartial()}),
+     * so they can't be cached or upserted over the complete objects.
+     *
+     * @param fieldNames The names of the fields (or their columns) to load
+     * @return The new query
+     */
+    public Query select(String... fieldNames) {
+        if (fieldNames.length == 0) {
+            throw new IllegalArgumentException("At least one field must be selected!");
+        }
+
+        return new Query(this.condition, this.orders, this.limit, List.of(fieldNames));
+    }
+
+    /**
+     * Gets the condition of this query.
+     *
+     * @return The condition or null if the query matches all the objects
+     */
+    public @Nullable Condition getCondition() {
+        return this.condition;
+    }
+
+    /**
+     * Gets the orders of this query, in order of priority.
+     *
+     * @return The orders
+     */
+    public List<QueryOrder> getOrders() {
+        return this.orders;
+    }
+
+    /**
+     * Gets the maximum amount of objects this query returns.
+     *
+     * @return The limit or {@link #NO_LIMIT}
+     */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Returns whether this query has a limit.
+     *
+     * @return Whether this query has a limit
+     */
+    public boolean hasLimit() {
+        return this.limit != NO_LIMIT;
+    }
+
+    /**
+     * Gets the names of the fields this query loads.
+     *
+     * @return The names of the fields or an empty list if all the fields are loaded
+     */
+    public List<String> getProjection() {
+        return this.projection;
+    }
+
+    /**
+     * Returns whether this query only loads some of the fields.
+     *
+     * @return Whether this query has a projection
+     */
+    public boolean hasProjection() {
+        return !this.projection.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Query{condition=%s, orders=%s, limit=%s, projection=%s}", this.condition, this.orders, this.limit, this.projection);
+    }
+
+}
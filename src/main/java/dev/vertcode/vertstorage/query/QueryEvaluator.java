@@ -0,0 +1,192 @@
+package dev.vertcode.vertstorage.query;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the conditions of a query in memory, this is used by the storage services
+ * that can't filter in the database.
+ *
+ * @param <T> The type of the objects
+ */
+public class QueryEvaluator<T> implements ConditionVisitor<Boolean> {
+
+    private final Function<String, Function<T, Object>> accessors;
+    private final Map<LikeCondition, Pattern> patterns = new IdentityHashMap<>();
+    private T object;
+
+    /**
+     * @param accessors Gets the function that gets the value of the field with the given name from an object
+     */
+    public QueryEvaluator(Function<String, Function<T, Object>> accessors) {
+        this.accessors = accessors;
+    }
+
+    /**
+     * Returns whether the object matches the condition, this isn't thread-safe.
+     *
+     * @param condition The condition or null to match all the objects
+     * @param object    The object
+     * @return Whether the object matches
+     */
+    public boolean matches(@Nullable Condition condition, T object) {
+        if (condition == null) {
+            return true;
+        }
+
+        this.object = object;
+        try {
+            return condition.accept(this);
+        } finally {
+            this.object = null;
+        }
+    }
+
+    /**
+     * Creates the comparator for the orders of a query.
+     *
+     * @param orders The orders
+     * @return The comparator
+     */
+    public Comparator<T> createComparator(List<QueryOrder> orders) {
+        Comparator<T> comparator = (first, second) -> 0;
+        for (QueryOrder order : orders) {
+            Function<T, Object> accessor = this.accessors.apply(order.getFieldName());
+            Comparator<T> fieldComparator = (first, second) -> compareValues(accessor.apply(first), accessor.apply(second));
+
+            comparator = comparator.thenComparing(order.isAscending() ? fieldComparator : fieldComparator.reversed());
+        }
+
+        return comparator;
+    }
+
+    @Override
+    public Boolean visitComparison(ComparisonCondition condition) {
+        Object fieldValue = getValue(condition.getFieldName());
+        Object value = condition.getValue();
+
+        switch (condition.getOperator()) {
+            case EQUALS:
+                return valuesEqual(fieldValue, value);
+            case NOT_EQUALS:
+                return !valuesEqual(fieldValue, value);
+            default:
+                break;
+        }
+
+        // Like in SQL, a null is never bigger or smaller than a value
+        if (fieldValue == null) {
+            return false;
+        }
+
+        int result = compareValues(fieldValue, value);
+        switch (condition.getOperator()) {
+            case GREATER_THAN:
+                return result > 0;
+            case GREATER_THAN_OR_EQUALS:
+                return result >= 0;
+            case LESS_THAN:
+                return result < 0;
+            default:
+                return result <= 0;
+        }
+    }
+
+    @Override
+    public Boolean visitIn(InCondition condition) {
+        Object fieldValue = getValue(condition.getFieldName());
+        for (Object value : condition.getValues()) {
+            if (valuesEqual(fieldValue, value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public Boolean visitLike(LikeCondition condition) {
+        Object fieldValue = getValue(condition.getFieldName());
+        if (fieldValue == null) {
+            return false;
+        }
+
+        Pattern pattern = this.patterns.computeIfAbsent(condition, like -> Pattern.compile(like.toRegex(), Pattern.DOTALL));
+        return pattern.matcher(String.valueOf(fieldValue)).matches();
+    }
+
+    @Override
+    public Boolean visitAnd(AndCondition condition) {
+        for (Condition child : condition.getConditions()) {
+            if (!child.accept(this)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public Boolean visitOr(OrCondition condition) {
+        for (Condition child : condition.getConditions()) {
+            if (child.accept(this)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Object getValue(String fieldName) {
+        return this.accessors.apply(fieldName).apply(this.object);
+    }
+
+    /**
+     * Returns whether the values are equal, numbers of different types are compared by their value.
+     */
+    private static boolean valuesEqual(@Nullable Object first, @Nullable Object second) {
+        if (first instanceof Number && second instanceof Number) {
+            return compareValues(first, second) == 0;
+        }
+
+        return Objects.equals(first, second);
+    }
+
+    /**
+     * Compares the values, nulls come first and numbers of different types are compared by their value.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(@Nullable Object first, @Nullable Object second) {
+        if (first == null || second == null) {
+            return first == null ? (second == null ? 0 : -1) : 1;
+        }
+
+        if (first instanceof Number && second instanceof Number && first.getClass() != second.getClass()) {
+            Number firstNumber = (Number) first;
+            Number secondNumber = (Number) second;
+            if (isIntegral(firstNumber) && isIntegral(secondNumber)) {
+                return Long.compare(firstNumber.longValue(), secondNumber.longValue());
+            }
+
+            return Double.compare(firstNumber.doubleValue(), secondNumber.doubleValue());
+        }
+
+        if (!(first instanceof Comparable)) {
+            throw new IllegalArgumentException("The value " + first + " can't be compared!");
+        }
+
+        return ((Comparable) first).compareTo(second);
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+}
@@ -0,0 +1,39 @@
+package dev.vertcode.vertstorage.query;
+
+/**
+ * A field a {@link Query} is ordered by.
+ */
+public final class QueryOrder {
+
+    private final String fieldName;
+    private final boolean ascending;
+
+    public QueryOrder(String fieldName, boolean ascending) {
+        this.fieldName = fieldName;
+        this.ascending = ascending;
+    }
+
+    /**
+     * Gets the name of the field (or its column).
+     *
+     * @return The name of the field
+     */
+    public String getFieldName() {
+        return this.fieldName;
+    }
+
+    /**
+     * Returns whether the field is ordered ascending.
+     *
+     * @return Whether the field is ordered ascending
+     */
+    public boolean isAscending() {
+        return this.ascending;
+    }
+
+    @Override
+    public String toString() {
+        return this.fieldName + (this.ascending ? " ASC" : " DESC");
+    }
+
+}
@@ -0,0 +1,208 @@
+package dev.vertcode.vertstorage.service;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Describes which objects a {@link StorageService} should load into its cache when it starts up,
+ * see {@link StorageService#startupService(CacheWarmup)}.
+ * <p>
+ * Objects are loaded in chunks and the progress listener is called every time a chunk has been cached.
+ * The chunks of an id warm-up are loaded in parallel on the executor, the other warm-ups stream the
+ * objects from the database and cache the chunks on the executor while the next chunk is read.
+ */
+public class CacheWarmup {
+
+    /**
+     * The default amount of objects per chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final Type type;
+    private final @Nullable String fieldName;
+    private final @Nullable Object value;
+    private final List<Object> ids;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private @Nullable Executor executor;
+    private @Nullable ProgressListener progressListener;
+
+    private CacheWarmup(Type type, @Nullable String fieldName, @Nullable Object value, List<Object> ids) {
+        this.type = type;
+        this.fieldName = fieldName;
+        this.value = value;
+        this.ids = ids;
+    }
+
+    /**
+     * Creates a warm-up that loads all the objects of the table.
+     *
+     * @return The warm-up
+     */
+    public static CacheWarmup all() {
+        return new CacheWarmup(Type.ALL, null, null, List.of());
+    }
+
+    /**
+     * Creates a warm-up that loads the objects with the given field name and value.
+     *
+     * @param fieldName The name of the field
+     * @param value     The value of the field
+     * @return The warm-up
+     */
+    public static CacheWarmup byField(String fieldName, Object value) {
+        return new CacheWarmup(Type.FIELD, fieldName, value, List.of());
+    }
+
+    /**
+     * Creates a warm-up that loads the objects with the given ids.
+     *
+     * @param ids The ids of the objects to load
+     * @return The warm-up
+     */
+    public static CacheWarmup ids(Collection<?> ids) {
+        return new CacheWarmup(Type.IDS, null, null, new ArrayList<>(ids));
+    }
+
+    /**
+     * Sets the amount of objects per chunk.
+     *
+     * @param chunkSize The amount of objects per chunk
+     * @return This warm-up
+     */
+    public CacheWarmup chunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive!");
+        }
+
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the executor the chunks are loaded on, by default the executor of the service is used.
+     *
+     * @param executor The executor
+     * @return This warm-up
+     */
+    public CacheWarmup executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the listener that is called every time a chunk has been cached.
+     *
+     * @param progressListener The progress listener
+     * @return This warm-up
+     */
+    public CacheWarmup onProgress(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Gets the type of this warm-up.
+     *
+     * @return The type of this warm-up
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the name of the field the objects are filtered on, only used by {@link Type#FIELD}.
+     *
+     * @return The name of the field
+     */
+    public @Nullable String getFieldName() {
+        return this.fieldName;
+    }
+
+    /**
+     * Gets the value of the field the objects are filtered on, only used by {@link Type#FIELD}.
+     *
+     * @return The value of the field
+     */
+    public @Nullable Object getValue() {
+        return this.value;
+    }
+
+    /**
+     * Gets the ids of the objects to load, only used by {@link Type#IDS}.
+     *
+     * @return The ids of the objects to load
+     */
+    public List<Object> getIds() {
+        return this.ids;
+    }
+
+    /**
+     * Gets the amount of objects per chunk.
+     *
+     * @return The amount of objects per chunk
+     */
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Gets the executor the chunks are loaded on.
+     *
+     * @return The executor or null if the executor of the service should be used
+     */
+    public @Nullable Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Gets the progress listener.
+     *
+     * @return The progress listener or null if there is none
+     */
+    public @Nullable ProgressListener getProgressListener() {
+        return this.progressListener;
+    }
+
+    /**
+     * The objects a warm-up loads.
+     */
+    public enum Type {
+
+        /**
+         * All the objects of the table.
+         */
+        ALL,
+        /**
+         * The objects with a certain field value.
+         */
+        FIELD,
+        /**
+         * The objects with certain ids.
+         */
+        IDS
+
+    }
+
+    /**
+     * Gets notified about the progress of a warm-up.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Called every time a chunk has been cached.
+         *
+         * @param processed The amount of objects (or ids) that have been processed so far
+         * @param total     The total amount of objects (or ids) that will be processed, or -1 if this isn't known
+         *                  up front (the objects of {@link Type#ALL} and {@link Type#FIELD} warm-ups are streamed)
+         */
+        void onProgress(int processed, int total);
+
+    }
+
+}
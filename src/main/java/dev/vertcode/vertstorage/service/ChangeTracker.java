@@ -0,0 +1,104 @@
+package dev.vertcode.vertstorage.service;
+
+import dev.vertcode.vertstorage.StorageObject;
+import dev.vertcode.vertstorage.StorageObjects;
+import dev.vertcode.vertstorage.mapping.StorageFieldModel;
+import dev.vertcode.vertstorage.util.StorageUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Tracks which storage fields of an object changed since it was loaded or last written. A snapshot
+ * of the values is kept on the object itself (see {@link StorageObject#getStoredValues()}), immutable
+ * values are kept as is and other values (collections, custom types, etc.) as their JSON.
+ *
+ * @param <T> The type of the objects
+ */
+class ChangeTracker<T extends StorageObject> {
+
+    private final StorageFieldModel[] fields;
+
+    /**
+     * @param fields The fields to track, this shouldn't include the id field
+     */
+    public ChangeTracker(Collection<StorageFieldModel> fields) {
+        this.fields = fields.toArray(new StorageFieldModel[0]);
+    }
+
+    /**
+     * Captures the current values of the tracked fields of the object.
+     *
+     * @param object The object
+     * @return The captured values
+     */
+    public Object[] capture(T object) {
+        Object[] values = new Object[this.fields.length];
+        for (int i = 0; i < this.fields.length; i++) {
+            values[i] = toStoredValue(this.fields[i].get(object));
+        }
+
+        return values;
+    }
+
+    /**
+     * Takes a snapshot of the object, this should only be done when the object matches the database.
+     *
+     * @param object The object
+     */
+    public void snapshot(T object) {
+        StorageObjects.setStoredValues(object, capture(object));
+    }
+
+    /**
+     * Gets the fields of which the captured values differ from the snapshot of the object.
+     *
+     * @param object The object
+     * @param values The captured values of the object
+     * @return The changed fields or null if the object doesn't have a snapshot
+     */
+    public @Nullable List<Field> getChangedFields(T object, Object[] values) {
+        Object[] storedValues = object.getStoredValues();
+        if (storedValues == null || storedValues.length != values.length) {
+            return null;
+        }
+
+        List<Field> changedFields = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (!Objects.equals(storedValues[i], values[i])) {
+                changedFields.add(this.fields[i].getField());
+            }
+        }
+
+        return changedFields;
+    }
+
+    /**
+     * Converts the value to the value kept in a snapshot, mutable values are converted to their JSON.
+     *
+     * @param value The value of a field
+     * @return The value to keep in the snapshot
+     */
+    private static @Nullable Object toStoredValue(@Nullable Object value) {
+        if (value == null || isImmutable(value.getClass())) {
+            return value;
+        }
+
+        return StorageUtil.getGson().toJson(value);
+    }
+
+    private static boolean isImmutable(Class<?> type) {
+        return type == String.class || type == Integer.class || type == Long.class || type == Double.class
+                || type == Float.class || type == Short.class || type == Byte.class || type == Boolean.class
+                || type == Character.class || type == UUID.class || type == BigDecimal.class || type == BigInteger.class
+                || type.isEnum() || type.getPackageName().equals("java.time");
+    }
+
+}
@@ -0,0 +1,86 @@
+package dev.vertcode.vertstorage.service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps the executor of a {@link StorageService} and keeps track of its tasks, so the queue
+ * depth (tasks waiting for a thread) and the amount of running tasks can be reported per service.
+ */
+public class MonitoredExecutor implements Executor {
+
+    private final Executor delegate;
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+
+    public MonitoredExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.queuedTasks.incrementAndGet();
+
+        try {
+            this.delegate.execute(() -> {
+                this.queuedTasks.decrementAndGet();
+                this.activeTasks.incrementAndGet();
+
+                try {
+                    command.run();
+                } finally {
+                    this.activeTasks.decrementAndGet();
+                    this.completedTasks.increment();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.queuedTasks.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the amount of tasks that are waiting for a thread.
+     *
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return this.queuedTasks.get();
+    }
+
+    /**
+     * Gets the amount of tasks that are running.
+     *
+     * @return The amount of running tasks
+     */
+    public int getActiveCount() {
+        return this.activeTasks.get();
+    }
+
+    /**
+     * Gets the amount of tasks that have completed (successfully or not).
+     *
+     * @return The amount of completed tasks
+     */
+    public long getCompletedCount() {
+        return this.completedTasks.sum();
+    }
+
+    /**
+     * Gets the executor the tasks are run on.
+     *
+     * @return The wrapped executor
+     */
+    public Executor getDelegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MonitoredExecutor{queued=%d, active=%d, completed=%d}", getQueueDepth(), getActiveCount(), getCompletedCount());
+    }
+
+}
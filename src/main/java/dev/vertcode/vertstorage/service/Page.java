@@ -0,0 +1,50 @@
+package dev.vertcode.vertstorage.service;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of objects returned by {@link StorageService#findPage(PageToken, int, String)}.
+ *
+ * @param <T> The type of the objects
+ */
+public final class Page<T> {
+
+    private final List<T> items;
+    private final @Nullable PageToken nextToken;
+
+    public Page(List<T> items, @Nullable PageToken nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Gets the objects of this page.
+     *
+     * @return The objects of this page
+     */
+    public List<T> getItems() {
+        return this.items;
+    }
+
+    /**
+     * Gets the token to get the next page with.
+     *
+     * @return The token of the next page or null if this is the last page
+     */
+    public @Nullable PageToken getNextToken() {
+        return this.nextToken;
+    }
+
+    /**
+     * Returns whether there is a next page.
+     *
+     * @return Whether there is a next page
+     */
+    public boolean hasNext() {
+        return this.nextToken != null;
+    }
+
+}
@@ -0,0 +1,43 @@
+package dev.vertcode.vertstorage.service;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The position of the last object of a {@link Page}, this is used to continue with the next page
+ * (see {@link StorageService#findPage(PageToken, int, String)}). The id is used as a tie-breaker,
+ * so objects with the same value for the order field are never skipped or returned twice.
+ */
+public final class PageToken {
+
+    private final @Nullable Object orderValue;
+    private final Object id;
+
+    public PageToken(@Nullable Object orderValue, Object id) {
+        this.orderValue = orderValue;
+        this.id = id;
+    }
+
+    /**
+     * Gets the value of the order field of the last object.
+     *
+     * @return The value of the order field
+     */
+    public @Nullable Object getOrderValue() {
+        return this.orderValue;
+    }
+
+    /**
+     * Gets the id of the last object.
+     *
+     * @return The id of the last object
+     */
+    public Object getId() {
+        return this.id;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PageToken{orderValue=%s, id=%s}", this.orderValue, this.id);
+    }
+
+}
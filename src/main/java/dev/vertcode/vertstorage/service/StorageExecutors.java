@@ -0,0 +1,134 @@
+package dev.vertcode.vertstorage.service;
+
+import lombok.experimental.UtilityClass;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the blocking database & file I/O of {@link StorageService}s. The I/O should never
+ * run on the {@link java.util.concurrent.ForkJoinPool#commonPool()}, since it would starve the
+ * unrelated parallel work that uses that pool and cap the concurrency at the amount of cores.
+ */
+@UtilityClass
+public class StorageExecutors {
+
+    private static volatile ExecutorService SHARED_IO_POOL;
+
+    /**
+     * Gets the I/O pool that's shared by all services that don't have their own executor. This is
+     * a bounded pool with twice the amount of cores (at least 8) threads, created when first used.
+     *
+     * @return The shared I/O pool
+     */
+    public static ExecutorService sharedIoPool() {
+        ExecutorService pool = SHARED_IO_POOL;
+        if (pool != null) {
+            return pool;
+        }
+
+        synchronized (StorageExecutors.class) {
+            if (SHARED_IO_POOL == null) {
+                SHARED_IO_POOL = boundedIoPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 2), "VertStorage I/O");
+            }
+
+            return SHARED_IO_POOL;
+        }
+    }
+
+    /**
+     * Creates a pool with a fixed amount of (daemon) threads for blocking I/O, tasks wait in
+     * an unbounded queue when all threads are busy.
+     *
+     * @param threads The amount of threads
+     * @return The pool
+     */
+    public static ExecutorService boundedIoPool(int threads) {
+        return boundedIoPool(threads, "VertStorage I/O");
+    }
+
+    /**
+     * Creates a pool with a fixed amount of (daemon) threads for blocking I/O, tasks wait in
+     * an unbounded queue when all threads are busy.
+     *
+     * @param threads    The amount of threads
+     * @param threadName The name of the threads, a number is added to it
+     * @return The pool
+     */
+    public static ExecutorService boundedIoPool(int threads, String threadName) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The amount of threads must be positive!");
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), createThreadFactory(threadName));
+        // Let idle threads die, so an unused pool doesn't keep its threads around
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task, this needs Java 21 or newer.
+     * Virtual threads are cheap, so the concurrency is only limited by the database (connection pool).
+     *
+     * @return The executor
+     * @throws UnsupportedOperationException If virtual threads aren't available
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        Method method = findVirtualThreadFactoryMethod();
+        if (method == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or newer!");
+        }
+
+        try {
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new UnsupportedOperationException("Failed to create a virtual thread executor!", ex);
+        }
+    }
+
+    /**
+     * Returns whether virtual threads are available (Java 21 or newer).
+     *
+     * @return Whether virtual threads are available
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return findVirtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Finds Executors#newVirtualThreadPerTaskExecutor, we use reflection since we compile against an older Java version.
+     *
+     * @return The method or null if it doesn't exist
+     */
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a thread factory for daemon threads with the given name and a number.
+     *
+     * @param threadName The name of the threads
+     * @return The thread factory
+     */
+    private static ThreadFactory createThreadFactory(String threadName) {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadName + " #" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
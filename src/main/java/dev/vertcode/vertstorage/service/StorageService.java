@@ -1,17 +1,55 @@
 package dev.vertcode.vertstorage.service;
 
 import dev.vertcode.vertstorage.StorageObject;
+import dev.vertcode.vertstorage.StorageObjects;
 import dev.vertcode.vertstorage.annotations.StorageField;
 import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import dev.vertcode.vertstorage.id.IdAllocator;
+import dev.vertcode.vertstorage.invalidation.InvalidationBus;
+import dev.vertcode.vertstorage.mapping.StorageClassModel;
+import dev.vertcode.vertstorage.mapping.StorageFieldModel;
+import dev.vertcode.vertstorage.metrics.StorageMetrics;
+import dev.vertcode.vertstorage.metrics.StorageOperation;
+import dev.vertcode.vertstorage.object.CacheLoader;
+import dev.vertcode.vertstorage.object.CacheSnapshot;
+import dev.vertcode.vertstorage.object.CacheWeigher;
+import dev.vertcode.vertstorage.object.FieldIndex;
+import dev.vertcode.vertstorage.object.GsonCacheCodec;
 import dev.vertcode.vertstorage.object.ObjectCache;
+import dev.vertcode.vertstorage.object.OffHeapCacheTier;
+import dev.vertcode.vertstorage.query.Conditions;
+import dev.vertcode.vertstorage.query.Query;
+import dev.vertcode.vertstorage.query.QueryEvaluator;
+import dev.vertcode.vertstorage.util.StorageSQLUtil;
+import dev.vertcode.vertstorage.util.StorageUtil;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A storage service handles the database & caching for a specific StorageObject.
@@ -20,26 +58,59 @@ import java.util.concurrent.TimeUnit;
  */
 public abstract class StorageService<T extends StorageObject> {
 
+    // The maximum amount of chunks a streaming warm-up caches at the same time
+    private static final int MAXIMUM_WARMUP_CHUNKS = 4;
+
     protected final Class<T> clazz;
+    protected final StorageClassModel<T> model;
     protected final ObjectCache<Object, T> cache;
     protected final Map<Field, StorageField> fieldMappings = new HashMap<>();
+    protected final StorageMetrics metrics;
+    protected @Nullable Field idField;
+    private final CacheLoader<Object, T> loader = this::loadFromDatabase;
+    private final Map<String, FieldIndex<Object, T>> indexes = new HashMap<>();
+    private volatile boolean cacheAuthoritative;
+    private final Consumer<String> invalidationHandler = this::handleInvalidation;
+    private volatile @Nullable InvalidationBus invalidationBus;
+    private volatile @Nullable WriteBehindBuffer<T> writeBehind;
+    private final WriteQueue<T> writeQueue = new WriteQueue<>(this::writeQueuedObjects, task -> this.executor.execute(task), 500);
+    private volatile @Nullable ChangeTracker<T> changeTracker;
+    private int streamBatchSize = 1000;
+    private volatile @Nullable IdAllocator idAllocator;
+    private int idBlockSize = 50;
+    private volatile MonitoredExecutor executor = new MonitoredExecutor(StorageExecutors.sharedIoPool());
+    private @Nullable Path snapshotFile;
+    private boolean validateSnapshot;
 
     public StorageService(Class<T> clazz) {
-        this.clazz = clazz;
-        this.cache = new ObjectCache<>();
+        this(clazz, new ObjectCache<>());
+    }
 
-        // We make sure the clazz has a @StorageMetadata annotation
-        if (!clazz.isAnnotationPresent(StorageMetadata.class)) {
-            throw new IllegalArgumentException(String.format("The class %s does not have a @StorageMetadata annotation!", clazz.getName()));
-        }
+    public StorageService(Class<T> clazz, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(clazz, new ObjectCache<>(cacheTime, cacheTimeUnit));
+    }
 
-        // We load the field mappings
-        loadFieldMappings();
+    public StorageService(Class<T> clazz, long maximumSize) {
+        this(clazz, new ObjectCache<>(maximumSize));
     }
 
-    public StorageService(Class<T> clazz, long cacheTime, TimeUnit cacheTimeUnit) {
+    public StorageService(Class<T> clazz, long maximumSize, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(clazz, new ObjectCache<>(maximumSize, cacheTime, cacheTimeUnit));
+    }
+
+    public StorageService(Class<T> clazz, long maximumWeight, CacheWeigher<Object, T> weigher) {
+        this(clazz, new ObjectCache<>(maximumWeight, weigher));
+    }
+
+    public StorageService(Class<T> clazz, long maximumWeight, CacheWeigher<Object, T> weigher, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(clazz, new ObjectCache<>(maximumWeight, weigher, cacheTime, cacheTimeUnit));
+    }
+
+    public StorageService(Class<T> clazz, ObjectCache<Object, T> cache) {
         this.clazz = clazz;
-        this.cache = new ObjectCache<>(cacheTime, cacheTimeUnit);
+        this.model = StorageClassModel.of(clazz);
+        this.cache = cache;
+        this.metrics = new StorageMetrics(cache.getMetrics());
 
         // We make sure the clazz has a @StorageMetadata annotation
         if (!clazz.isAnnotationPresent(StorageMetadata.class)) {
@@ -48,39 +119,288 @@ public abstract class StorageService<T extends StorageObject> {
 
         // We load the field mappings
         loadFieldMappings();
+
+        // Numeric ids can be looked up without boxing them
+        if (this.idField != null && isPrimitiveId(this.idField.getType())) {
+            cache.enablePrimitiveKeys();
+        }
     }
 
     /**
      * Loads the field mappings for the StorageObject.
      */
     private void loadFieldMappings() {
-        // Loop through all the fields in the class
-        for (Field declaredField : this.clazz.getDeclaredFields()) {
-            // Check if the field has a @StorageField annotation
-            if (!declaredField.isAnnotationPresent(StorageField.class)) {
-                continue;
-            }
+        // Loop through all the storage fields of the model, the model only scans the class once
+        for (StorageFieldModel field : this.model.getFields()) {
+            // Add the field to the field mappings
+            this.fieldMappings.put(field.getField(), field.getAnnotation());
 
-            // Get the StorageField annotation
-            StorageField metadata = declaredField.getAnnotation(StorageField.class);
+            // Remember the id field, so ids can be converted from their string form
+            if (field.isId()) {
+                this.idField = field.getField();
+            }
 
-            // Add the field to the field mappings
-            this.fieldMappings.put(declaredField, metadata);
+            // Check if the field should be indexed, if so the index follows the cache from now on
+            if (field.getAnnotation().indexed()) {
+                createIndex(field);
+            }
         }
     }
 
+    /**
+     * Creates an in-memory index for the given field and lets it listen to the cache.
+     *
+     * @param field The field to index
+     */
+    private void createIndex(StorageFieldModel field) {
+        FieldIndex<Object, T> index = new FieldIndex<>(field::get);
+
+        this.indexes.put(field.getColumnName(), index);
+        this.cache.addListener(index);
+    }
+
     /**
      * Starts up the service.
      */
     public void startupService() {
-        // Do nothing by default
+        // Restore the cache of the previous run, if there is one
+        if (this.snapshotFile != null) {
+            restoreCacheSnapshot(this.snapshotFile);
+        }
+    }
+
+    /**
+     * Starts up the service and warms up its cache, this blocks until the warm-up is done.
+     *
+     * @param warmup The objects to load into the cache
+     */
+    public void startupService(CacheWarmup warmup) {
+        startupService();
+
+        warmUpCache(warmup);
+    }
+
+    /**
+     * Loads the objects described by the warm-up into the cache, this blocks until they're all cached.
+     *
+     * @param warmup The objects to load into the cache
+     * @return The amount of objects that were cached
+     */
+    public int warmUpCache(CacheWarmup warmup) {
+        return warmUpCacheAsync(warmup).join();
+    }
+
+    /**
+     * Asynchronously loads the objects described by the warm-up into the cache. Id warm-ups are split
+     * into chunks which are loaded (and cached) in parallel on the executor of the warm-up. The other
+     * warm-ups stream the objects from the database in batches, every chunk is cached on the executor
+     * while the next one is read, so the whole table is never held in memory at once.
+     *
+     * @param warmup The objects to load into the cache
+     * @return The amount of objects that were cached
+     */
+    public CompletableFuture<Integer> warmUpCacheAsync(CacheWarmup warmup) {
+        Executor executor = warmup.getExecutor() != null ? warmup.getExecutor() : this.executor;
+
+        // For id lists, every chunk queries its own ids
+        if (warmup.getType() == CacheWarmup.Type.IDS) {
+            return warmUpChunks(warmup, warmup.getIds(), executor, id -> this.cache.get(id, this.loader) != null);
+        }
+
+        // Otherwise we stream the objects and cache them in chunks while the stream is read
+        return CompletableFuture.supplyAsync(() -> warmUpStream(warmup, executor), executor).thenApply(cached -> {
+            // If every object is cached and nothing can be evicted or expire, the cache can answer field lookups
+            if (warmup.getType() == CacheWarmup.Type.ALL && this.cache.getMaximumSize() == ObjectCache.UNBOUNDED && !this.cache.isExpiring()) {
+                this.cacheAuthoritative = true;
+            }
+
+            return cached;
+        });
+    }
+
+    /**
+     * Streams the objects of the warm-up from the database and caches them in chunks on the executor. At most
+     * {@link #MAXIMUM_WARMUP_CHUNKS} chunks are cached at the same time, when that many are in flight the next
+     * chunk is cached on this thread. This runs on the executor itself, so before waiting on the chunks this
+     * thread takes back and caches the chunks that no thread has started yet, otherwise a small or busy executor
+     * would never get to them.
+     *
+     * @param warmup   The warm-up, of type {@link CacheWarmup.Type#ALL} or {@link CacheWarmup.Type#FIELD}
+     * @param executor The executor to cache the chunks on
+     * @return The amount of objects that were cached
+     */
+    private int warmUpStream(CacheWarmup warmup, Executor executor) {
+        int chunkSize = warmup.getChunkSize();
+        CacheWarmup.ProgressListener progressListener = warmup.getProgressListener();
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger cached = new AtomicInteger();
+        List<WarmupChunk> chunks = new ArrayList<>();
+
+        try (Stream<T> stream = warmup.getType() == CacheWarmup.Type.FIELD ? streamAll(warmup.getFieldName(), warmup.getValue()) : streamAll()) {
+            Iterator<T> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                List<T> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                }
+
+                Runnable cacheChunk = () -> {
+                    for (T object : chunk) {
+                        cacheObject(object);
+                        cached.incrementAndGet();
+                    }
+
+                    // Let the listener know another chunk is done, the total isn't known while streaming
+                    int processedItems = processed.addAndGet(chunk.size());
+                    if (progressListener != null) {
+                        progressListener.onProgress(processedItems, -1);
+                    }
+                };
+
+                chunks.removeIf(WarmupChunk::isDone);
+                if (chunks.size() >= MAXIMUM_WARMUP_CHUNKS) {
+                    cacheChunk.run();
+                } else {
+                    WarmupChunk warmupChunk = new WarmupChunk(cacheChunk);
+                    chunks.add(warmupChunk);
+                    executor.execute(warmupChunk);
+                }
+            }
+        }
+
+        // Cache the chunks the executor didn't get to yet ourselves, this thread may be the one they're queued behind
+        for (WarmupChunk chunk : chunks) {
+            chunk.run();
+        }
+
+        for (WarmupChunk chunk : chunks) {
+            chunk.join();
+        }
+        return cached.get();
+    }
+
+    /**
+     * Splits the items into chunks and handles the chunks in parallel on the executor.
+     *
+     * @param warmup   The warm-up
+     * @param items    The items to handle (ids or objects)
+     * @param executor The executor to handle the chunks on
+     * @param handler  Handles a single item, returns whether an object was cached
+     * @return The amount of objects that were cached
+     */
+    private <I> CompletableFuture<Integer> warmUpChunks(CacheWarmup warmup, List<I> items, Executor executor, Predicate<I> handler) {
+        int total = items.size();
+        int chunkSize = warmup.getChunkSize();
+        CacheWarmup.ProgressListener progressListener = warmup.getProgressListener();
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger cached = new AtomicInteger();
+
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int start = 0; start < total; start += chunkSize) {
+            List<I> chunk = items.subList(start, Math.min(total, start + chunkSize));
+
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (I item : chunk) {
+                    if (handler.test(item)) {
+                        cached.incrementAndGet();
+                    }
+                }
+
+                // Let the listener know another chunk is done
+                int processedItems = processed.addAndGet(chunk.size());
+                if (progressListener != null) {
+                    progressListener.onProgress(processedItems, total);
+                }
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenApply(ignored -> cached.get());
     }
 
     /**
      * Shuts down the service.
      */
     public void shutdownService() {
-        // Do nothing by default
+        // Write the dirty objects before anything else, this blocks until they're all written
+        disableWriteBehind();
+        // The same goes for the queued async upserts
+        this.writeQueue.flush();
+
+        // Make sure the other nodes hear about our last changes
+        InvalidationBus invalidationBus = this.invalidationBus;
+        if (invalidationBus != null) {
+            invalidationBus.flush();
+        }
+
+        if (this.snapshotFile != null) {
+            writeCacheSnapshot(this.snapshotFile);
+        }
+    }
+
+    /**
+     * Enables the cache snapshot, {@link #shutdownService()} writes the cache to the file and the next
+     * {@link #startupService()} restores it, so the cache is warm right after a restart. Restored objects
+     * keep their remaining cache time. This must be enabled before the service is started.
+     * <p>
+     * If validation is enabled, every restored object is reloaded from the database in the background
+     * (objects that no longer exist are removed), otherwise the restored objects are trusted until they expire.
+     *
+     * @param file     The file to store the snapshot in
+     * @param validate Whether to validate the restored objects against the database
+     */
+    public void enableCacheSnapshot(Path file, boolean validate) {
+        this.snapshotFile = file;
+        this.validateSnapshot = validate;
+    }
+
+    /**
+     * Writes the cached objects to the snapshot file.
+     *
+     * @param file The file to write the snapshot to
+     * @return The amount of objects that were written
+     */
+    public int writeCacheSnapshot(Path file) {
+        try {
+            return CacheSnapshot.write(this.cache, file, this::encodeId, new GsonCacheCodec<>(this.clazz));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to write the cache snapshot to " + file + "!", ex);
+        }
+    }
+
+    /**
+     * Restores the cached objects from the snapshot file, the file is deleted afterwards so an old
+     * snapshot is never restored twice (e.g. after a crash). If validation is enabled the restored
+     * objects are reloaded from the database in the background.
+     *
+     * @param file The snapshot file
+     * @return The amount of objects that were restored
+     */
+    public int restoreCacheSnapshot(Path file) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        List<Object> ids;
+        try {
+            ids = CacheSnapshot.read(this.cache, file, this::decodeId, new GsonCacheCodec<>(this.clazz));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return 0;
+        }
+
+        // The objects are restored at this point, so failing to delete the file doesn't undo that
+        try {
+            Files.delete(file);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        if (this.validateSnapshot) {
+            CacheWarmup validation = CacheWarmup.ids(ids);
+            warmUpChunks(validation, ids, this.executor, this::validateCachedObject);
+        }
+
+        return ids.size();
     }
 
     /**
@@ -97,19 +417,77 @@ public abstract class StorageService<T extends StorageObject> {
      * @return The object with the given id
      */
     public @Nullable T find(Object id) {
-        // First we get the object from the cache
-        T object = this.cache.get(id);
-        if (object != null) {
-            return object;
+        long startTime = System.nanoTime();
+        try {
+            // Get the object from the cache, if it isn't cached we query the database (only once, even if other threads are looking for it too)
+            return this.cache.get(id, this.loader);
+        } finally {
+            this.metrics.record(StorageOperation.FIND, startTime);
         }
+    }
 
-        // If the object is not in the cache, we query the database
-        object = findInDatabase(id);
-        if (object != null) {
-            this.cache.put(id, object);
+    /**
+     * Gets an object with the provided int id in the cache or queries the database for it. If the
+     * id field is an int or long, cached objects are found without boxing the id.
+     *
+     * @param id The id of the object to find
+     * @return The object with the given id
+     */
+    public @Nullable T find(int id) {
+        if (!this.cache.usesPrimitiveKeys()) {
+            return find((Object) id);
         }
 
-        return object;
+        return findPrimitive(id);
+    }
+
+    /**
+     * Gets an object with the provided long id in the cache or queries the database for it. If the
+     * id field is an int or long, cached objects are found without boxing the id.
+     *
+     * @param id The id of the object to find
+     * @return The object with the given id
+     */
+    public @Nullable T find(long id) {
+        if (!this.cache.usesPrimitiveKeys()) {
+            return find((Object) id);
+        }
+
+        return findPrimitive(id);
+    }
+
+    /**
+     * Gets an object with the provided numeric id in the cache, the id is only boxed
+     * (to the type of the id field) when the database has to be queried.
+     *
+     * @param id The id of the object to find
+     * @return The object with the given id
+     */
+    private @Nullable T findPrimitive(long id) {
+        long startTime = System.nanoTime();
+        try {
+            T object = this.cache.getPrimitive(id);
+            if (object != null) {
+                return object;
+            }
+
+            Class<?> idType = this.idField.getType();
+            Object boxedId = idType == int.class || idType == Integer.class ? (Object) (int) id : (Object) id;
+            return this.cache.get(boxedId, this.loader);
+        } finally {
+            this.metrics.record(StorageOperation.FIND, startTime);
+        }
+    }
+
+    /**
+     * Asynchronously gets an object with the provided id in the cache or queries the database for it.
+     * If the object is already being loaded (by any thread) the result of that load is shared.
+     *
+     * @param id The id of the object to find
+     * @return The object with the given id
+     */
+    public CompletableFuture<T> findAsync(Object id) {
+        return this.cache.getAsync(id, this.loader, this.executor);
     }
 
     /**
@@ -120,6 +498,82 @@ public abstract class StorageService<T extends StorageObject> {
      */
     public abstract @Nullable T findInDatabase(Object id);
 
+    /**
+     * Gets the objects with the provided ids, the cached objects are looked up in bulk and all the
+     * others are queried from the database at once (instead of one query per id).
+     *
+     * @param ids The ids of the objects to find
+     * @return The objects that were found, ids that don't exist are left out
+     */
+    public List<T> findMany(Collection<?> ids) {
+        long startTime = System.nanoTime();
+        try {
+            Map<Object, T> cachedObjects = this.cache.getAll(ids);
+            List<T> objects = new ArrayList<>(cachedObjects.values());
+            WriteBehindBuffer<T> writeBehind = this.writeBehind;
+
+            // Collect the ids we have to query, dirty objects are never queried since the database doesn't have their latest state
+            List<Object> missingIds = new ArrayList<>();
+            for (Object id : ids) {
+                if (cachedObjects.containsKey(id) || this.cache.isMissing(id)) {
+                    continue;
+                }
+
+                T dirtyObject = writeBehind == null ? null : writeBehind.getDirty(id);
+                if (dirtyObject != null) {
+                    cacheObject(dirtyObject);
+                    objects.add(dirtyObject);
+                    continue;
+                }
+
+                missingIds.add(id);
+            }
+
+            if (missingIds.isEmpty()) {
+                return objects;
+            }
+
+            for (T object : findManyInDatabase(missingIds)) {
+                trackChanges(object);
+                cacheObject(object);
+                objects.add(object);
+            }
+
+            return objects;
+        } finally {
+            this.metrics.record(StorageOperation.FIND_MANY, startTime);
+        }
+    }
+
+    /**
+     * Asynchronously gets the objects with the provided ids, see {@link #findMany(Collection)}.
+     *
+     * @param ids The ids of the objects to find
+     * @return The objects that were found
+     */
+    public CompletableFuture<List<T>> findManyAsync(Collection<?> ids) {
+        return CompletableFuture.supplyAsync(() -> findMany(ids), this.executor);
+    }
+
+    /**
+     * Queries the database for the objects with the given ids. By default every id is queried on its
+     * own, the backends override this to query all the ids at once.
+     *
+     * @param ids The ids of the objects to query
+     * @return The objects that were found
+     */
+    public List<T> findManyInDatabase(Collection<?> ids) {
+        List<T> objects = new ArrayList<>();
+        for (Object id : ids) {
+            T object = findInDatabase(id);
+            if (object != null) {
+                objects.add(object);
+            }
+        }
+
+        return objects;
+    }
+
     /**
      * Asynchronously queries the database for the object with the given id.
      *
@@ -127,7 +581,7 @@ public abstract class StorageService<T extends StorageObject> {
      * @return The object with the given id
      */
     public CompletableFuture<T> findInDatabaseAsync(Object id) {
-        return CompletableFuture.supplyAsync(() -> findInDatabase(id));
+        return CompletableFuture.supplyAsync(() -> findInDatabase(id), this.executor);
     }
 
     /**
@@ -147,136 +601,1368 @@ public abstract class StorageService<T extends StorageObject> {
      * @return The object with the given field name and value
      */
     public CompletableFuture<T> findOneInDatabaseAsync(String fieldName, Object value) {
-        return CompletableFuture.supplyAsync(() -> findOneInDatabase(fieldName, value));
+        return CompletableFuture.supplyAsync(() -> findOneInDatabase(fieldName, value), this.executor);
     }
 
     /**
-     * Finds all the cached objects.
+     * Finds the object with the given field name and value. If the field is indexed and the cache
+     * is authoritative this is answered from the cache, otherwise the database is queried.
+     * <p>
+     * Index lookups use {@link Object#equals(Object)}, so the value must have the same type as the field.
      *
-     * @return All the cached objects
+     * @param fieldName The name of the field (or its column)
+     * @param value     The value of the field
+     * @return The object with the given field name and value
      */
-    public List<T> findAllCached() {
-        return this.cache.getValues();
+    public @Nullable T findOne(String fieldName, Object value) {
+        FieldIndex<Object, T> index = getIndex(fieldName);
+        if (index == null || !this.cacheAuthoritative) {
+            return findOneInDatabase(fieldName, value);
+        }
+
+        for (Object id : index.getKeys(value)) {
+            T object = this.cache.get(id);
+            if (object != null) {
+                return object;
+            }
+        }
+
+        return null;
     }
 
     /**
-     * Queries the database for all objects of the given class.
+     * Asynchronously finds the object with the given field name and value, see {@link #findOne(String, Object)}.
      *
-     * @return All objects of the given class
+     * @param fieldName The name of the field (or its column)
+     * @param value     The value of the field
+     * @return The object with the given field name and value
      */
-    public abstract List<T> findAllInDatabase();
+    public CompletableFuture<T> findOneAsync(String fieldName, Object value) {
+        return CompletableFuture.supplyAsync(() -> findOne(fieldName, value), this.executor);
+    }
 
     /**
-     * Asynchronously queries the database for all objects of the given class.
+     * Finds all the objects with the given field name and value. If the field is indexed and the
+     * cache is authoritative this is answered from the cache, otherwise the database is queried.
      *
-     * @return All objects of the given class
+     * @param fieldName The name of the field (or its column)
+     * @param value     The value of the field
+     * @return All the objects with the given field name and value
      */
-    public CompletableFuture<List<T>> findAllInDatabaseAsync() {
-        return CompletableFuture.supplyAsync(this::findAllInDatabase);
+    public List<T> findAll(String fieldName, Object value) {
+        FieldIndex<Object, T> index = getIndex(fieldName);
+        if (index == null || !this.cacheAuthoritative) {
+            return findAllInDatabase(fieldName, value);
+        }
+
+        List<T> objects = new ArrayList<>();
+        for (Object id : index.getKeys(value)) {
+            T object = this.cache.get(id);
+            if (object != null) {
+                objects.add(object);
+            }
+        }
+
+        return objects;
     }
 
     /**
-     * Queries the database for all objects of the given class with the given field name and value.
+     * Asynchronously finds all the objects with the given field name and value, see {@link #findAll(String, Object)}.
      *
-     * @param fieldName The name of the field to query
-     * @param value     The value of the field to query
-     * @return All objects of the given class with the given field name and value
+     * @param fieldName The name of the field (or its column)
+     * @param value     The value of the field
+     * @return All the objects with the given field name and value
      */
-    public abstract List<T> findAllInDatabase(String fieldName, Object value);
+    public CompletableFuture<List<T>> findAllAsync(String fieldName, Object value) {
+        return CompletableFuture.supplyAsync(() -> findAll(fieldName, value), this.executor);
+    }
 
     /**
-     * Asynchronously queries the database for all objects of the given class with the given field name and value.
+     * Sets whether the cache is authoritative, meaning it contains every object of this service. In that
+     * case lookups of indexed fields are answered from the cache and upserted objects are always cached.
+     * <p>
+     * This is set automatically after warming up all objects into a cache that is unbounded and doesn't expire.
      *
-     * @param fieldName The name of the field to query
-     * @param value     The value of the field to query
-     * @return All objects of the given class with the given field name and value
+     * @param cacheAuthoritative Whether the cache is authoritative
      */
-    public CompletableFuture<List<T>> findAllInDatabaseAsync(String fieldName, Object value) {
-        return CompletableFuture.supplyAsync(() -> findAllInDatabase(fieldName, value));
+    public void setCacheAuthoritative(boolean cacheAuthoritative) {
+        this.cacheAuthoritative = cacheAuthoritative;
     }
 
     /**
-     * Upsert the object into the database.
+     * Returns whether the cache is authoritative, see {@link #setCacheAuthoritative(boolean)}.
      *
-     * @param object The object to upsert
+     * @return Whether the cache is authoritative
      */
-    public abstract void upsert(T object);
+    public boolean isCacheAuthoritative() {
+        return this.cacheAuthoritative;
+    }
 
     /**
-     * Asynchronously upsert the object into the database.
+     * Gets the names of the columns that are indexed.
      *
-     * @param object The object to upsert
+     * @return The indexed column names
      */
-    public CompletableFuture<Void> upsertAsync(T object) {
-        return CompletableFuture.runAsync(() -> upsert(object));
+    public Set<String> getIndexedColumns() {
+        return Collections.unmodifiableSet(this.indexes.keySet());
     }
 
     /**
-     * Loads the object from the database.
+     * Finds all the cached objects.
      *
-     * @param object The object to load
+     * @return All the cached objects
      */
-    public abstract void delete(T object);
+    public List<T> findAllCached() {
+        return this.cache.getValues();
+    }
 
     /**
-     * Asynchronously loads the object from the database.
+     * Iterates over all the cached objects, this doesn't copy the cache
+     * so it's cheaper than {@link #findAllCached()} for big caches.
      *
-     * @param object The object to load
+     * @param consumer The consumer to call for every cached object
      */
-    public CompletableFuture<Void> deleteAsync(T object) {
-        return CompletableFuture.runAsync(() -> delete(object));
+    public void forEachCached(Consumer<T> consumer) {
+        for (T object : this.cache.values()) {
+            consumer.accept(object);
+        }
     }
 
     /**
-     * Caches the object.
+     * Queries the database for all objects of the given class.
      *
-     * @param object The object to cache
+     * @return All objects of the given class
      */
-    public void cacheObject(T object) {
-        this.cache.put(object.getIdentifier(), object);
+    public abstract List<T> findAllInDatabase();
+
+    /**
+     * Asynchronously queries the database for all objects of the given class.
+     *
+     * @return All objects of the given class
+     */
+    public CompletableFuture<List<T>> findAllInDatabaseAsync() {
+        return CompletableFuture.supplyAsync(this::findAllInDatabase, this.executor);
     }
 
     /**
-     * Uncaches the object.
+     * Streams all the objects of the given class from the database, the objects are read while the stream
+     * is consumed so memory use doesn't depend on the size of the table. The stream holds on to database
+     * resources, so it must be closed (e.g. with try-with-resources). The objects are not cached.
+     * <p>
+     * By default this streams the result of {@link #findAllInDatabase()}, the backends override it to
+     * read the objects in batches of {@link #getStreamBatchSize()}.
      *
-     * @param object The object to uncache
+     * @return A stream of all the objects
      */
-    public void uncacheObject(T object) {
-        this.cache.remove(object.getIdentifier());
+    public Stream<T> streamAll() {
+        return findAllInDatabase().stream();
     }
 
     /**
-     * Uncaches the object with the given id.
+     * Streams all the objects of the given class with the given field name and value from the database,
+     * see {@link #streamAll()}. The stream must be closed.
      *
-     * @param id The id of the object to uncache
+     * @param fieldName The name of the field to query
+     * @param value     The value of the field to query
+     * @return A stream of all the objects with the given field name and value
      */
-    public void uncacheObject(Object id) {
-        this.cache.remove(id);
+    public Stream<T> streamAll(String fieldName, Object value) {
+        return findAllInDatabase(fieldName, value).stream();
     }
 
     /**
-     * Gets the next id for the StorageObject this service is for.
+     * Gets the first page of objects ordered by the given field, see {@link #findPage(PageToken, int, String)}.
      *
-     * @return The next id for the StorageObject this service is for
+     * @param limit        The maximum amount of objects on the page
+     * @param orderByField The name of the field (or its column) to order by
+     * @return The first page
      */
-    public abstract Object getNextId();
+    public Page<T> findPage(int limit, String orderByField) {
+        return findPage(null, limit, orderByField);
+    }
 
     /**
-     * Gets the metadata of the StorageObject this service is for.
+     * Gets the page of objects that comes after the given token, ordered (ascending) by the given field
+     * and then by id. This uses a keyset seek (the query starts right after the last object of the previous
+     * page), so deep pages are as cheap as the first page. The order field should not contain nulls.
      *
-     * @return The metadata of the StorageObject this service is for
+     * @param after        The token of the previous page or null for the first page
+     * @param limit        The maximum amount of objects on the page
+     * @param orderByField The name of the field (or its column) to order by
+     * @return The page
      */
-    public StorageMetadata getMetadata() {
-        return this.clazz.getAnnotation(StorageMetadata.class);
+    public Page<T> findPage(@Nullable PageToken after, int limit, String orderByField) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit of a page must be positive!");
+        }
+
+        Field orderField = findField(orderByField);
+        if (orderField == null) {
+            throw new IllegalArgumentException("The class " + this.clazz.getName() + " doesn't have a field " + orderByField + "!");
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            return findPageInDatabase(after, limit, orderField);
+        } finally {
+            this.metrics.record(StorageOperation.FIND_PAGE, startTime);
+        }
     }
 
     /**
-     * Gets the cache of this service.
+     * Asynchronously gets the page of objects that comes after the given token, see {@link #findPage(PageToken, int, String)}.
      *
-     * @return The cache of this service
+     * @param after        The token of the previous page or null for the first page
+     * @param limit        The maximum amount of objects on the page
+     * @param orderByField The name of the field (or its column) to order by
+     * @return The page
      */
-    public ObjectCache<Object, T> getCache() {
-        return this.cache;
+    public CompletableFuture<Page<T>> findPageAsync(@Nullable PageToken after, int limit, String orderByField) {
+        return CompletableFuture.supplyAsync(() -> findPage(after, limit, orderByField), this.executor);
+    }
+
+    /**
+     * Queries the database for a page of objects, see {@link #findPage(PageToken, int, String)}. By default
+     * this scans {@link #streamAll()} and keeps the smallest objects after the token, the backends override
+     * this with a keyset seek.
+     *
+     * @param after      The token of the previous page or null for the first page
+     * @param limit      The maximum amount of objects on the page
+     * @param orderField The field to order by
+     * @return The page
+     */
+    protected Page<T> findPageInDatabase(@Nullable PageToken after, int limit, Field orderField) {
+        Comparator<T> comparator = createPageComparator(orderField);
+        // Keep the limit + 1 smallest objects in a heap (with the biggest on top), so we know if there's a next page
+        PriorityQueue<T> smallest = new PriorityQueue<>(comparator.reversed());
+
+        try (Stream<T> stream = streamAll()) {
+            stream.forEach(object -> {
+                if (after != null && comparePageKeys(getFieldValue(orderField, object), object.getIdentifier(), after.getOrderValue(), after.getId()) <= 0) {
+                    return;
+                }
+
+                smallest.add(object);
+                if (smallest.size() > limit + 1) {
+                    smallest.poll();
+                }
+            });
+        }
+
+        List<T> objects = new ArrayList<>(smallest);
+        objects.sort(comparator);
+        return createPage(objects, limit, orderField);
+    }
+
+    /**
+     * Creates a page of the objects, the objects must be sorted and may contain one object more than the
+     * limit (which means there is a next page).
+     *
+     * @param objects    The sorted objects
+     * @param limit      The maximum amount of objects on the page
+     * @param orderField The field the objects are ordered by
+     * @return The page
+     */
+    protected Page<T> createPage(List<T> objects, int limit, Field orderField) {
+        if (objects.size() <= limit) {
+            return new Page<>(objects, null);
+        }
+
+        List<T> items = new ArrayList<>(objects.subList(0, limit));
+        T last = items.get(limit - 1);
+
+        return new Page<>(items, new PageToken(getFieldValue(orderField, last), last.getIdentifier()));
+    }
+
+    /**
+     * Finds all the objects that match the query, the storage services translate the query to their own
+     * query language so only the matching objects are loaded.
+     *
+     * @param query The query
+     * @return The objects that match the query, in the order of the query
+     */
+    public List<T> query(Query query) {
+        List<T> objects;
+        long startTime = System.nanoTime();
+        try {
+            objects = queryInDatabase(query);
+        } finally {
+            this.metrics.record(StorageOperation.QUERY, startTime);
+        }
+
+        // Objects with only some of their fields must never be mistaken for complete objects
+        if (query.hasProjection()) {
+            for (T object : objects) {
+                StorageObjects.markPartial(object);
+            }
+        }
+
+        return objects;
+    }
+
+    /**
+     * Finds the object with the given id, but only loads the given fields (and the id). The object
+     * is partial, so it can't be cached or upserted, see {@link Query#select(String...)}.
+     *
+     * @param id         The id of the object
+     * @param fieldNames The names of the fields (or their columns) to load
+     * @return The partial object or null if it doesn't exist
+     */
+    public @Nullable T findPartial(Object id, String... fieldNames) {
+        return queryOne(Query.where(Conditions.eq(getMetadata().idColumnName(), id)).select(fieldNames));
+    }
+
+    /**
+     * Finds the first object that matches the query, see {@link #query(Query)}.
+     *
+     * @param query The query
+     * @return The first object that matches the query or null if there is none
+     */
+    public @Nullable T queryOne(Query query) {
+        List<T> objects = query(query.limit(1));
+
+        return objects.isEmpty() ? null : objects.get(0);
+    }
+
+    /**
+     * Asynchronously finds all the objects that match the query, see {@link #query(Query)}.
+     *
+     * @param query The query
+     * @return The objects that match the query, in the order of the query
+     */
+    public CompletableFuture<List<T>> queryAsync(Query query) {
+        return CompletableFuture.supplyAsync(() -> query(query), this.executor);
+    }
+
+    /**
+     * Queries the database for the objects that match the query, see {@link #query(Query)}. By default
+     * this evaluates the query in memory over {@link #streamAll()}, the backends override this to filter
+     * in the database.
+     *
+     * @param query The query
+     * @return The objects that match the query, in the order of the query
+     */
+    protected List<T> queryInDatabase(Query query) {
+        QueryEvaluator<T> evaluator = createQueryEvaluator();
+
+        try (Stream<T> stream = streamAll()) {
+            Stream<T> matches = stream.filter(object -> evaluator.matches(query.getCondition(), object));
+            if (!query.getOrders().isEmpty()) {
+                matches = matches.sorted(evaluator.createComparator(query.getOrders()));
+            }
+
+            if (query.hasLimit()) {
+                matches = matches.limit(query.getLimit());
+            }
+
+            if (query.hasProjection()) {
+                List<Field> fields = getProjectedFields(query);
+                matches = matches.map(object -> createProjection(object, fields));
+            }
+
+            return matches.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Creates an evaluator that evaluates queries in memory against the objects of this service.
+     *
+     * @return The evaluator
+     */
+    protected QueryEvaluator<T> createQueryEvaluator() {
+        Map<String, Function<T, Object>> accessors = new HashMap<>();
+
+        return new QueryEvaluator<>(fieldName -> accessors.computeIfAbsent(fieldName, name -> {
+            Field field = findField(name);
+            if (field == null) {
+                throw new IllegalArgumentException("The class " + this.clazz.getName() + " doesn't have a field " + name + "!");
+            }
+
+            return object -> getFieldValue(field, object);
+        }));
+    }
+
+    /**
+     * Gets the fields a query with a projection loads, this always includes the id field.
+     *
+     * @param query The query
+     * @return The fields to load
+     */
+    protected List<Field> getProjectedFields(Query query) {
+        Set<Field> fields = new LinkedHashSet<>();
+        if (this.idField != null) {
+            fields.add(this.idField);
+        }
+
+        for (String fieldName : query.getProjection()) {
+            Field field = findField(fieldName);
+            if (field == null) {
+                throw new IllegalArgumentException("The class " + this.clazz.getName() + " doesn't have a field " + fieldName + "!");
+            }
+
+            fields.add(field);
+        }
+
+        return new ArrayList<>(fields);
+    }
+
+    /**
+     * Creates a copy of the object with only the given fields.
+     *
+     * @param object The object to copy
+     * @param fields The fields to copy
+     * @return The copy
+     */
+    private T createProjection(T object, List<Field> fields) {
+        T projection = this.model.newInstance();
+        for (Field field : fields) {
+            StorageFieldModel fieldModel = this.model.getField(field);
+            fieldModel.set(projection, fieldModel.get(object));
+        }
+
+        return projection;
+    }
+
+    /**
+     * Ensures the object isn't partial, since partial objects would overwrite the fields that weren't loaded.
+     *
+     * @param object The object to check
+     * @throws IllegalArgumentException If the object is partial
+     */
+    private void ensureComplete(T object) {
+        if (object.isPartial()) {
+            throw new IllegalArgumentException("The object " + object.getIdentifier() + " of " + this.clazz.getName() + " is partial, load the complete object first!");
+        }
+    }
+
+    /**
+     * Gets the column name of the storage field with the given field or column name.
+     *
+     * @param fieldName The name of the field or its column
+     * @return The column name
+     * @throws IllegalArgumentException If there is no such field
+     */
+    protected String getColumnName(String fieldName) {
+        Field field = findField(fieldName);
+        if (field == null) {
+            throw new IllegalArgumentException("The class " + this.clazz.getName() + " doesn't have a field " + fieldName + "!");
+        }
+
+        return this.fieldMappings.get(field).columnName();
+    }
+
+    /**
+     * Sets the amount of objects that are fetched from the database at once by the streams.
+     *
+     * @param streamBatchSize The batch size of the streams
+     */
+    public void setStreamBatchSize(int streamBatchSize) {
+        if (streamBatchSize <= 0) {
+            throw new IllegalArgumentException("The stream batch size must be positive!");
+        }
+
+        this.streamBatchSize = streamBatchSize;
+    }
+
+    /**
+     * Gets the amount of objects that are fetched from the database at once by the streams.
+     *
+     * @return The batch size of the streams
+     */
+    public int getStreamBatchSize() {
+        return this.streamBatchSize;
+    }
+
+    /**
+     * Queries the database for all objects of the given class with the given field name and value.
+     *
+     * @param fieldName The name of the field to query
+     * @param value     The value of the field to query
+     * @return All objects of the given class with the given field name and value
+     */
+    public abstract List<T> findAllInDatabase(String fieldName, Object value);
+
+    /**
+     * Asynchronously queries the database for all objects of the given class with the given field name and value.
+     *
+     * @param fieldName The name of the field to query
+     * @param value     The value of the field to query
+     * @return All objects of the given class with the given field name and value
+     */
+    public CompletableFuture<List<T>> findAllInDatabaseAsync(String fieldName, Object value) {
+        return CompletableFuture.supplyAsync(() -> findAllInDatabase(fieldName, value), this.executor);
+    }
+
+    /**
+     * Upsert the object into the database.
+     *
+     * @param object The object to upsert
+     */
+    public void upsert(T object) {
+        ensureComplete(object);
+
+        // Capture the values first, so changes made while writing are still seen as changes afterwards
+        ChangeTracker<T> tracker = this.changeTracker;
+        Object[] values = tracker == null ? null : tracker.capture(object);
+        List<Field> changedFields = values == null ? null : tracker.getChangedFields(object, values);
+
+        // Nothing is written if no field changed
+        boolean written = changedFields == null || !changedFields.isEmpty();
+        long startTime = System.nanoTime();
+        try {
+            if (changedFields == null) {
+                upsertInDatabase(object);
+            } else if (written) {
+                updateInDatabase(object, changedFields);
+            }
+        } finally {
+            this.metrics.record(StorageOperation.UPSERT, startTime);
+        }
+
+        if (values != null) {
+            StorageObjects.setStoredValues(object, values);
+        }
+
+        afterUpsert(object, written);
+    }
+
+    /**
+     * Updates the given fields of the object in the database, without touching the cache. This is used
+     * instead of {@link #upsertInDatabase(StorageObject)} when change tracking is enabled and only some
+     * of the fields changed. By default the whole object is upserted, the backends override this to only
+     * write the changed fields.
+     *
+     * @param object        The object to update
+     * @param changedFields The fields that changed (this never includes the id field)
+     */
+    protected void updateInDatabase(T object, List<Field> changedFields) {
+        upsertInDatabase(object);
+    }
+
+    /**
+     * Enables change tracking, a snapshot of the fields is kept for every object that's loaded into the
+     * cache or written, and {@link #upsert(StorageObject)} only writes the fields that changed since then
+     * (and nothing at all if no field changed). Objects without a snapshot (e.g. new objects or objects
+     * from {@link #findAll()}) are still upserted completely.
+     */
+    public void enableChangeTracking() {
+        List<StorageFieldModel> fields = new ArrayList<>(this.model.getFields());
+        fields.removeIf(StorageFieldModel::isId);
+
+        this.changeTracker = new ChangeTracker<>(fields);
+    }
+
+    /**
+     * Disables change tracking, all the objects are upserted completely again.
+     */
+    public void disableChangeTracking() {
+        this.changeTracker = null;
+    }
+
+    /**
+     * Returns whether change tracking is enabled, see {@link #enableChangeTracking()}.
+     *
+     * @return Whether change tracking is enabled
+     */
+    public boolean isChangeTracking() {
+        return this.changeTracker != null;
+    }
+
+    /**
+     * Takes a snapshot of the fields of the object if change tracking is enabled, this should
+     * only be done when the object matches the database.
+     *
+     * @param object The object that was loaded from the database
+     */
+    private void trackChanges(T object) {
+        ChangeTracker<T> tracker = this.changeTracker;
+        if (tracker != null) {
+            tracker.snapshot(object);
+        }
+    }
+
+    /**
+     * Upserts all the objects into the database at once, the backends write them in a single batch.
+     *
+     * @param objects The objects to upsert
+     */
+    public void upsertAll(Collection<T> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        for (T object : objects) {
+            ensureComplete(object);
+        }
+
+        // The batch writes the objects completely, so afterwards they match the captured values
+        ChangeTracker<T> tracker = this.changeTracker;
+        List<Object[]> values = new ArrayList<>(objects.size());
+        if (tracker != null) {
+            for (T object : objects) {
+                values.add(tracker.capture(object));
+            }
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            upsertAllInDatabase(objects);
+        } finally {
+            this.metrics.record(StorageOperation.UPSERT_ALL, startTime);
+        }
+
+        int index = 0;
+        for (T object : objects) {
+            if (tracker != null) {
+                StorageObjects.setStoredValues(object, values.get(index++));
+            }
+
+            afterUpsert(object, true);
+        }
+    }
+
+    /**
+     * Asynchronously upserts all the objects into the database at once.
+     *
+     * @param objects The objects to upsert
+     */
+    public CompletableFuture<Void> upsertAllAsync(Collection<T> objects) {
+        return CompletableFuture.runAsync(() -> upsertAll(objects), this.executor);
+    }
+
+    /**
+     * Upserts all the objects into the database, without touching the cache. By default every
+     * object is upserted on its own, the backends override this to write them in a single batch.
+     *
+     * @param objects The objects to upsert
+     */
+    public void upsertAllInDatabase(Collection<T> objects) {
+        for (T object : objects) {
+            upsertInDatabase(object);
+        }
+    }
+
+    /**
+     * Updates the cache, the indexes and the other nodes after the object was upserted.
+     *
+     * @param object  The object that was upserted
+     * @param written Whether the object was written, the other nodes aren't told about upserts that changed nothing
+     */
+    private void afterUpsert(T object, boolean written) {
+        // The object exists now, so it should no longer be remembered as missing
+        this.cache.forgetMissing(object.getIdentifier());
+
+        // An authoritative cache must contain every object, otherwise the (possibly changed) fields are reindexed
+        if (this.cacheAuthoritative) {
+            cacheObject(object);
+        } else {
+            updateIndexes(object);
+        }
+
+        if (written) {
+            publishInvalidation(object.getIdentifier());
+        }
+    }
+
+    /**
+     * Upsert the object into the database, without touching the cache.
+     *
+     * @param object The object to upsert
+     */
+    public abstract void upsertInDatabase(T object);
+
+    /**
+     * Asynchronously upsert the object into the database. The object is put in the write queue of this
+     * service, if the same object (id) is upserted again before it's written only its latest state is
+     * written and all the returned futures complete when that write lands. Queued objects are written in
+     * batches and the writes to the same id are kept in order.
+     *
+     * @param object The object to upsert
+     */
+    public CompletableFuture<Void> upsertAsync(T object) {
+        // Reject the object right away, so it doesn't fail the batch it would be written with
+        try {
+            ensureComplete(object);
+            if (object.getIdentifier() == null) {
+                throw new IllegalStateException("The identifier of the object is null!");
+            }
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        return this.writeQueue.submit(object);
+    }
+
+    /**
+     * Gets the amount of objects that were upserted with {@link #upsertAsync(StorageObject)} and haven't
+     * been written yet.
+     *
+     * @return The amount of queued writes
+     */
+    public int getQueuedWriteCount() {
+        return this.writeQueue.size();
+    }
+
+    /**
+     * Deletes the object from the database and the cache.
+     *
+     * @param object The object to delete
+     */
+    public void delete(T object) {
+        // The object shouldn't be written by write-behind or the write queue after it's deleted
+        WriteBehindBuffer<T> writeBehind = this.writeBehind;
+        if (writeBehind != null) {
+            writeBehind.discard(object.getIdentifier());
+        }
+        this.writeQueue.discard(object.getIdentifier());
+
+        long startTime = System.nanoTime();
+        try {
+            deleteInDatabase(object);
+        } finally {
+            this.metrics.record(StorageOperation.DELETE, startTime);
+        }
+
+        // If the object is cached, remove it from the cache
+        uncacheObject(object);
+
+        publishInvalidation(object.getIdentifier());
+    }
+
+    /**
+     * Deletes all the objects from the database (at once) and the cache.
+     *
+     * @param objects The objects to delete
+     */
+    public void deleteAll(Collection<T> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        // The objects shouldn't be written by write-behind or the write queue after they're deleted
+        WriteBehindBuffer<T> writeBehind = this.writeBehind;
+        for (T object : objects) {
+            if (writeBehind != null) {
+                writeBehind.discard(object.getIdentifier());
+            }
+            this.writeQueue.discard(object.getIdentifier());
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            deleteAllInDatabase(objects);
+        } finally {
+            this.metrics.record(StorageOperation.DELETE_ALL, startTime);
+        }
+
+        for (T object : objects) {
+            uncacheObject(object);
+            publishInvalidation(object.getIdentifier());
+        }
+    }
+
+    /**
+     * Asynchronously deletes all the objects from the database (at once) and the cache.
+     *
+     * @param objects The objects to delete
+     */
+    public CompletableFuture<Void> deleteAllAsync(Collection<T> objects) {
+        return CompletableFuture.runAsync(() -> deleteAll(objects), this.executor);
+    }
+
+    /**
+     * Deletes all the objects from the database, without touching the cache. By default every
+     * object is deleted on its own, the backends override this to delete them at once.
+     *
+     * @param objects The objects to delete
+     */
+    public void deleteAllInDatabase(Collection<T> objects) {
+        for (T object : objects) {
+            deleteInDatabase(object);
+        }
+    }
+
+    /**
+     * Deletes the object from the database, without touching the cache.
+     *
+     * @param object The object to delete
+     */
+    public abstract void deleteInDatabase(T object);
+
+    /**
+     * Asynchronously deletes the object from the database and the cache.
+     *
+     * @param object The object to delete
+     */
+    public CompletableFuture<Void> deleteAsync(T object) {
+        return CompletableFuture.runAsync(() -> delete(object), this.executor);
+    }
+
+    /**
+     * Enables write-behind, objects passed to {@link #markDirty(StorageObject)} are cached right away
+     * and written to the database in the background. Dirty objects are written every flush interval
+     * or as soon as there are the given amount of them, an object that's marked dirty multiple times
+     * before it's written is only written once (with its latest state).
+     *
+     * @param flushInterval     The interval between flushes
+     * @param flushIntervalUnit The unit of the flush interval
+     * @param maximumDirty      The amount of dirty objects that starts a flush right away (this is also the batch size)
+     */
+    public void enableWriteBehind(long flushInterval, TimeUnit flushIntervalUnit, int maximumDirty) {
+        disableWriteBehind();
+
+        this.writeBehind = new WriteBehindBuffer<>(this::writeDirtyObjects, flushInterval, flushIntervalUnit, maximumDirty);
+    }
+
+    /**
+     * Disables write-behind, this blocks until all the dirty objects are written.
+     */
+    public void disableWriteBehind() {
+        WriteBehindBuffer<T> writeBehind = this.writeBehind;
+        if (writeBehind == null) {
+            return;
+        }
+
+        writeBehind.close();
+        this.writeBehind = null;
+    }
+
+    /**
+     * Marks the object as changed, if write-behind is enabled the object is cached and written to the
+     * database with the next flush. Otherwise the object is upserted right away.
+     *
+     * @param object The object that was changed
+     */
+    public void markDirty(T object) {
+        ensureComplete(object);
+
+        WriteBehindBuffer<T> writeBehind = this.writeBehind;
+        if (writeBehind == null) {
+            upsert(object);
+            return;
+        }
+
+        cacheObject(object);
+        writeBehind.markDirty(object);
+    }
+
+    /**
+     * Writes all the dirty objects to the database, this blocks until they're written.
+     *
+     * @return The amount of objects that were written
+     */
+    public int flushDirty() {
+        WriteBehindBuffer<T> writeBehind = this.writeBehind;
+
+        return writeBehind == null ? 0 : writeBehind.flush();
+    }
+
+    /**
+     * Gets the amount of objects that are dirty and haven't been written yet.
+     *
+     * @return The amount of dirty objects
+     */
+    public int getDirtyCount() {
+        WriteBehindBuffer<T> writeBehind = this.writeBehind;
+
+        return writeBehind == null ? 0 : writeBehind.size();
+    }
+
+    /**
+     * Sets the executor the async methods, warm-ups & refreshes of this service run on. By default
+     * this is the {@link StorageExecutors#sharedIoPool()}, services with a lot of (blocking) I/O can
+     * use their own pool or {@link StorageExecutors#virtualThreadPerTask()} on Java 21+.
+     *
+     * @param executor The executor to use
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = new MonitoredExecutor(executor);
+    }
+
+    /**
+     * Gets the executor of this service, this can be used to report the queue depth.
+     *
+     * @return The executor of this service
+     */
+    public MonitoredExecutor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Gets the amount of async tasks of this service that are waiting for a thread.
+     *
+     * @return The queue depth of the executor
+     */
+    public int getQueueDepth() {
+        return this.executor.getQueueDepth();
+    }
+
+    /**
+     * Enables negative caching, ids that aren't found in the database will be remembered as missing
+     * for the given amount of time, so {@link #find(Object)} doesn't query the database for them
+     * again. Upserting or caching an object with such an id forgets that it was missing.
+     *
+     * @param maximumSize   The maximum amount of missing ids to remember
+     * @param cacheTime     The amount of time to remember a missing id
+     * @param cacheTimeUnit The unit of the cache time
+     */
+    public void enableNegativeCaching(long maximumSize, long cacheTime, TimeUnit cacheTimeUnit) {
+        this.cache.enableNegativeCaching(maximumSize, cacheTime, cacheTimeUnit);
+    }
+
+    /**
+     * Enables refresh-ahead, cached objects that are older than the given fraction of the cache time
+     * are reloaded from the database in the background while {@link #find(Object)} keeps returning
+     * the current object. This only works for services that use an expiring cache.
+     *
+     * @param refreshFraction The part of the cache time after which an object is refreshed (e.g. 0.75)
+     */
+    public void enableRefreshAhead(double refreshFraction) {
+        // The refreshes follow the executor of this service, also when it's changed later
+        this.cache.enableRefreshAhead(refreshFraction, this.loader, task -> this.executor.execute(task));
+    }
+
+    /**
+     * Enables the off-heap second-level cache, objects evicted from the (size-bounded) cache are
+     * serialized into off-heap memory and promoted back when they're looked up again, before the
+     * database is queried. This only works for services that use a cache with a maximum size.
+     *
+     * @param capacity The capacity of the off-heap cache in bytes
+     */
+    public void enableOffHeapCache(long capacity) {
+        this.cache.setSecondLevel(new OffHeapCacheTier<>(capacity, new GsonCacheCodec<>(this.clazz)));
+    }
+
+    /**
+     * Enables cross-node cache invalidation, every upsert and delete is published on the bus and
+     * ids changed by other nodes are removed from the cache. This keeps the caches of multiple
+     * nodes that use the same database consistent, so long cache times can be used safely.
+     *
+     * @param invalidationBus The bus to publish and receive invalidations on
+     */
+    public void enableInvalidation(InvalidationBus invalidationBus) {
+        disableInvalidation();
+
+        invalidationBus.register(getMetadata().tableName(), this.invalidationHandler);
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Disables cross-node cache invalidation, queued invalidations are still published.
+     */
+    public void disableInvalidation() {
+        InvalidationBus invalidationBus = this.invalidationBus;
+        if (invalidationBus == null) {
+            return;
+        }
+
+        invalidationBus.unregister(getMetadata().tableName(), this.invalidationHandler);
+        this.invalidationBus = null;
+    }
+
+    /**
+     * Caches the object.
+     *
+     * @param object The object to cache
+     * @throws IllegalArgumentException If the object is partial
+     */
+    public void cacheObject(T object) {
+        ensureComplete(object);
+
+        this.cache.put(object.getIdentifier(), object);
+    }
+
+    /**
+     * Uncaches the object.
+     *
+     * @param object The object to uncache
+     */
+    public void uncacheObject(T object) {
+        this.cache.remove(object.getIdentifier());
+    }
+
+    /**
+     * Uncaches the object with the given id.
+     *
+     * @param id The id of the object to uncache
+     */
+    public void uncacheObject(Object id) {
+        this.cache.remove(id);
+    }
+
+    /**
+     * Gets the next id for the StorageObject this service is for, this is handed out by the
+     * {@link IdAllocator} of this service, so the database is only contacted once per block of ids.
+     *
+     * @return The next id for the StorageObject this service is for
+     */
+    public Object getNextId() {
+        long startTime = System.nanoTime();
+        try {
+            long id = getIdAllocator().nextId();
+            if (id > Integer.MAX_VALUE) {
+                throw new IllegalStateException("There are no ids left for " + getMetadata().tableName() + "!");
+            }
+
+            return (int) id;
+        } finally {
+            this.metrics.record(StorageOperation.GET_NEXT_ID, startTime);
+        }
+    }
+
+    /**
+     * Reserves the next block of ids in the database, this has to be atomic so multiple nodes that use
+     * the same database never reserve the same ids. The counter should start after the highest id that's
+     * already in the database.
+     *
+     * @param blockSize The amount of ids to reserve
+     * @return The first id of the block
+     */
+    protected abstract long reserveIdBlock(int blockSize);
+
+    /**
+     * Gets the id allocator of this service, by default this reserves blocks of ids with
+     * {@link #reserveIdBlock(int)}.
+     *
+     * @return The id allocator of this service
+     */
+    public IdAllocator getIdAllocator() {
+        IdAllocator idAllocator = this.idAllocator;
+        if (idAllocator != null) {
+            return idAllocator;
+        }
+
+        synchronized (this) {
+            if (this.idAllocator == null) {
+                this.idAllocator = new IdAllocator(this::reserveIdBlock, this.idBlockSize);
+            }
+
+            return this.idAllocator;
+        }
+    }
+
+    /**
+     * Sets the id allocator of this service, this can be used to get the ids from somewhere else than
+     * the database of this service (e.g. a Redis counter).
+     *
+     * @param idAllocator The id allocator to use
+     */
+    public void setIdAllocator(IdAllocator idAllocator) {
+        this.idAllocator = idAllocator;
+    }
+
+    /**
+     * Sets the amount of ids the default id allocator reserves at once, the default is 50. Larger blocks
+     * mean fewer round trips, but more unused ids (gaps) when the application stops. This replaces
+     * an allocator that was set with {@link #setIdAllocator(IdAllocator)}.
+     *
+     * @param idBlockSize The amount of ids to reserve at once
+     */
+    public void setIdBlockSize(int idBlockSize) {
+        if (idBlockSize <= 0) {
+            throw new IllegalArgumentException("The id block size must be positive!");
+        }
+
+        synchronized (this) {
+            this.idBlockSize = idBlockSize;
+            // The next id is taken from a new block with the new size
+            this.idAllocator = null;
+        }
+    }
+
+    /**
+     * Gets the metadata of the StorageObject this service is for.
+     *
+     * @return The metadata of the StorageObject this service is for
+     */
+    public StorageMetadata getMetadata() {
+        return this.clazz.getAnnotation(StorageMetadata.class);
+    }
+
+    /**
+     * Gets the metrics of this service, these contain the latencies of the
+     * operations and the hits, misses, loads, evictions & expirations of the cache.
+     *
+     * @return The metrics of this service
+     */
+    public StorageMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Publishes that the object with the given id was changed, if invalidation is enabled.
+     *
+     * @param id The id of the changed object
+     */
+    private void publishInvalidation(Object id) {
+        InvalidationBus invalidationBus = this.invalidationBus;
+        if (invalidationBus == null || id == null) {
+            return;
+        }
+
+        invalidationBus.invalidate(getMetadata().tableName(), encodeId(id));
+    }
+
+    /**
+     * Removes the object with the given id from the cache, because another node changed it.
+     *
+     * @param encodedId The id in its string form
+     */
+    private void handleInvalidation(String encodedId) {
+        Object id = decodeId(encodedId);
+
+        uncacheObject(id);
+        // The object may have been created by the other node
+        this.cache.forgetMissing(id);
+
+        // An authoritative cache must contain every object, so we load the new state right away
+        if (this.cacheAuthoritative) {
+            findAsync(id);
+        }
+    }
+
+    /**
+     * Converts the id to its string form, used to send ids to other nodes and to store them in snapshots.
+     *
+     * @param id The id
+     * @return The id in its string form
+     */
+    private String encodeId(Object id) {
+        // Simple ids are kept as is, other ids are stored as JSON (which is what convertSQLValueToJavaValue expects)
+        if (id instanceof String || id instanceof UUID || id instanceof Number) {
+            return String.valueOf(id);
+        }
+
+        return StorageUtil.getGson().toJson(id);
+    }
+
+    /**
+     * Converts the string form of an id back to the type of the id field.
+     *
+     * @param encodedId The id in its string form
+     * @return The id
+     */
+    private Object decodeId(String encodedId) {
+        if (this.idField == null) {
+            return encodedId;
+        }
+
+        return StorageSQLUtil.convertSQLValueToJavaValue(encodedId, this.idField.getGenericType());
+    }
+
+    /**
+     * Updates the indexes for the object, if it's cached. Objects are usually changed in place before
+     * they're upserted, so the indexes have to be told about their new field values.
+     *
+     * @param object The object to reindex
+     */
+    private void updateIndexes(T object) {
+        Object id = object.getIdentifier();
+        if (this.indexes.isEmpty() || this.cache.get(id) != object) {
+            return;
+        }
+
+        for (FieldIndex<Object, T> index : this.indexes.values()) {
+            index.onPut(id, object);
+        }
+    }
+
+    /**
+     * Finds the storage field with the given field or column name.
+     *
+     * @param name The name of the field or its column
+     * @return The field or null if there is none
+     */
+    protected @Nullable Field findField(String name) {
+        StorageFieldModel field = this.model.getField(name);
+
+        return field == null ? null : field.getField();
+    }
+
+    /**
+     * Gets the value of the field of the object.
+     *
+     * @param field  The storage field
+     * @param object The object
+     * @return The value of the field
+     */
+    protected Object getFieldValue(Field field, T object) {
+        return this.model.getField(field).get(object);
+    }
+
+    /**
+     * Creates the comparator that orders the objects of a page, by the order field and then by id.
+     *
+     * @param orderField The field to order by
+     * @return The comparator
+     */
+    private Comparator<T> createPageComparator(Field orderField) {
+        return (first, second) -> comparePageKeys(getFieldValue(orderField, first), first.getIdentifier(), getFieldValue(orderField, second), second.getIdentifier());
+    }
+
+    /**
+     * Compares two page keys (the value of the order field and the id), nulls come first.
+     *
+     * @return A negative number, zero or a positive number if the first key is smaller, equal or bigger
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int comparePageKeys(Object firstValue, Object firstId, Object secondValue, Object secondId) {
+        int result = Comparator.nullsFirst((Comparator<Object>) (Comparator) Comparator.naturalOrder()).compare(firstValue, secondValue);
+        if (result != 0) {
+            return result;
+        }
+
+        return ((Comparable) firstId).compareTo(secondId);
+    }
+
+    /**
+     * Gets the index for the given column or field name.
+     *
+     * @param name The name of the column or field
+     * @return The index or null if the field isn't indexed
+     */
+    private @Nullable FieldIndex<Object, T> getIndex(String name) {
+        FieldIndex<Object, T> index = this.indexes.get(name);
+        if (index != null) {
+            return index;
+        }
+
+        // The JSON backend uses the names of the fields, so we check those too
+        StorageFieldModel field = this.model.getField(name);
+
+        return field == null ? null : this.indexes.get(field.getColumnName());
+    }
+
+    /**
+     * Reloads the cached object with the given id from the database, the cached object is only
+     * replaced (or removed if it no longer exists) if it wasn't changed in the meantime.
+     *
+     * @param id The id of the object to validate
+     * @return Whether the object is still cached
+     */
+    private boolean validateCachedObject(Object id) {
+        T cachedObject = this.cache.get(id);
+        if (cachedObject == null) {
+            return false;
+        }
+
+        T object = loadFromDatabase(id);
+        if (object == null) {
+            this.cache.remove(id, cachedObject);
+            return false;
+        }
+
+        return this.cache.replace(id, cachedObject, object);
+    }
+
+    /**
+     * Writes a batch of dirty objects, this is the writer of the write-behind buffer.
+     *
+     * @param objects The dirty objects
+     */
+    private void writeDirtyObjects(List<T> objects) {
+        upsertAll(objects);
+    }
+
+    /**
+     * Writes a batch of queued objects, this is the writer of the write queue. A single object is
+     * upserted on its own, so change tracking can still write only the changed fields.
+     *
+     * @param objects The queued objects
+     */
+    private void writeQueuedObjects(List<T> objects) {
+        if (objects.size() == 1) {
+            upsert(objects.get(0));
+        } else {
+            upsertAll(objects);
+        }
+    }
+
+    /**
+     * Returns whether ids of the given type can be kept as primitive keys.
+     *
+     * @param type The type of the id field
+     * @return Whether the type is an int or long
+     */
+    private static boolean isPrimitiveId(Class<?> type) {
+        return type == int.class || type == Integer.class || type == long.class || type == Long.class;
+    }
+
+    /**
+     * Loads the object with the given id from the database, this is the loader of the cache.
+     *
+     * @param id The id of the object to load
+     * @return The object with the given id
+     */
+    private @Nullable T loadFromDatabase(Object id) {
+        // A dirty object may have been evicted before it was written, the database doesn't have its latest state yet
+        WriteBehindBuffer<T> writeBehind = this.writeBehind;
+        T dirtyObject = writeBehind == null ? null : writeBehind.getDirty(id);
+        if (dirtyObject != null) {
+            return dirtyObject;
+        }
+
+        T object;
+        long startTime = System.nanoTime();
+        try {
+            object = findInDatabase(id);
+        } finally {
+            this.metrics.record(StorageOperation.LOAD, startTime);
+        }
+
+        if (object != null) {
+            trackChanges(object);
+        }
+
+        return object;
+    }
+
+    /**
+     * Gets the cache of this service.
+     *
+     * @return The cache of this service
+     */
+    public ObjectCache<Object, T> getCache() {
+        return this.cache;
+    }
+
+    /**
+     * A chunk of a streamed warm-up, it's run by whichever thread claims it first: a thread of the executor, or
+     * the thread reading the stream when it takes the chunk back.
+     */
+    private static class WarmupChunk implements Runnable {
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final Runnable task;
+
+        private WarmupChunk(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            // Another thread is already caching this chunk
+            if (!this.claimed.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                this.task.run();
+                this.future.complete(null);
+            } catch (Throwable ex) {
+                this.future.completeExceptionally(ex);
+            }
+        }
+
+        private boolean isDone() {
+            return this.future.isDone();
+        }
+
+        private void join() {
+            this.future.join();
+        }
+
     }
 
 }
@@ -0,0 +1,176 @@
+package dev.vertcode.vertstorage.service;
+
+import dev.vertcode.vertstorage.StorageObject;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the dirty objects of a {@link StorageService} in write-behind mode and writes
+ * them in batches in the background. Marking an object dirty again before it's written only
+ * keeps its latest state, so an object that changes many times is written once per flush.
+ *
+ * @param <T> The StorageObject this buffer is for
+ */
+class WriteBehindBuffer<T extends StorageObject> {
+
+    private final Map<Object, T> dirtyObjects = new ConcurrentHashMap<>();
+    private final Consumer<List<T>> writer;
+    private final int maximumDirty;
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    public WriteBehindBuffer(Consumer<List<T>> writer, long flushInterval, TimeUnit flushIntervalUnit, int maximumDirty) {
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("The flush interval must be positive!");
+        }
+        if (maximumDirty <= 0) {
+            throw new IllegalArgumentException("The maximum amount of dirty objects must be positive!");
+        }
+
+        this.writer = writer;
+        this.maximumDirty = maximumDirty;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VertStorage Write-Behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, flushIntervalUnit);
+    }
+
+    /**
+     * Marks the object as dirty, it will be written with the next flush. If there
+     * are too many dirty objects a flush is started right away (in the background).
+     *
+     * @param object The object that was changed
+     */
+    public void markDirty(T object) {
+        this.dirtyObjects.put(object.getIdentifier(), object);
+
+        if (this.dirtyObjects.size() >= this.maximumDirty && this.flushRequested.compareAndSet(false, true)) {
+            try {
+                this.scheduler.execute(this::flushQuietly);
+            } catch (RuntimeException ex) {
+                // The buffer was closed, the object is written by the final flush
+                this.flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Gets the dirty (not yet written) state of the object with the given id.
+     *
+     * @param id The id of the object
+     * @return The dirty object or null if it isn't dirty
+     */
+    public @Nullable T getDirty(Object id) {
+        return this.dirtyObjects.get(id);
+    }
+
+    /**
+     * Forgets the dirty state of the object with the given id, e.g. because it was deleted. This
+     * waits for a running flush, so the object can't be written after this returns.
+     *
+     * @param id The id of the object
+     */
+    public void discard(Object id) {
+        this.flushLock.lock();
+        try {
+            this.dirtyObjects.remove(id);
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all the dirty objects, this blocks until they're written. If a batch fails to be
+     * written its objects are marked dirty again (unless they changed in the meantime).
+     *
+     * @return The amount of objects that were written
+     */
+    public int flush() {
+        this.flushLock.lock();
+        try {
+            this.flushRequested.set(false);
+            int written = 0;
+
+            while (!this.dirtyObjects.isEmpty()) {
+                List<T> batch = new ArrayList<>(Math.min(this.maximumDirty, this.dirtyObjects.size()));
+                for (Object id : this.dirtyObjects.keySet()) {
+                    T object = this.dirtyObjects.remove(id);
+                    if (object != null) {
+                        batch.add(object);
+                    }
+                    if (batch.size() >= this.maximumDirty) {
+                        break;
+                    }
+                }
+
+                try {
+                    this.writer.accept(batch);
+                } catch (RuntimeException ex) {
+                    // Keep the objects dirty, unless a newer state was marked dirty in the meantime
+                    for (T object : batch) {
+                        this.dirtyObjects.putIfAbsent(object.getIdentifier(), object);
+                    }
+
+                    throw ex;
+                }
+
+                written += batch.size();
+            }
+
+            return written;
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background flushes and writes all the dirty objects, this blocks until they're written.
+     */
+    public void close() {
+        this.scheduler.shutdown();
+
+        try {
+            // Wait for a running background flush, so no objects are written after we return
+            this.scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+    }
+
+    /**
+     * Gets the amount of dirty objects.
+     *
+     * @return The amount of dirty objects
+     */
+    public int size() {
+        return this.dirtyObjects.size();
+    }
+
+    /**
+     * Flushes the dirty objects, failures are printed since there's no caller to report them to.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+}
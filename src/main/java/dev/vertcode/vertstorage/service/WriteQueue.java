@@ -0,0 +1,207 @@
+package dev.vertcode.vertstorage.service;
+
+import dev.vertcode.vertstorage.StorageObject;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Queues the async upserts of a {@link StorageService} and writes them in batches. Pending writes are
+ * keyed by the id of the object, so an object that's upserted again before it's written is only written
+ * once (with its latest state) and the futures of all those upserts complete when that write lands.
+ * <p>
+ * Only one batch is written at a time, the writes that are queued while a batch is being written go out
+ * with the next batch. This keeps the writes to the same id in order and batches them without a delay.
+ *
+ * @param <T> The StorageObject this queue is for
+ */
+class WriteQueue<T extends StorageObject> {
+
+    private final Map<Object, PendingWrite<T>> pendingWrites = new LinkedHashMap<>();
+    private final Consumer<List<T>> writer;
+    private final Executor executor;
+    private final int batchSize;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private boolean draining;
+
+    public WriteQueue(Consumer<List<T>> writer, Executor executor, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive!");
+        }
+
+        this.writer = writer;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queues the object to be written, this replaces the pending write of the same id (if any).
+     *
+     * @param object The object to write
+     * @return A future that completes when the latest state of the object is written
+     */
+    public CompletableFuture<Void> submit(T object) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        boolean startDraining;
+
+        synchronized (this) {
+            PendingWrite<T> pendingWrite = this.pendingWrites.get(object.getIdentifier());
+            if (pendingWrite == null) {
+                pendingWrite = new PendingWrite<>();
+                this.pendingWrites.put(object.getIdentifier(), pendingWrite);
+            }
+
+            pendingWrite.object = object;
+            pendingWrite.futures.add(future);
+
+            startDraining = !this.draining;
+            this.draining = true;
+        }
+
+        if (startDraining) {
+            try {
+                this.executor.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                // The executor was shut down, write the objects on this thread instead
+                drain();
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * Forgets the pending write of the object with the given id, e.g. because it was deleted. The futures
+     * of the write are completed, and this waits for a running batch so the object can't be written after
+     * this returns.
+     *
+     * @param id The id of the object
+     */
+    public void discard(Object id) {
+        this.writeLock.lock();
+        try {
+            PendingWrite<T> pendingWrite;
+            synchronized (this) {
+                pendingWrite = this.pendingWrites.remove(id);
+            }
+
+            if (pendingWrite != null) {
+                pendingWrite.complete(null);
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the amount of objects that are waiting to be written.
+     *
+     * @return The amount of pending writes
+     */
+    public synchronized int size() {
+        return this.pendingWrites.size();
+    }
+
+    /**
+     * Writes the pending writes on this thread and blocks until they're all written, this is used when
+     * the service shuts down and the executor may not run the queued writes anymore.
+     */
+    public void flush() {
+        while (writeBatch(false)) {
+            // Keep writing until there are no pending writes left
+        }
+    }
+
+    /**
+     * Writes batches until there are no pending writes left.
+     */
+    private void drain() {
+        while (writeBatch(true)) {
+            // Keep writing until there are no pending writes left
+        }
+    }
+
+    /**
+     * Writes the next batch of pending writes.
+     *
+     * @param draining Whether this is called by the drain task, which stops draining when there's nothing left
+     * @return Whether a batch was written, false if there were no pending writes
+     */
+    private boolean writeBatch(boolean draining) {
+        List<PendingWrite<T>> batch = new ArrayList<>();
+
+        this.writeLock.lock();
+        try {
+            synchronized (this) {
+                Iterator<PendingWrite<T>> iterator = this.pendingWrites.values().iterator();
+                while (iterator.hasNext() && batch.size() < this.batchSize) {
+                    batch.add(iterator.next());
+                    iterator.remove();
+                }
+
+                if (batch.isEmpty()) {
+                    if (draining) {
+                        this.draining = false;
+                    }
+
+                    return false;
+                }
+            }
+
+            List<T> objects = new ArrayList<>(batch.size());
+            for (PendingWrite<T> pendingWrite : batch) {
+                objects.add(pendingWrite.object);
+            }
+
+            Throwable failure = null;
+            try {
+                this.writer.accept(objects);
+            } catch (Throwable throwable) {
+                failure = throwable;
+            }
+
+            for (PendingWrite<T> pendingWrite : batch) {
+                pendingWrite.complete(failure);
+            }
+
+            return true;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * The latest state of an object that's waiting to be written, with the futures of all the upserts it replaced.
+     */
+    private static class PendingWrite<T> {
+
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>(1);
+        private T object;
+
+        /**
+         * Completes the futures of this write.
+         *
+         * @param failure The reason the write failed or null if it succeeded
+         */
+        public void complete(@Nullable Throwable failure) {
+            for (CompletableFuture<Void> future : this.futures) {
+                if (failure == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            }
+        }
+
+    }
+
+}
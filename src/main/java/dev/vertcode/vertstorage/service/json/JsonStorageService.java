@@ -4,30 +4,55 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import dev.vertcode.vertstorage.StorageObject;
 import dev.vertcode.vertstorage.adapters.StorageObjectTypeAdapter;
-import dev.vertcode.vertstorage.annotations.StorageField;
-import dev.vertcode.vertstorage.annotations.StorageId;
 import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import dev.vertcode.vertstorage.mapping.StorageFieldModel;
+import dev.vertcode.vertstorage.metrics.StorageOperation;
+import dev.vertcode.vertstorage.object.CacheWeigher;
+import dev.vertcode.vertstorage.object.ObjectCache;
+import dev.vertcode.vertstorage.service.Page;
+import dev.vertcode.vertstorage.service.PageToken;
 import dev.vertcode.vertstorage.service.StorageService;
+import dev.vertcode.vertstorage.util.StorageSQLUtil;
 import dev.vertcode.vertstorage.util.StorageUtil;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.Writer;
 import java.lang.reflect.Field;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class JsonStorageService<T extends StorageObject> extends StorageService<T> {
 
+    // The maximum amount of files a batch operation reads or writes at the same time
+    private static final int MAXIMUM_PARALLEL_FILES = 8;
+
     private final File dataFolder;
     private final File tableFolder;
     private final File nextIdFile;
     private final Gson gson;
-    private int nextId = 1;
+    private long nextId = 1;
+    private volatile @Nullable NavigableSet<Object> idIndex;
 
     public JsonStorageService(Class<T> clazz, File dataFolder) {
         super(clazz);
@@ -65,6 +90,40 @@ public class JsonStorageService<T extends StorageObject> extends StorageService<
         this.gson = gsonBuilder.create();
     }
 
+    public JsonStorageService(Class<T> clazz, File dataFolder, long maximumSize) {
+        this(clazz, dataFolder, new ObjectCache<>(maximumSize));
+    }
+
+    public JsonStorageService(Class<T> clazz, File dataFolder, long maximumSize, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(clazz, dataFolder, new ObjectCache<>(maximumSize, cacheTime, cacheTimeUnit));
+    }
+
+    public JsonStorageService(Class<T> clazz, File dataFolder, long maximumWeight, CacheWeigher<Object, T> weigher) {
+        this(clazz, dataFolder, new ObjectCache<>(maximumWeight, weigher));
+    }
+
+    public JsonStorageService(Class<T> clazz, File dataFolder, long maximumWeight, CacheWeigher<Object, T> weigher, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(clazz, dataFolder, new ObjectCache<>(maximumWeight, weigher, cacheTime, cacheTimeUnit));
+    }
+
+    public JsonStorageService(Class<T> clazz, File dataFolder, ObjectCache<Object, T> cache) {
+        super(clazz, cache);
+
+        StorageMetadata metadata = getMetadata();
+        String folderName = metadata.tableName();
+
+        this.dataFolder = dataFolder;
+        this.tableFolder = new File(this.dataFolder, folderName);
+        this.nextIdFile = new File(this.tableFolder, "nextId.json");
+
+        GsonBuilder gsonBuilder = StorageUtil.getGsonBuilder();
+
+        // Register the StorageObject type adapter
+        gsonBuilder.registerTypeAdapter(clazz, new StorageObjectTypeAdapter<>(clazz));
+
+        this.gson = gsonBuilder.create();
+    }
+
 
     @Override
     public void startupService() {
@@ -73,59 +132,32 @@ public class JsonStorageService<T extends StorageObject> extends StorageService<
             // Load the next id from nextId.json
             if (nextIdFile.exists()) {
                 try (FileReader reader = new FileReader(nextIdFile)) {
-                    this.nextId = this.gson.fromJson(reader, Integer.class);
+                    this.nextId = this.gson.fromJson(reader, Long.class);
                 } catch (Exception ignored) {
                 }
             }
-
-            return;
+        } else {
+            // Create the table folder
+            this.tableFolder.mkdirs();
         }
 
-        // Create the table folder
-        this.tableFolder.mkdirs();
+        super.startupService();
     }
 
     @Override
     public T createInstance() {
-        try {
-            // Create the instance of the StorageObject
-            T instance = this.clazz.getDeclaredConstructor().newInstance();
-
-            // Loop through all the fields in the class
-            for (Map.Entry<Field, StorageField> entry : this.fieldMappings.entrySet()) {
-                Field field = entry.getKey();
-                // We only want to populate the ID field
-                if (!field.isAnnotationPresent(StorageId.class)) {
-                    continue;
-                }
-
-                // We only want to populate the ID field if it is a number and is automatically generated
-                if (!field.getType().equals(int.class) && !field.getType().equals(Integer.class)) {
-                    continue;
-                }
-
-                StorageId annotation = field.getAnnotation(StorageId.class);
-                // Check if the ID should be automatically generated
-                if (!annotation.automaticallyGenerated()) {
-                    continue;
-                }
-
-                // Get the next id
-                int nextId = (int) getNextId();
-
-                // Set the id field
-                field.setAccessible(true);
-                field.set(instance, nextId);
-
-                // Break the loop, since we only want to populate the ID field
-                break;
-            }
-
-            // Return the instance
-            return instance;
-        } catch (Exception ex) {
-            throw new IllegalStateException("Failed to create a new instance of " + clazz.getName() + "!", ex);
+        // Create the instance of the StorageObject
+        T instance = this.model.newInstance();
+
+        // We only want to populate the ID field if it is a number and is automatically generated
+        StorageFieldModel idField = this.model.getIdField();
+        if (idField != null && idField.isAutomaticallyGenerated() && (idField.getType() == int.class || idField.getType() == Integer.class)) {
+            // Get the next id & set the id field
+            idField.set(instance, (int) getNextId());
         }
+
+        // Return the instance
+        return instance;
     }
 
     @Override
@@ -159,16 +191,13 @@ public class JsonStorageService<T extends StorageObject> extends StorageService<
             }
 
             try {
-                Field field = this.clazz.getField(fieldName);
-
-                // Make the field accessible
-                field.setAccessible(true);
+                StorageFieldModel field = this.model.getField(fieldName);
 
                 // Get the value of the field
                 Object fieldValue = field.get(object);
 
                 // Check if the value is equal to the given value, if not, skip it
-                if (fieldValue != value) {
+                if (!Objects.equals(fieldValue, value)) {
                     continue;
                 }
 
@@ -183,124 +212,334 @@ public class JsonStorageService<T extends StorageObject> extends StorageService<
 
     @Override
     public List<T> findAllInDatabase() {
-        List<T> objects = new ArrayList<>();
-        // If the table folder doesn't exist, return an empty list
-        if (!this.tableFolder.exists()) {
-            return objects;
-        }
+        long startTime = System.nanoTime();
+        try {
+            List<T> objects = new ArrayList<>();
+            // If the table folder doesn't exist, return an empty list
+            if (!this.tableFolder.exists()) {
+                return objects;
+            }
 
-        File[] files = this.tableFolder.listFiles();
-        // If no files are found, return an empty list
-        if (files == null) {
+            File[] files = this.tableFolder.listFiles();
+            // If no files are found, return an empty list
+            if (files == null) {
+                return objects;
+            }
+
+            // Loop through all files and read them
+            for (File file : files) {
+                try {
+                    T value = readObject(file);
+                    // Check if the value is null, if so, skip it
+                    if (value == null) {
+                        continue;
+                    }
+
+                    // Add the value to the list
+                    objects.add(value);
+                } catch (Exception ignored) {
+                }
+            }
+
+            // Return the list
             return objects;
+        } finally {
+            this.metrics.record(StorageOperation.FIND_ALL, startTime);
         }
+    }
 
-        // Loop through all files and read them
-        for (File file : files) {
-            try {
-                T value = readObject(file);
-                // Check if the value is null, if so, skip it
-                if (value == null) {
+    @Override
+    public List<T> findAllInDatabase(String fieldName, Object value) {
+        long startTime = System.nanoTime();
+        try {
+            List<T> objects = new ArrayList<>();
+            // If the table folder doesn't exist, return an empty list
+            if (!this.tableFolder.exists()) {
+                return objects;
+            }
+
+            File[] files = this.tableFolder.listFiles();
+            // If no files are found, return an empty list
+            if (files == null) {
+                return objects;
+            }
+
+            // Loop through all files and read them
+            for (File file : files) {
+                T object = readObject(file);
+                // Check if the object is null, if so, skip it
+                if (object == null) {
                     continue;
                 }
 
-                // Add the value to the list
-                objects.add(value);
-            } catch (Exception ignored) {
+                try {
+                    StorageFieldModel field = this.model.getField(fieldName);
+
+                    // Get the value of the field
+                    Object fieldValue = field.get(object);
+
+                    // Check if the value is equal to the given value, if not, skip it
+                    if (!Objects.equals(fieldValue, value)) {
+                        continue;
+                    }
+
+                    // Add the object to the list
+                    objects.add(object);
+                } catch (Exception ignored) {
+                }
             }
+
+            // Return the list
+            return objects;
+        } finally {
+            this.metrics.record(StorageOperation.FIND_ALL, startTime);
         }
+    }
 
-        // Return the list
-        return objects;
+    @Override
+    public void upsertInDatabase(T object) {
+        File file = new File(this.tableFolder, object.getIdentifier() + ".json");
+
+        try (Writer writer = new FileWriter(file)) {
+            this.gson.toJson(object, writer);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return;
+        }
+
+        NavigableSet<Object> idIndex = this.idIndex;
+        if (idIndex != null) {
+            idIndex.add(object.getIdentifier());
+        }
     }
 
     @Override
-    public List<T> findAllInDatabase(String fieldName, Object value) {
-        List<T> objects = new ArrayList<>();
-        // If the table folder doesn't exist, return an empty list
+    public Stream<T> streamAll() {
         if (!this.tableFolder.exists()) {
-            return objects;
+            return Stream.empty();
         }
 
-        File[] files = this.tableFolder.listFiles();
-        // If no files are found, return an empty list
-        if (files == null) {
-            return objects;
+        // Iterate over the files lazily, so only a single object is in memory at a time
+        DirectoryStream<Path> directoryStream;
+        try {
+            directoryStream = Files.newDirectoryStream(this.tableFolder.toPath(), "*.json");
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to list the files in " + this.tableFolder + "!", ex);
         }
 
-        // Loop through all files and read them
-        for (File file : files) {
-            T object = readObject(file);
-            // Check if the object is null, if so, skip it
-            if (object == null) {
-                continue;
+        Path nextIdPath = this.nextIdFile.toPath();
+        return StreamSupport.stream(directoryStream.spliterator(), false)
+                .filter(path -> !path.equals(nextIdPath))
+                .map(path -> readObject(path.toFile()))
+                .filter(Objects::nonNull)
+                .onClose(() -> {
+                    try {
+                        directoryStream.close();
+                    } catch (IOException ignored) {
+                    }
+                });
+    }
+
+    @Override
+    public Stream<T> streamAll(String fieldName, Object value) {
+        StorageFieldModel field = this.model.getField(fieldName);
+        if (field == null) {
+            throw new IllegalArgumentException("The class " + this.clazz.getName() + " doesn't have a field " + fieldName + "!");
+        }
+
+        // Read through the model, so the generated mapper is used when there is one
+        return streamAll().filter(object -> Objects.equals(field.get(object), value));
+    }
+
+    @Override
+    public List<T> findManyInDatabase(Collection<?> ids) {
+        // Every id is its own file, so the files are read in parallel
+        List<?> idList = new ArrayList<>(ids);
+        Object[] found = new Object[idList.size()];
+        runInParallel(idList.size(), index -> found[index] = findInDatabase(idList.get(index)));
+
+        List<T> objects = new ArrayList<>(found.length);
+        for (Object object : found) {
+            if (object != null) {
+                objects.add(this.clazz.cast(object));
             }
+        }
 
-            try {
-                Field field = this.clazz.getField(fieldName);
+        return objects;
+    }
 
-                // Make the field accessible
-                field.setAccessible(true);
+    @Override
+    public void upsertAllInDatabase(Collection<T> objects) {
+        // Every object is its own file, so the files are written in parallel
+        List<T> objectList = new ArrayList<>(objects);
+        runInParallel(objectList.size(), index -> upsertInDatabase(objectList.get(index)));
+    }
 
-                // Get the value of the field
-                Object fieldValue = field.get(object);
+    @Override
+    public void deleteAllInDatabase(Collection<T> objects) {
+        List<T> objectList = new ArrayList<>(objects);
+        runInParallel(objectList.size(), index -> deleteInDatabase(objectList.get(index)));
+    }
 
-                // Check if the value is equal to the given value, if not, skip it
-                if (fieldValue != value) {
-                    continue;
+    /**
+     * Runs the task for every index on the executor of the service and blocks until they're all done.
+     * The calling thread takes indexes as well, so this can't wait on tasks that are queued behind it
+     * when it's called from a thread of the (bounded) executor itself.
+     *
+     * @param count The amount of indexes
+     * @param task  The task to run for every index
+     */
+    private void runInParallel(int count, IntConsumer task) {
+        if (count == 0) {
+            return;
+        }
+
+        AtomicInteger nextIndex = new AtomicInteger();
+        CountDownLatch remaining = new CountDownLatch(count);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int index;
+            while ((index = nextIndex.getAndIncrement()) < count) {
+                try {
+                    task.accept(index);
+                } catch (RuntimeException ex) {
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    remaining.countDown();
                 }
+            }
+        };
 
-                // Add the object to the list
-                objects.add(object);
-            } catch (Exception ignored) {
+        // The calling thread is a worker as well, so one less is needed on the executor
+        int workers = Math.min(count, MAXIMUM_PARALLEL_FILES) - 1;
+        for (int i = 0; i < workers; i++) {
+            try {
+                getExecutor().execute(worker);
+            } catch (RejectedExecutionException ex) {
+                break;
             }
         }
 
-        // Return the list
-        return objects;
-    }
+        worker.run();
 
-    @Override
-    public void upsert(T object) {
-        File file = new File(this.tableFolder, object.getIdentifier() + ".json");
+        // Wait for the indexes the other workers are still busy with
+        try {
+            remaining.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the files of " + this.clazz.getName() + "!", ex);
+        }
 
-        try (Writer writer = new FileWriter(file)) {
-            this.gson.toJson(object, writer);
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        RuntimeException ex = failure.get();
+        if (ex != null) {
+            throw ex;
         }
     }
 
     @Override
-    public void delete(T object) {
+    public void deleteInDatabase(T object) {
         File file = new File(this.tableFolder, object.getIdentifier() + ".json");
         // If the file doesn't exist, return
         if (!file.exists()) {
-            // If the object is cached, remove it from the cache
-            uncacheObject(object);
             return;
         }
 
         // Delete the file
         file.delete();
-        // If the object is cached, remove it from the cache
-        uncacheObject(object);
+
+        NavigableSet<Object> idIndex = this.idIndex;
+        if (idIndex != null) {
+            idIndex.remove(object.getIdentifier());
+        }
     }
 
     @Override
-    public Object getNextId() {
-        int nextId = this.nextId;
+    protected Page<T> findPageInDatabase(@Nullable PageToken after, int limit, Field orderField) {
+        // Only the ids are indexed, other fields have to be scanned
+        if (!orderField.equals(this.idField)) {
+            return super.findPageInDatabase(after, limit, orderField);
+        }
 
-        // Increment the next id & save it
-        try (Writer writer = new FileWriter(this.nextIdFile)) {
-            this.nextId++;
+        NavigableSet<Object> idIndex = getIdIndex();
+        // Seek to the id after the token in the sorted index
+        NavigableSet<Object> ids = after == null ? idIndex : idIndex.tailSet(after.getId(), false);
 
-            this.gson.toJson(this.nextId, writer);
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        List<T> objects = new ArrayList<>();
+        for (Object id : ids) {
+            T object = findInDatabase(id);
+            // The file may have been deleted in the meantime, if so, skip it
+            if (object == null) {
+                continue;
+            }
+
+            objects.add(object);
+            if (objects.size() > limit) {
+                break;
+            }
         }
 
-        return nextId;
+        return createPage(objects, limit, orderField);
+    }
+
+    @Override
+    protected synchronized long reserveIdBlock(int blockSize) {
+        long firstId = this.nextId;
+        if (!this.nextIdFile.exists()) {
+            // There is no high-water mark yet, start after the highest id in the table folder
+            NavigableSet<Object> idIndex = getIdIndex();
+            if (!idIndex.isEmpty() && idIndex.last() instanceof Number) {
+                firstId = Math.max(firstId, ((Number) idIndex.last()).longValue() + 1);
+            }
+        }
+
+        // Write the new high-water mark to a temporary file first, so the file is never left half-written
+        long nextId = firstId + blockSize;
+        Path temporaryFile = new File(this.tableFolder, this.nextIdFile.getName() + ".tmp").toPath();
+        try {
+            Files.writeString(temporaryFile, this.gson.toJson(nextId));
+            Files.move(temporaryFile, this.nextIdFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to save the next id to " + this.nextIdFile + "!", ex);
+        }
+
+        this.nextId = nextId;
+        return firstId;
+    }
+
+    /**
+     * Gets the sorted index of all the ids in the table folder, this is built from the file names
+     * the first time it's needed and kept up-to-date by the upserts and deletes.
+     *
+     * @return The sorted ids
+     */
+    private NavigableSet<Object> getIdIndex() {
+        NavigableSet<Object> idIndex = this.idIndex;
+        if (idIndex != null) {
+            return idIndex;
+        }
+
+        synchronized (this) {
+            if (this.idIndex != null) {
+                return this.idIndex;
+            }
+
+            idIndex = new ConcurrentSkipListSet<>();
+            File[] files = this.tableFolder.listFiles((folder, name) -> name.endsWith(".json"));
+            if (files != null) {
+                for (File file : files) {
+                    // Skip the file that keeps track of the next id
+                    if (file.equals(this.nextIdFile)) {
+                        continue;
+                    }
+
+                    String name = file.getName();
+                    idIndex.add(StorageSQLUtil.convertSQLValueToJavaValue(name.substring(0, name.length() - 5), this.idField.getGenericType()));
+                }
+            }
+
+            this.idIndex = idIndex;
+            return idIndex;
+        }
     }
 
     /**
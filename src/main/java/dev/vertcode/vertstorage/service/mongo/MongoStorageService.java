@@ -1,27 +1,59 @@
 package dev.vertcode.vertstorage.service.mongo;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.mongodb.ConnectionString;
 import com.mongodb.client.*;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
 import dev.vertcode.vertstorage.StorageObject;
-import dev.vertcode.vertstorage.annotations.StorageField;
-import dev.vertcode.vertstorage.annotations.StorageId;
 import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import dev.vertcode.vertstorage.mapping.StorageFieldModel;
+import dev.vertcode.vertstorage.metrics.StorageOperation;
+import dev.vertcode.vertstorage.object.CacheWeigher;
+import dev.vertcode.vertstorage.object.ObjectCache;
+import dev.vertcode.vertstorage.query.AndCondition;
+import dev.vertcode.vertstorage.query.ComparisonCondition;
+import dev.vertcode.vertstorage.query.Condition;
+import dev.vertcode.vertstorage.query.ConditionVisitor;
+import dev.vertcode.vertstorage.query.InCondition;
+import dev.vertcode.vertstorage.query.LikeCondition;
+import dev.vertcode.vertstorage.query.OrCondition;
+import dev.vertcode.vertstorage.query.Query;
+import dev.vertcode.vertstorage.query.QueryOrder;
+import dev.vertcode.vertstorage.service.Page;
+import dev.vertcode.vertstorage.service.PageToken;
 import dev.vertcode.vertstorage.service.StorageService;
 import dev.vertcode.vertstorage.util.StorageUtil;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author Elmar Blume - 20/08/2023
  */
 public class MongoStorageService<T extends StorageObject> extends StorageService<T> {
 
+	// The collection that keeps the id counters of all the collections
+	private static final String ID_COUNTER_COLLECTION = "vertstorage_ids";
+	private static final String ID_COUNTER_FIELD = "next_id";
+
 	private final MongoDatabase mongoDatabase;
 
 	public MongoStorageService(Class<T> clazz, ConnectionString connectionString) {
@@ -36,47 +68,48 @@ public class MongoStorageService<T extends StorageObject> extends StorageService
 		this.mongoDatabase = mongoClient.getDatabase(connectionString.getDatabase());
 	}
 
-	@Override
-	public T createInstance() {
-		try {
-			// Create the instance of the StorageObject
-			T instance = this.clazz.getDeclaredConstructor().newInstance();
-
-			// Loop through all the fields in the class
-			for (Map.Entry<Field, StorageField> entry : this.fieldMappings.entrySet()) {
-				Field field = entry.getKey();
-				// We only want to populate the ID field
-				if (!field.isAnnotationPresent(StorageId.class)) {
-					continue;
-				}
+	public MongoStorageService(Class<T> clazz, ConnectionString connectionString, long maximumSize) {
+		this(clazz, connectionString, new ObjectCache<>(maximumSize));
+	}
 
-				// We only want to populate the ID field if it is a number and is automatically generated
-				if (!field.getType().equals(int.class) && !field.getType().equals(Integer.class)) {
-					continue;
-				}
+	public MongoStorageService(Class<T> clazz, ConnectionString connectionString, long maximumSize, long cacheTime, TimeUnit cacheTimeUnit) {
+		this(clazz, connectionString, new ObjectCache<>(maximumSize, cacheTime, cacheTimeUnit));
+	}
 
-				StorageId annotation = field.getAnnotation(StorageId.class);
-				// Check if the ID should be automatically generated
-				if (!annotation.automaticallyGenerated()) {
-					continue;
-				}
+	public MongoStorageService(Class<T> clazz, ConnectionString connectionString, long maximumWeight, CacheWeigher<Object, T> weigher) {
+		this(clazz, connectionString, new ObjectCache<>(maximumWeight, weigher));
+	}
 
-				// Get the next id
-				int nextId = (int) getNextId();
+	public MongoStorageService(Class<T> clazz, ConnectionString connectionString, long maximumWeight, CacheWeigher<Object, T> weigher, long cacheTime, TimeUnit cacheTimeUnit) {
+		this(clazz, connectionString, new ObjectCache<>(maximumWeight, weigher, cacheTime, cacheTimeUnit));
+	}
 
-				// Set the id field
-				field.setAccessible(true);
-				field.set(instance, nextId);
+	public MongoStorageService(Class<T> clazz, ConnectionString connectionString, ObjectCache<Object, T> cache) {
+		super(clazz, cache);
 
-				// Break the loop, since we only want to populate the ID field
-				break;
-			}
+		// Check if the connection string provides a database name
+		if (connectionString.getDatabase() == null)
+			throw new IllegalArgumentException("No database was specified in connection string");
+
+		// Create a new mongo client connection
+		MongoClient mongoClient = MongoClients.create(connectionString);
+		this.mongoDatabase = mongoClient.getDatabase(connectionString.getDatabase());
+	}
 
-			// Return the instance
-			return instance;
-		} catch (Exception ex) {
-			throw new IllegalStateException("Failed to create a new instance of " + clazz.getName() + "!", ex);
+	@Override
+	public T createInstance() {
+		// Create the instance of the StorageObject
+		T instance = this.model.newInstance();
+
+		// We only want to populate the ID field if it is a number and is automatically generated
+		StorageFieldModel idField = this.model.getIdField();
+		if (idField != null && idField.isAutomaticallyGenerated() && (idField.getType() == int.class || idField.getType() == Integer.class)) {
+			// Get the next id & set the id field
+			idField.set(instance, (int) getNextId());
 		}
+
+		// Return the instance
+		return instance;
 	}
 
 	@Override
@@ -101,20 +134,106 @@ public class MongoStorageService<T extends StorageObject> extends StorageService
 
 	@Override
 	public List<T> findAllInDatabase() {
+		long startTime = System.nanoTime();
+		try {
+			// Get the collection
+			final MongoCollection<Document> collection = this.getCollection();
+
+			// Create a new list for the storageObjects
+			final List<T> storageObjects = new ArrayList<>();
+
+			// Loop through all the documents
+			try (MongoCursor<Document> iterator = collection.find().iterator()) {
+				while (iterator.hasNext()) {
+					Document document = iterator.next();
+
+					// Serialize the storageObject to the storageObject type
+					T storageObject = StorageUtil.getGson().fromJson(document.toJson(), this.clazz);
+					storageObjects.add(storageObject);
+				}
+			}
+
+			// Return the storageObjects
+			return storageObjects;
+		} finally {
+			this.metrics.record(StorageOperation.FIND_ALL, startTime);
+		}
+	}
+
+	@Override
+	public List<T> findAllInDatabase(String fieldName, Object value) {
+		long startTime = System.nanoTime();
+		try {
+			// Get the collection
+			final MongoCollection<Document> collection = this.getCollection();
+
+			// Create a new list for the storageObjects
+			final List<T> storageObjects = new ArrayList<>();
+
+			// Loop through all the documents
+			try (MongoCursor<Document> iterator = collection.find(Filters.eq(fieldName, value instanceof UUID ? String.valueOf(value) : value)).iterator()) {
+				while (iterator.hasNext()) {
+					Document document = iterator.next();
+
+					// Serialize the storageObject to the storageObject type
+					T storageObject = StorageUtil.getGson().fromJson(document.toJson(), this.clazz);
+					storageObjects.add(storageObject);
+				}
+			}
+
+			// Return the storageObjects
+			return storageObjects;
+		} finally {
+			this.metrics.record(StorageOperation.FIND_ALL, startTime);
+		}
+	}
+
+	@Override
+	public void upsertInDatabase(T object) {
+		// Get the collection
+		final MongoCollection<Document> collection = this.getCollection();
+
+		// Serialize and parse the storageObject to a document
+		final Document document = Document.parse(StorageUtil.getGson().toJson(object));
+
+		// Insert the document into the collection
+		collection.replaceOne(
+				Filters.eq(getMetadata().idColumnName(), object.getIdentifier() instanceof UUID ? String.valueOf(object.getIdentifier()) : object.getIdentifier()),
+				document, new ReplaceOptions().upsert(true)
+		);
+	}
+
+	@Override
+	public Stream<T> streamAll() {
+		return streamDocuments(this.getCollection().find());
+	}
+
+	@Override
+	public Stream<T> streamAll(String fieldName, Object value) {
+		return streamDocuments(this.getCollection().find(Filters.eq(fieldName, toDocumentValue(value))));
+	}
+
+	@Override
+	public List<T> findManyInDatabase(Collection<?> ids) {
 		// Get the collection
 		final MongoCollection<Document> collection = this.getCollection();
 
+		// Convert the ids the same way they're stored
+		final List<Object> values = new ArrayList<>();
+		for (Object id : ids) {
+			values.add(toDocumentValue(id));
+		}
+
 		// Create a new list for the storageObjects
 		final List<T> storageObjects = new ArrayList<>();
 
-		// Loop through all the documents
-		try (MongoCursor<Document> iterator = collection.find().iterator()) {
+		// Find all the documents with one of the ids at once
+		try (MongoCursor<Document> iterator = collection.find(Filters.in(getMetadata().idColumnName(), values)).iterator()) {
 			while (iterator.hasNext()) {
 				Document document = iterator.next();
 
 				// Serialize the storageObject to the storageObject type
-				T storageObject = StorageUtil.getGson().fromJson(document.toJson(), this.clazz);
-				storageObjects.add(storageObject);
+				storageObjects.add(StorageUtil.getGson().fromJson(document.toJson(), this.clazz));
 			}
 		}
 
@@ -123,21 +242,88 @@ public class MongoStorageService<T extends StorageObject> extends StorageService
 	}
 
 	@Override
-	public List<T> findAllInDatabase(String fieldName, Object value) {
+	protected Page<T> findPageInDatabase(@Nullable PageToken after, int limit, Field orderField) {
 		// Get the collection
 		final MongoCollection<Document> collection = this.getCollection();
+		// The documents are serialized by field name, so the order field is keyed by its name
+		final String orderColumn = orderField.getName();
+		final String idColumnName = getMetadata().idColumnName();
+		final boolean orderById = this.model.getField(orderField).isId();
+
+		// Seek past the last document of the previous page, the id is the tie-breaker if the order field isn't unique
+		Bson filter = Filters.empty();
+		if (after != null) {
+			final Object id = toDocumentValue(after.getId());
+			if (orderById) {
+				filter = Filters.gt(idColumnName, id);
+			} else {
+				final Object orderValue = toDocumentValue(after.getOrderValue());
+				filter = Filters.or(
+						Filters.gt(orderColumn, orderValue),
+						Filters.and(Filters.eq(orderColumn, orderValue), Filters.gt(idColumnName, id))
+				);
+			}
+		}
+
+		final Bson sort = orderById ? Sorts.ascending(idColumnName) : Sorts.ascending(orderColumn, idColumnName);
 
 		// Create a new list for the storageObjects
 		final List<T> storageObjects = new ArrayList<>();
 
-		// Loop through all the documents
-		try (MongoCursor<Document> iterator = collection.find(Filters.eq(fieldName, value instanceof UUID ? String.valueOf(value) : value)).iterator()) {
+		// Fetch one document more than the limit, so we know if there's a next page
+		try (MongoCursor<Document> iterator = collection.find(filter).sort(sort).limit(limit + 1).iterator()) {
 			while (iterator.hasNext()) {
 				Document document = iterator.next();
 
 				// Serialize the storageObject to the storageObject type
-				T storageObject = StorageUtil.getGson().fromJson(document.toJson(), this.clazz);
-				storageObjects.add(storageObject);
+				storageObjects.add(StorageUtil.getGson().fromJson(document.toJson(), this.clazz));
+			}
+		}
+
+		return createPage(storageObjects, limit, orderField);
+	}
+
+	@Override
+	protected List<T> queryInDatabase(Query query) {
+		// Translate the condition to a filter, and the orders to a sort
+		final Condition condition = query.getCondition();
+		final Bson filter = condition == null ? Filters.empty() : condition.accept(new MongoConditionCompiler());
+
+		final List<Bson> sorts = new ArrayList<>();
+		for (QueryOrder order : query.getOrders()) {
+			final String column = getDocumentKey(order.getFieldName());
+			sorts.add(order.isAscending() ? Sorts.ascending(column) : Sorts.descending(column));
+		}
+
+		FindIterable<Document> documents = this.getCollection().find(filter);
+		if (query.hasProjection()) {
+			// The documents are serialized by field name, so both the field and the column names are included
+			final Set<String> names = new LinkedHashSet<>();
+			for (Field field : getProjectedFields(query)) {
+				names.add(field.getName());
+				names.add(this.fieldMappings.get(field).columnName());
+			}
+
+			documents = documents.projection(Projections.include(new ArrayList<>(names)));
+		}
+
+		if (!sorts.isEmpty()) {
+			documents = documents.sort(Sorts.orderBy(sorts));
+		}
+
+		if (query.hasLimit()) {
+			documents = documents.limit(query.getLimit());
+		}
+
+		// Create a new list for the storageObjects
+		final List<T> storageObjects = new ArrayList<>();
+
+		try (MongoCursor<Document> iterator = documents.iterator()) {
+			while (iterator.hasNext()) {
+				Document document = iterator.next();
+
+				// Serialize the storageObject to the storageObject type
+				storageObjects.add(StorageUtil.getGson().fromJson(document.toJson(), this.clazz));
 			}
 		}
 
@@ -146,22 +332,66 @@ public class MongoStorageService<T extends StorageObject> extends StorageService
 	}
 
 	@Override
-	public void upsert(T object) {
+	protected void updateInDatabase(T object, List<Field> changedFields) {
 		// Get the collection
 		final MongoCollection<Document> collection = this.getCollection();
 
-		// Serialize and parse the storageObject to a document
-		final Document document = Document.parse(StorageUtil.getGson().toJson(object));
+		// Only serialize the changed fields, with the same Gson as a full upsert so the values are converted the same way
+		final Gson gson = StorageUtil.getGson();
+		final JsonObject changes = new JsonObject();
+		for (Field field : changedFields) {
+			changes.add(field.getName(), gson.toJsonTree(getFieldValue(field, object), field.getGenericType()));
+		}
+		final Document document = Document.parse(gson.toJson(changes));
 
-		// Insert the document into the collection
-		collection.replaceOne(
-				Filters.eq(getMetadata().idColumnName(), object.getIdentifier() instanceof UUID ? String.valueOf(object.getIdentifier()) : object.getIdentifier()),
-				document, new ReplaceOptions().upsert(true)
-		);
+		// Only set the changed fields
+		final List<Bson> updates = new ArrayList<>();
+		for (Field field : changedFields) {
+			updates.add(Updates.set(field.getName(), document.get(field.getName())));
+		}
+
+		final UpdateResult result = collection.updateOne(Filters.eq(getMetadata().idColumnName(), toDocumentValue(object.getIdentifier())), Updates.combine(updates));
+
+		// The document was deleted in the meantime, so the whole document has to be inserted again
+		if (result.getMatchedCount() == 0)
+			upsertInDatabase(object);
 	}
 
 	@Override
-	public void delete(T object) {
+	public void upsertAllInDatabase(Collection<T> objects) {
+		// Get the collection
+		final MongoCollection<Document> collection = this.getCollection();
+		final String idColumnName = getMetadata().idColumnName();
+		final ReplaceOptions options = new ReplaceOptions().upsert(true);
+
+		// Create a replace for every object, these are sent in a single bulk write
+		final List<ReplaceOneModel<Document>> requests = new ArrayList<>();
+		for (T object : objects) {
+			final Document document = Document.parse(StorageUtil.getGson().toJson(object));
+
+			requests.add(new ReplaceOneModel<>(Filters.eq(idColumnName, toDocumentValue(object.getIdentifier())), document, options));
+		}
+
+		// The order doesn't matter, so the server can apply the writes in parallel
+		collection.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+	}
+
+	@Override
+	public void deleteAllInDatabase(Collection<T> objects) {
+		// Get the collection
+		final MongoCollection<Document> collection = this.getCollection();
+
+		final List<Object> values = new ArrayList<>();
+		for (T object : objects) {
+			values.add(toDocumentValue(object.getIdentifier()));
+		}
+
+		// Delete all the documents with one of the ids at once
+		collection.deleteMany(Filters.in(getMetadata().idColumnName(), values));
+	}
+
+	@Override
+	public void deleteInDatabase(T object) {
 		// Get the collection
 		final MongoCollection<Document> collection = this.getCollection();
 
@@ -172,8 +402,71 @@ public class MongoStorageService<T extends StorageObject> extends StorageService
 	}
 
 	@Override
-	public Object getNextId() {
-		return this.getCollection().find().into(new ArrayList<>()).size() + 1;
+	protected long reserveIdBlock(int blockSize) {
+		final MongoCollection<Document> counters = this.mongoDatabase.getCollection(ID_COUNTER_COLLECTION);
+		final String tableName = getMetadata().tableName();
+
+		// Create the counter of the collection if it doesn't exist yet, it starts after the highest id in the collection
+		if (counters.find(Filters.eq("_id", tableName)).first() == null) {
+			final String idColumnName = getMetadata().idColumnName();
+			final Document highest = this.getCollection().find().sort(Sorts.descending(idColumnName)).limit(1).first();
+			final Object highestId = highest == null ? null : highest.get(idColumnName);
+			final long nextId = highestId instanceof Number ? ((Number) highestId).longValue() + 1 : 1;
+
+			// $setOnInsert does nothing if another node created the counter in the meantime
+			counters.updateOne(Filters.eq("_id", tableName), Updates.setOnInsert(ID_COUNTER_FIELD, nextId), new UpdateOptions().upsert(true));
+		}
+
+		// Increment the counter atomically & get the new value
+		final Document counter = counters.findOneAndUpdate(
+				Filters.eq("_id", tableName),
+				Updates.inc(ID_COUNTER_FIELD, (long) blockSize),
+				new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)
+		);
+		if (counter == null) throw new IllegalStateException("Failed to reserve ids for " + tableName + "!");
+
+		return ((Number) counter.get(ID_COUNTER_FIELD)).longValue() - blockSize;
+	}
+
+	/**
+	 * Streams the documents of the query as storage objects, the documents are fetched in batches
+	 * of the stream batch size. The cursor is closed when the stream is closed.
+	 *
+	 * @param documents The documents to stream
+	 * @return A stream of the storage objects
+	 */
+	private Stream<T> streamDocuments(FindIterable<Document> documents) {
+		final MongoCursor<Document> cursor = documents.batchSize(getStreamBatchSize()).iterator();
+
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.map(document -> StorageUtil.getGson().fromJson(document.toJson(), this.clazz))
+				.onClose(cursor::close);
+	}
+
+	/**
+	 * Converts the value to the way it's stored in a document, UUIDs are stored as strings.
+	 *
+	 * @param value The value to convert
+	 * @return The converted value
+	 */
+	private Object toDocumentValue(Object value) {
+		return value instanceof UUID ? String.valueOf(value) : value;
+	}
+
+	/**
+	 * Gets the key of the storage field with the given field or column name in a document, the
+	 * documents are serialized by field name.
+	 *
+	 * @param fieldName The name of the field or its column
+	 * @return The name of the field
+	 * @throws IllegalArgumentException If there is no such field
+	 */
+	private String getDocumentKey(String fieldName) {
+		final Field field = findField(fieldName);
+		if (field == null)
+			throw new IllegalArgumentException("The class " + this.clazz.getName() + " doesn't have a field " + fieldName + "!");
+
+		return field.getName();
 	}
 
 	/**
@@ -184,4 +477,74 @@ public class MongoStorageService<T extends StorageObject> extends StorageService
 	private @NotNull MongoCollection<Document> getCollection() {
 		return this.mongoDatabase.getCollection(this.getMetadata().tableName());
 	}
+
+	/**
+	 * Translates a condition to a filter, the field (or column) names are resolved to their document keys.
+	 */
+	private class MongoConditionCompiler implements ConditionVisitor<Bson> {
+
+		@Override
+		public Bson visitComparison(ComparisonCondition condition) {
+			final String column = getDocumentKey(condition.getFieldName());
+			final Object value = condition.getValue() == null ? null : toDocumentValue(condition.getValue());
+
+			switch (condition.getOperator()) {
+				case EQUALS:
+					return Filters.eq(column, value);
+				case NOT_EQUALS:
+					return Filters.ne(column, value);
+				case GREATER_THAN:
+					return Filters.gt(column, value);
+				case GREATER_THAN_OR_EQUALS:
+					return Filters.gte(column, value);
+				case LESS_THAN:
+					return Filters.lt(column, value);
+				default:
+					return Filters.lte(column, value);
+			}
+		}
+
+		@Override
+		public Bson visitIn(InCondition condition) {
+			final List<Object> values = new ArrayList<>();
+			for (Object value : condition.getValues()) {
+				values.add(value == null ? null : toDocumentValue(value));
+			}
+
+			return Filters.in(getDocumentKey(condition.getFieldName()), values);
+		}
+
+		@Override
+		public Bson visitLike(LikeCondition condition) {
+			return Filters.regex(getDocumentKey(condition.getFieldName()), condition.toRegex());
+		}
+
+		@Override
+		public Bson visitAnd(AndCondition condition) {
+			// An empty $and isn't allowed, and it matches everything
+			if (condition.getConditions().isEmpty())
+				return Filters.empty();
+
+			return Filters.and(compile(condition.getConditions()));
+		}
+
+		@Override
+		public Bson visitOr(OrCondition condition) {
+			// An empty $or isn't allowed, and it matches nothing
+			if (condition.getConditions().isEmpty())
+				return Filters.in(getMetadata().idColumnName(), Collections.emptyList());
+
+			return Filters.or(compile(condition.getConditions()));
+		}
+
+		private List<Bson> compile(List<Condition> conditions) {
+			final List<Bson> filters = new ArrayList<>();
+			for (Condition condition : conditions) {
+				filters.add(condition.accept(this));
+			}
+
+			return filters;
+		}
+
+	}
 }
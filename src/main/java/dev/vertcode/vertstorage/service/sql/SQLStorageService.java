@@ -1,10 +1,25 @@
 package dev.vertcode.vertstorage.service.sql;
 
 import dev.vertcode.vertstorage.StorageObject;
-import dev.vertcode.vertstorage.annotations.StorageField;
-import dev.vertcode.vertstorage.annotations.StorageId;
 import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import dev.vertcode.vertstorage.mapping.StorageFieldModel;
+import dev.vertcode.vertstorage.mapping.StorageMapper;
+import dev.vertcode.vertstorage.metrics.StorageOperation;
 import dev.vertcode.vertstorage.database.SQLStorageDatabase;
+import dev.vertcode.vertstorage.object.CacheWeigher;
+import dev.vertcode.vertstorage.object.ObjectCache;
+import dev.vertcode.vertstorage.query.AndCondition;
+import dev.vertcode.vertstorage.query.ComparisonCondition;
+import dev.vertcode.vertstorage.query.ComparisonOperator;
+import dev.vertcode.vertstorage.query.Condition;
+import dev.vertcode.vertstorage.query.ConditionVisitor;
+import dev.vertcode.vertstorage.query.InCondition;
+import dev.vertcode.vertstorage.query.LikeCondition;
+import dev.vertcode.vertstorage.query.OrCondition;
+import dev.vertcode.vertstorage.query.Query;
+import dev.vertcode.vertstorage.query.QueryOrder;
+import dev.vertcode.vertstorage.service.Page;
+import dev.vertcode.vertstorage.service.PageToken;
 import dev.vertcode.vertstorage.service.StorageService;
 import dev.vertcode.vertstorage.util.StorageSQLUtil;
 import org.jetbrains.annotations.NotNull;
@@ -13,9 +28,16 @@ import org.jetbrains.annotations.Nullable;
 import java.lang.reflect.Field;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This is the storage service for SQL (MySQL & MariaDB) for the provided StorageObject.
@@ -24,6 +46,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class SQLStorageService<T extends StorageObject> extends StorageService<T> {
 
+    private static final int MAXIMUM_BATCH_SIZE = 1000;
+    // The table that keeps the id counters of all the tables
+    private static final String ID_COUNTER_TABLE = "vertstorage_ids";
+
     private final SQLStorageDatabase storageDatabase;
 
     public SQLStorageService(SQLStorageDatabase storageDatabase, Class<T> clazz) {
@@ -38,53 +64,52 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
         this.storageDatabase = storageDatabase;
     }
 
-    @Override
-    public void startupService() {
-        // Ensure that the table is correct
-        ensureCorrectTable();
+    public SQLStorageService(SQLStorageDatabase storageDatabase, Class<T> clazz, long maximumSize) {
+        this(storageDatabase, clazz, new ObjectCache<>(maximumSize));
     }
 
-    @Override
-    public T createInstance() {
-        try {
-            // Create the instance of the StorageObject
-            T instance = this.clazz.getDeclaredConstructor().newInstance();
-
-            // Loop through all the fields in the class
-            for (Map.Entry<Field, StorageField> entry : this.fieldMappings.entrySet()) {
-                Field field = entry.getKey();
-                // We only want to populate the ID field
-                if (!field.isAnnotationPresent(StorageId.class)) {
-                    continue;
-                }
+    public SQLStorageService(SQLStorageDatabase storageDatabase, Class<T> clazz, long maximumSize, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(storageDatabase, clazz, new ObjectCache<>(maximumSize, cacheTime, cacheTimeUnit));
+    }
 
-                // We only want to populate the ID field if it is a number and is automatically generated
-                if (!field.getType().equals(int.class) && !field.getType().equals(Integer.class)) {
-                    continue;
-                }
+    public SQLStorageService(SQLStorageDatabase storageDatabase, Class<T> clazz, long maximumWeight, CacheWeigher<Object, T> weigher) {
+        this(storageDatabase, clazz, new ObjectCache<>(maximumWeight, weigher));
+    }
 
-                StorageId annotation = field.getAnnotation(StorageId.class);
-                // Check if the ID should be automatically generated
-                if (!annotation.automaticallyGenerated()) {
-                    continue;
-                }
+    public SQLStorageService(SQLStorageDatabase storageDatabase, Class<T> clazz, long maximumWeight, CacheWeigher<Object, T> weigher, long cacheTime, TimeUnit cacheTimeUnit) {
+        this(storageDatabase, clazz, new ObjectCache<>(maximumWeight, weigher, cacheTime, cacheTimeUnit));
+    }
 
-                // Get the next id
-                int nextId = (int) getNextId();
+    public SQLStorageService(SQLStorageDatabase storageDatabase, Class<T> clazz, ObjectCache<Object, T> cache) {
+        super(clazz, cache);
 
-                // Set the id field
-                field.setAccessible(true);
-                field.set(instance, nextId);
+        this.storageDatabase = storageDatabase;
+    }
 
-                // Break the loop, since we only want to populate the ID field
-                break;
-            }
+    @Override
+    public void startupService() {
+        // Ensure that the table is correct
+        ensureCorrectTable();
+        // The id counters are kept in their own table, which is shared by all services
+        ensureIdCounterTable();
 
-            // Return the instance
-            return instance;
-        } catch (Exception ex) {
-            throw new IllegalStateException("Failed to create a new instance of " + clazz.getName() + "!", ex);
+        super.startupService();
+    }
+
+    @Override
+    public T createInstance() {
+        // Create the instance of the StorageObject
+        T instance = this.model.newInstance();
+
+        // We only want to populate the ID field if it is a number and is automatically generated
+        StorageFieldModel idField = this.model.getIdField();
+        if (idField != null && idField.isAutomaticallyGenerated() && (idField.getType() == int.class || idField.getType() == Integer.class)) {
+            // Get the next id & set the id field
+            idField.set(instance, (int) getNextId());
         }
+
+        // Return the instance
+        return instance;
     }
 
     @Nullable
@@ -135,6 +160,177 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
 
     @Override
     public List<T> findAllInDatabase() {
+        long startTime = System.nanoTime();
+        try {
+            // Get the connection
+            Connection connection = storageDatabase.getConnection();
+            if (connection == null) {
+                throw new IllegalStateException("The connection to the database is null!");
+            }
+
+            // Get the metadata
+            StorageMetadata metadata = getMetadata();
+            String tableName = metadata.tableName();
+            // Create the SQL query
+            String sqlQuery = "SELECT * FROM `" + tableName + "`";
+            // Create the prepared statement
+            try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+                // Execute the query
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<T> storageObjects = new ArrayList<>();
+                    while (resultSet.next()) {
+                        T object = createFromResultSet(resultSet);
+
+                        // Add the object to the list
+                        storageObjects.add(object);
+                    }
+
+                    return storageObjects;
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
+            }
+        } finally {
+            this.metrics.record(StorageOperation.FIND_ALL, startTime);
+        }
+    }
+
+    @Override
+    public List<T> findAllInDatabase(String fieldName, Object value) {
+        long startTime = System.nanoTime();
+        try {
+            // Get the connection
+            Connection connection = storageDatabase.getConnection();
+            if (connection == null) {
+                throw new IllegalStateException("The connection to the database is null!");
+            }
+
+            // Get the metadata
+            StorageMetadata metadata = getMetadata();
+            String tableName = metadata.tableName();
+            // Create the SQL query
+            String sqlQuery = "SELECT * FROM `" + tableName + "` WHERE `" + fieldName + "` = ?";
+            // Create the prepared statement
+            try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+                StorageSQLUtil.insertValueIntoPrepStatement(statement, 1, value);
+
+                // Execute the query
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    List<T> storageObjects = new ArrayList<>();
+                    while (resultSet.next()) {
+                        T object = createFromResultSet(resultSet);
+
+                        // Add the object to the list
+                        storageObjects.add(object);
+                    }
+
+                    return storageObjects;
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
+            }
+        } finally {
+            this.metrics.record(StorageOperation.FIND_ALL, startTime);
+        }
+    }
+
+    @Override
+    public Stream<T> streamAll() {
+        StorageMetadata metadata = getMetadata();
+
+        return streamQuery("SELECT * FROM `" + metadata.tableName() + "`", List.of());
+    }
+
+    @Override
+    public Stream<T> streamAll(String fieldName, Object value) {
+        StorageMetadata metadata = getMetadata();
+
+        return streamQuery("SELECT * FROM `" + metadata.tableName() + "` WHERE `" + fieldName + "` = ?", List.of(value));
+    }
+
+    @Override
+    protected Page<T> findPageInDatabase(@Nullable PageToken after, int limit, Field orderField) {
+        // Get the metadata
+        StorageMetadata metadata = getMetadata();
+        String orderColumn = this.fieldMappings.get(orderField).columnName();
+        String idColumn = metadata.idColumnName();
+        boolean orderById = orderColumn.equals(idColumn);
+
+        // Seek past the last row of the previous page, the id is the tie-breaker if the order column isn't unique
+        StringBuilder queryBuilder = new StringBuilder("SELECT * FROM `" + metadata.tableName() + "`");
+        List<Object> parameters = new ArrayList<>();
+        if (after != null) {
+            if (orderById) {
+                queryBuilder.append(" WHERE `").append(idColumn).append("` > ?");
+            } else {
+                queryBuilder.append(" WHERE (`").append(orderColumn).append("` > ? OR (`").append(orderColumn).append("` = ? AND `").append(idColumn).append("` > ?))");
+                parameters.add(after.getOrderValue());
+                parameters.add(after.getOrderValue());
+            }
+
+            parameters.add(after.getId());
+        }
+
+        queryBuilder.append(" ORDER BY `").append(orderColumn).append("`");
+        if (!orderById) {
+            queryBuilder.append(", `").append(idColumn).append("`");
+        }
+
+        // Fetch one row more than the limit, so we know if there's a next page
+        queryBuilder.append(" LIMIT ?");
+        parameters.add(limit + 1);
+
+        return createPage(queryObjects(queryBuilder.toString(), parameters, this.model.getFields()), limit, orderField);
+    }
+
+    @Override
+    protected List<T> queryInDatabase(Query query) {
+        StorageMetadata metadata = getMetadata();
+        List<Object> parameters = new ArrayList<>();
+
+        // Only select the columns of the projection, if there is one
+        List<StorageFieldModel> fields = this.model.getFields();
+        StringBuilder queryBuilder = new StringBuilder("SELECT ");
+        if (query.hasProjection()) {
+            fields = new ArrayList<>();
+
+            StringJoiner columns = new StringJoiner(", ");
+            for (Field field : getProjectedFields(query)) {
+                StorageFieldModel fieldModel = this.model.getField(field);
+                fields.add(fieldModel);
+                columns.add("`" + fieldModel.getColumnName() + "`");
+            }
+
+            queryBuilder.append(columns);
+        } else {
+            queryBuilder.append("*");
+        }
+
+        queryBuilder.append(" FROM `").append(metadata.tableName()).append("`");
+
+        // Translate the condition to a parameterized WHERE clause
+        Condition condition = query.getCondition();
+        if (condition != null) {
+            queryBuilder.append(" WHERE ").append(condition.accept(new SQLConditionCompiler(parameters)));
+        }
+
+        List<QueryOrder> orders = query.getOrders();
+        for (int i = 0; i < orders.size(); i++) {
+            QueryOrder order = orders.get(i);
+
+            queryBuilder.append(i == 0 ? " ORDER BY `" : ", `").append(getColumnName(order.getFieldName())).append(order.isAscending() ? "` ASC" : "` DESC");
+        }
+
+        if (query.hasLimit()) {
+            queryBuilder.append(" LIMIT ?");
+            parameters.add(query.getLimit());
+        }
+
+        return queryObjects(queryBuilder.toString(), parameters, fields);
+    }
+
+    @Override
+    public List<T> findManyInDatabase(Collection<?> ids) {
         // Get the connection
         Connection connection = storageDatabase.getConnection();
         if (connection == null) {
@@ -144,144 +340,160 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
         // Get the metadata
         StorageMetadata metadata = getMetadata();
         String tableName = metadata.tableName();
-        // Create the SQL query
-        String sqlQuery = "SELECT * FROM `" + tableName + "`";
-        // Create the prepared statement
-        try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
-            // Execute the query
-            try (ResultSet resultSet = statement.executeQuery()) {
-                List<T> storageObjects = new ArrayList<>();
-                while (resultSet.next()) {
-                    T object = createFromResultSet(resultSet);
-
-                    // Add the object to the list
-                    storageObjects.add(object);
+        List<Object> idList = new ArrayList<>(ids);
+        List<T> storageObjects = new ArrayList<>();
+
+        // Query the ids in chunks, so the IN list doesn't get too big
+        for (int start = 0; start < idList.size(); start += MAXIMUM_BATCH_SIZE) {
+            List<Object> chunk = idList.subList(start, Math.min(idList.size(), start + MAXIMUM_BATCH_SIZE));
+            // Create the SQL query
+            String sqlQuery = "SELECT * FROM `" + tableName + "` WHERE `" + metadata.idColumnName() + "` IN (" + createPlaceholders(chunk.size()) + ")";
+            // Create the prepared statement
+            try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    StorageSQLUtil.insertValueIntoPrepStatement(statement, i + 1, chunk.get(i));
                 }
 
-                return storageObjects;
+                // Execute the query
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        storageObjects.add(createFromResultSet(resultSet));
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
             }
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
         }
+
+        return storageObjects;
     }
 
     @Override
-    public List<T> findAllInDatabase(String fieldName, Object value) {
+    public void upsertInDatabase(T object) {
         // Get the connection
         Connection connection = storageDatabase.getConnection();
         if (connection == null) {
             throw new IllegalStateException("The connection to the database is null!");
         }
 
-        // Get the metadata
-        StorageMetadata metadata = getMetadata();
-        String tableName = metadata.tableName();
-        // Create the SQL query
-        String sqlQuery = "SELECT * FROM `" + tableName + "` WHERE `" + fieldName + "` = ?";
+        String sqlQuery = createUpsertQuery();
         // Create the prepared statement
         try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
-            StorageSQLUtil.insertValueIntoPrepStatement(statement, 1, value);
+            insertUpsertValues(statement, object);
 
             // Execute the query
-            try (ResultSet resultSet = statement.executeQuery()) {
-                List<T> storageObjects = new ArrayList<>();
-                while (resultSet.next()) {
-                    T object = createFromResultSet(resultSet);
-
-                    // Add the object to the list
-                    storageObjects.add(object);
-                }
-
-                return storageObjects;
-            }
-        } catch (Exception e) {
+            statement.executeUpdate();
+        } catch (SQLException e) {
             throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
         }
     }
 
     @Override
-    public void upsert(T object) {
+    protected void updateInDatabase(T object, List<Field> changedFields) {
         // Get the connection
         Connection connection = storageDatabase.getConnection();
         if (connection == null) {
             throw new IllegalStateException("The connection to the database is null!");
         }
 
+        // Create the SQL query, only the changed columns are set
         StorageMetadata metadata = getMetadata();
-        String tableName = metadata.tableName();
-        int index = 1;
-        List<Object> values = new ArrayList<>();
-        StringBuilder queryBuilder = new StringBuilder("INSERT INTO `" + tableName + "` (");
-        StringBuilder updateQueryBuilder = new StringBuilder("ON DUPLICATE KEY UPDATE ");
-
-        // Loop through all the fields in the StorageObject
-        for (Map.Entry<Field, StorageField> entry : this.fieldMappings.entrySet()) {
-            Field field = entry.getKey();
-            StorageField storageField = entry.getValue();
-            String fieldName = storageField.columnName();
+        StringJoiner assignments = new StringJoiner(", ");
+        for (Field field : changedFields) {
+            assignments.add("`" + this.fieldMappings.get(field).columnName() + "` = ?");
+        }
 
-            // If it's not the first field, add a comma
-            if (index != 1) {
-                queryBuilder.append(", ");
-                updateQueryBuilder.append(", ");
+        String sqlQuery = "UPDATE `" + metadata.tableName() + "` SET " + assignments + " WHERE `" + metadata.idColumnName() + "` = ?";
+        int updatedRows;
+        try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+            for (int i = 0; i < changedFields.size(); i++) {
+                StorageSQLUtil.insertValueIntoPrepStatement(statement, i + 1, getFieldValue(changedFields.get(i), object));
             }
 
-            // Add the field name to the query
-            queryBuilder.append("`").append(fieldName).append("`");
-            updateQueryBuilder.append("`").append(fieldName).append("`").append(" = ?");
+            StorageSQLUtil.insertValueIntoPrepStatement(statement, changedFields.size() + 1, object.getIdentifier());
 
-            // Add the value to the list
-            try {
-                field.setAccessible(true);
+            // Execute the query
+            updatedRows = statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
+        }
+
+        // The row was deleted in the meantime, so the whole object has to be inserted again
+        if (updatedRows == 0) {
+            upsertInDatabase(object);
+        }
+    }
 
-                // Get the value of the field
-                Object value = field.get(object);
+    @Override
+    public void upsertAllInDatabase(Collection<T> objects) {
+        // Get the connection
+        Connection connection = storageDatabase.getConnection();
+        if (connection == null) {
+            throw new IllegalStateException("The connection to the database is null!");
+        }
 
-                // Add the value to the list
-                values.add(value);
-            } catch (Exception ex) {
-                throw new IllegalStateException("Failed to get the value of field " + fieldName + " in class " + clazz.getName() + "!", ex);
+        String sqlQuery = createUpsertQuery();
+        // Create the prepared statement, every object is added to the batch
+        try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+            int batchSize = 0;
+            for (T object : objects) {
+                insertUpsertValues(statement, object);
+                statement.addBatch();
+
+                // Send the batch in parts, so the driver doesn't have to keep a huge batch in memory
+                if (++batchSize % MAXIMUM_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
             }
 
-            // Increment the index
-            index++;
+            // Execute the rest of the batch
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
         }
+    }
 
-        // Add the values to the query
-        queryBuilder.append(") VALUES (");
-        for (int i = 0; i < values.size(); i++) {
-            if (i != 0) {
-                queryBuilder.append(", ");
-            }
-            queryBuilder.append("?");
+    @Override
+    public void deleteAllInDatabase(Collection<T> objects) {
+        // Get the metadata
+        StorageMetadata metadata = getMetadata();
+        String tableName = metadata.tableName();
+        Connection connection = storageDatabase.getConnection();
+        if (connection == null) {
+            throw new IllegalStateException("The connection to the database is null!");
         }
 
-        queryBuilder.append(") ").append(updateQueryBuilder);
+        List<Object> identifiers = new ArrayList<>();
+        for (T object : objects) {
+            Object identifier = object.getIdentifier();
+            if (identifier == null) {
+                throw new IllegalStateException("The identifier of the object is null!");
+            }
 
-        // Create the prepared statement
-        try (PreparedStatement statement = connection.prepareStatement(queryBuilder.toString())) {
-            // Loop through all the values and set them in the prepared statement
-            for (int i = 0; i < values.size(); i++) {
-                Object value = values.get(i);
+            identifiers.add(identifier);
+        }
 
-                StorageSQLUtil.insertValueIntoPrepStatement(statement, i + 1, value);
-            }
-            // Add the same values for the update part of the query
-            for (int i = 0; i < values.size(); i++) {
-                Object value = values.get(i);
+        // Delete the ids in chunks, so the IN list doesn't get too big
+        for (int start = 0; start < identifiers.size(); start += MAXIMUM_BATCH_SIZE) {
+            List<Object> chunk = identifiers.subList(start, Math.min(identifiers.size(), start + MAXIMUM_BATCH_SIZE));
+            // Create the SQL query
+            String sqlQuery = "DELETE FROM `" + tableName + "` WHERE `" + metadata.idColumnName() + "` IN (" + createPlaceholders(chunk.size()) + ")";
+            // Create the prepared statement
+            try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    StorageSQLUtil.insertValueIntoPrepStatement(statement, i + 1, chunk.get(i));
+                }
 
-                StorageSQLUtil.insertValueIntoPrepStatement(statement, i + values.size() + 1, value);
+                // Execute the query
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
             }
-
-            // Execute the query
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new IllegalStateException("Failed to execute query " + queryBuilder + "!", e);
         }
     }
 
     @Override
-    public void delete(T object) {
+    public void deleteInDatabase(T object) {
         // Get the metadata
         StorageMetadata metadata = getMetadata();
         String tableName = metadata.tableName();
@@ -303,42 +515,245 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
             StorageSQLUtil.insertValueIntoPrepStatement(statement, 1, identifier);
             // Execute the query
             statement.executeUpdate();
-            // If the object is cached, remove it from the cache
-            uncacheObject(object);
         } catch (SQLException e) {
             throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
         }
     }
 
     @Override
-    public Object getNextId() {
+    protected long reserveIdBlock(int blockSize) {
+        // Get the metadata
+        StorageMetadata metadata = getMetadata();
+        String tableName = metadata.tableName();
+
+        // LAST_INSERT_ID() is kept per connection, so the whole reservation runs on this connection
+        try (Connection connection = storageDatabase.getConnection()) {
+            if (connection == null) {
+                throw new IllegalStateException("The connection to the database is null!");
+            }
+
+            // Create the counter of the table if it doesn't exist yet, it starts after the highest id in the table
+            String createQuery = "INSERT IGNORE INTO `" + ID_COUNTER_TABLE + "` (`table_name`, `next_id`) SELECT ?, COALESCE(MAX(`" + metadata.idColumnName() + "`), 0) + 1 FROM `" + tableName + "`";
+            try (PreparedStatement statement = connection.prepareStatement(createQuery)) {
+                statement.setString(1, tableName);
+                statement.executeUpdate();
+            }
+
+            // Increment the counter atomically, LAST_INSERT_ID(expr) remembers the new value for this connection
+            String reserveQuery = "UPDATE `" + ID_COUNTER_TABLE + "` SET `next_id` = LAST_INSERT_ID(`next_id` + ?) WHERE `table_name` = ?";
+            try (PreparedStatement statement = connection.prepareStatement(reserveQuery)) {
+                statement.setInt(1, blockSize);
+                statement.setString(2, tableName);
+                statement.executeUpdate();
+            }
+
+            long nextId;
+            try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT LAST_INSERT_ID()")) {
+                if (!resultSet.next()) {
+                    throw new IllegalStateException("Failed to reserve ids for " + tableName + "!");
+                }
+
+                nextId = resultSet.getLong(1);
+            }
+
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+
+            return nextId - blockSize;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to reserve ids for " + tableName + "!", e);
+        }
+    }
+
+    /**
+     * Executes the query with a forward-only result set and streams the rows as objects, the driver
+     * fetches the rows in batches of the stream batch size. The connection, statement and result set
+     * are closed when the stream is closed.
+     *
+     * @param sqlQuery   The query to execute
+     * @param parameters The parameters of the query
+     * @return A stream of the objects
+     */
+    private Stream<T> streamQuery(String sqlQuery, List<Object> parameters) {
+        // Get the connection
+        Connection connection = storageDatabase.getConnection();
+        if (connection == null) {
+            throw new IllegalStateException("The connection to the database is null!");
+        }
+
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(getStreamBatchSize());
+            for (int i = 0; i < parameters.size(); i++) {
+                StorageSQLUtil.insertValueIntoPrepStatement(statement, i + 1, parameters.get(i));
+            }
+
+            resultSet = statement.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(resultSet, statement, connection);
+            throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
+        }
+
+        ResultSet rows = resultSet;
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rows.next()) {
+                        return false;
+                    }
+
+                    action.accept(createFromResultSet(rows));
+                    return true;
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to read a row of query " + sqlQuery + "!", e);
+                }
+            }
+        };
+
+        PreparedStatement openStatement = statement;
+        return StreamSupport.stream(spliterator, false).onClose(() -> closeQuietly(rows, openStatement, connection));
+    }
+
+    /**
+     * Executes the query and creates the objects from the rows it returns.
+     *
+     * @param sqlQuery   The SQL query
+     * @param parameters The parameters of the query
+     * @param fields     The fields the query selects
+     * @return The objects
+     */
+    private List<T> queryObjects(String sqlQuery, List<Object> parameters, List<StorageFieldModel> fields) {
         // Get the connection
         Connection connection = storageDatabase.getConnection();
         if (connection == null) {
             throw new IllegalStateException("The connection to the database is null!");
         }
 
-        // Get the metadata
-        StorageMetadata metadata = getMetadata();
-        String tableName = metadata.tableName();
-        // Create the SQL query
-        String sqlQuery = "SELECT `" + metadata.idColumnName() + "` FROM `" + tableName + "` ORDER BY `" + metadata.idColumnName() + "` DESC LIMIT 1";
-        // Create the prepared statement
         try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                StorageSQLUtil.insertValueIntoPrepStatement(statement, i + 1, parameters.get(i));
+            }
+
             // Execute the query
             try (ResultSet resultSet = statement.executeQuery()) {
-                if (!resultSet.next()) {
-                    return 1;
+                List<T> storageObjects = new ArrayList<>();
+                while (resultSet.next()) {
+                    storageObjects.add(createFromResultSet(resultSet, fields));
                 }
 
-                int currentId = resultSet.getInt(metadata.idColumnName());
-                return currentId + 1;
+                return storageObjects;
             }
-        } catch (SQLException e) {
+        } catch (Exception e) {
             throw new IllegalStateException("Failed to execute query " + sqlQuery + "!", e);
         }
     }
 
+    /**
+     * Closes the given resources, ignoring the errors.
+     *
+     * @param resources The resources to close (may contain null)
+     */
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Creates the upsert query, this inserts all the columns or updates them if the id already exists.
+     * The values have to be set using {@link #insertUpsertValues(PreparedStatement, StorageObject)}.
+     *
+     * @return The upsert query
+     */
+    private String createUpsertQuery() {
+        StorageMetadata metadata = getMetadata();
+        String tableName = metadata.tableName();
+        StringBuilder queryBuilder = new StringBuilder("INSERT INTO `" + tableName + "` (");
+        StringBuilder updateQueryBuilder = new StringBuilder("ON DUPLICATE KEY UPDATE ");
+        int index = 1;
+
+        // Loop through all the fields in the StorageObject, in the same order as insertUpsertValues
+        for (StorageFieldModel field : this.model.getFields()) {
+            String fieldName = field.getColumnName();
+
+            // If it's not the first field, add a comma
+            if (index != 1) {
+                queryBuilder.append(", ");
+                updateQueryBuilder.append(", ");
+            }
+
+            // Add the field name to the query
+            queryBuilder.append("`").append(fieldName).append("`");
+            updateQueryBuilder.append("`").append(fieldName).append("`").append(" = ?");
+
+            // Increment the index
+            index++;
+        }
+
+        // Add the placeholders of the values to the query
+        queryBuilder.append(") VALUES (").append(createPlaceholders(this.model.getFields().size())).append(") ").append(updateQueryBuilder);
+
+        return queryBuilder.toString();
+    }
+
+    /**
+     * Sets the values of the object in a statement of the upsert query.
+     *
+     * @param statement The statement of the upsert query
+     * @param object    The object to get the values from
+     * @throws SQLException If a value couldn't be set
+     */
+    private void insertUpsertValues(PreparedStatement statement, T object) throws SQLException {
+        List<Object> values = new ArrayList<>();
+
+        // Loop through all the fields in the StorageObject
+        for (StorageFieldModel field : this.model.getFields()) {
+            // Add the value of the field to the list
+            values.add(field.get(object));
+        }
+
+        // Loop through all the values and set them in the prepared statement
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+
+            StorageSQLUtil.insertValueIntoPrepStatement(statement, i + 1, value);
+        }
+        // Add the same values for the update part of the query
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+
+            StorageSQLUtil.insertValueIntoPrepStatement(statement, i + values.size() + 1, value);
+        }
+    }
+
+    /**
+     * Creates a comma separated list of the given amount of placeholders.
+     *
+     * @param amount The amount of placeholders
+     * @return The placeholders (e.g. "?, ?, ?")
+     */
+    private static String createPlaceholders(int amount) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < amount; i++) {
+            if (i != 0) {
+                builder.append(", ");
+            }
+            builder.append("?");
+        }
+
+        return builder.toString();
+    }
 
     /**
      * This method creates a new StorageObject from the provided ResultSet.
@@ -349,27 +764,51 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
      */
     @NotNull
     private T createFromResultSet(ResultSet resultSet) throws Exception {
-        // Create a new instance of the StorageObject
-        T object = clazz.getDeclaredConstructor().newInstance();
+        return createFromResultSet(resultSet, this.model.getFields());
+    }
 
-        // Loop through all the fields in the StorageObject
-        for (Map.Entry<Field, StorageField> entry : this.fieldMappings.entrySet()) {
-            Field field = entry.getKey();
-            StorageField storageField = entry.getValue();
-            String fieldName = storageField.columnName();
+    /**
+     * Creates a StorageObject from the result set, only populating the given fields.
+     *
+     * @param resultSet The result set
+     * @param fields    The fields that were selected
+     * @return The StorageObject
+     * @throws Exception If an error occurs while creating the StorageObject
+     */
+    private T createFromResultSet(ResultSet resultSet, List<StorageFieldModel> fields) throws Exception {
+        // Create a new instance of the StorageObject
+        T object = this.model.newInstance();
 
+        // Loop through the selected fields in the StorageObject
+        for (StorageFieldModel field : fields) {
             // Get the value from the result set
-            Object value = resultSet.getObject(fieldName);
+            Object value = resultSet.getObject(field.getColumnName());
             Object convertedValue = StorageSQLUtil.convertSQLValueToJavaValue(value, field.getGenericType());
 
             // Set the value of the field in the StorageObject
-            field.setAccessible(true);
             field.set(object, convertedValue);
         }
 
         return object;
     }
 
+    /**
+     * Creates the table with the id counters of {@link #reserveIdBlock(int)} if it doesn't exist.
+     */
+    private void ensureIdCounterTable() {
+        try (Connection connection = storageDatabase.getConnection()) {
+            if (connection == null) {
+                throw new IllegalStateException("The connection to the database is null!");
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + ID_COUNTER_TABLE + "` (`table_name` VARCHAR(255) PRIMARY KEY, `next_id` BIGINT NOT NULL)");
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to create the table " + ID_COUNTER_TABLE + "!", e);
+        }
+    }
+
     /**
      * Ensures that the table for the StorageObject is correct
      * and creates it if it doesn't exist.
@@ -385,9 +824,11 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
         // Check if the table exists
         if (!tableExists(connection, tableName)) {
             try (Statement statement = connection.createStatement()) {
-                // Create the table
-                String tableTypeDefinition = StorageSQLUtil.generateSQLTypeDefinition(this.clazz);
+                // Prefer the definition of the generated mapper, it doesn't need reflection
+                StorageMapper<T> mapper = this.model.getMapper();
+                String tableTypeDefinition = mapper != null ? mapper.getTableDefinition() : StorageSQLUtil.generateSQLTypeDefinition(this.clazz);
 
+                // Create the table
                 statement.executeUpdate("CREATE TABLE `" + tableName + "` (" + tableTypeDefinition + ")");
             } catch (SQLException e) {
                 throw new IllegalStateException("Failed to create table " + tableName + "!", e);
@@ -414,14 +855,12 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
             // Begin with the SQL transaction, since we are doing a bunch of queries
             statement.addBatch("START TRANSACTION");
 
-            // Generate an instance of the StorageObject, so we can get the default values for the fields
-            StorageObject storageObject = clazz.getDeclaredConstructor().newInstance();
+            // Generate an instance of the StorageObject, so we can get the default values for the fields (through the generated mapper if there is one)
+            T defaults = this.model.newInstance();
 
             // Loop through all the fields in the StorageObject and make sure they are all correct in the table
-            for (Map.Entry<Field, StorageField> entry : this.fieldMappings.entrySet()) {
-                Field field = entry.getKey();
-                StorageField storageField = entry.getValue();
-                String fieldName = storageField.columnName();
+            for (StorageFieldModel field : this.model.getFields()) {
+                String fieldName = field.getColumnName();
                 String sqlType = StorageSQLUtil.getSQLType(field.getType());
 
                 // Add the field to the list of fields in the StorageObject
@@ -432,18 +871,7 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
                     StringBuilder builder = new StringBuilder();
                     // Append the statement to add the column
                     builder.append("ALTER TABLE `").append(tableName).append("` ADD COLUMN `").append(fieldName).append("` ").append(sqlType);
-
-                    if (!field.isAnnotationPresent(StorageId.class) && sqlType != "JSON") {
-                        // Make the field accessible
-                        field.setAccessible(true);
-
-                        // Get the default value for the field
-                        Object defaultValue = field.get(storageObject);
-                        String defaultValueSQL = StorageSQLUtil.convertToSQLType(defaultValue);
-
-                        // Append the default value to the statement
-                        builder.append(" DEFAULT ").append(defaultValueSQL);
-                    }
+                    appendDefaultValue(builder, field, sqlType, defaults);
 
                     // Add the query to the batch
                     statement.addBatch(builder.toString());
@@ -459,18 +887,7 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
 
                 // Append the statement to modify the column
                 builder.append("ALTER TABLE `").append(tableName).append("` MODIFY COLUMN `").append(fieldName).append("` ").append(sqlType);
-
-                if (!field.isAnnotationPresent(StorageId.class) && sqlType != "JSON") {
-                    // Make the field accessible
-                    field.setAccessible(true);
-
-                    // Get the default value for the field
-                    Object defaultValue = field.get(storageObject);
-                    String defaultValueSQL = StorageSQLUtil.convertToSQLType(defaultValue);
-
-                    // Append the default value to the statement
-                    builder.append(" DEFAULT ").append(defaultValueSQL);
-                }
+                appendDefaultValue(builder, field, sqlType, defaults);
 
                 // Add the query to the batch
                 statement.addBatch(builder.toString());
@@ -494,6 +911,27 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
         }
     }
 
+    /**
+     * Appends the default value of the field to the column definition, the id field and JSON columns don't get one.
+     *
+     * @param builder  The column definition
+     * @param field    The storage field
+     * @param sqlType  The SQL type of the column
+     * @param defaults A new instance of the StorageObject, its values are the defaults
+     */
+    private void appendDefaultValue(StringBuilder builder, StorageFieldModel field, String sqlType, T defaults) {
+        if (field.isId() || sqlType.equals("JSON")) {
+            return;
+        }
+
+        // Get the default value for the field
+        Object defaultValue = field.get(defaults);
+        String defaultValueSQL = StorageSQLUtil.convertToSQLType(defaultValue);
+
+        // Append the default value to the statement
+        builder.append(" DEFAULT ").append(defaultValueSQL);
+    }
+
     /**
      * Checks if the table exists.
      *
@@ -512,4 +950,77 @@ public class SQLStorageService<T extends StorageObject> extends StorageService<T
         }
     }
 
+    /**
+     * Translates a condition to a parameterized SQL condition, the values are added to the parameters
+     * and the field names are resolved to their columns (so they're never taken from the caller as is).
+     */
+    private class SQLConditionCompiler implements ConditionVisitor<String> {
+
+        private final List<Object> parameters;
+
+        public SQLConditionCompiler(List<Object> parameters) {
+            this.parameters = parameters;
+        }
+
+        @Override
+        public String visitComparison(ComparisonCondition condition) {
+            String column = "`" + getColumnName(condition.getFieldName()) + "`";
+            Object value = condition.getValue();
+
+            // Comparing with NULL is never true in SQL, so null is checked with IS (NOT) NULL
+            if (value == null) {
+                return column + (condition.getOperator() == ComparisonOperator.EQUALS ? " IS NULL" : " IS NOT NULL");
+            }
+
+            this.parameters.add(value);
+            return column + " " + condition.getOperator().getSymbol() + " ?";
+        }
+
+        @Override
+        public String visitIn(InCondition condition) {
+            List<Object> values = condition.getValues();
+            // An empty IN isn't valid SQL, and it never matches
+            if (values.isEmpty()) {
+                return "1 = 0";
+            }
+
+            this.parameters.addAll(values);
+            return "`" + getColumnName(condition.getFieldName()) + "` IN (" + createPlaceholders(values.size()) + ")";
+        }
+
+        @Override
+        public String visitLike(LikeCondition condition) {
+            this.parameters.add(condition.getPattern());
+            return "`" + getColumnName(condition.getFieldName()) + "` LIKE ?";
+        }
+
+        @Override
+        public String visitAnd(AndCondition condition) {
+            return join(condition.getConditions(), " AND ", "1 = 1");
+        }
+
+        @Override
+        public String visitOr(OrCondition condition) {
+            return join(condition.getConditions(), " OR ", "1 = 0");
+        }
+
+        private String join(List<Condition> conditions, String operator, String empty) {
+            if (conditions.isEmpty()) {
+                return empty;
+            }
+
+            StringBuilder builder = new StringBuilder("(");
+            for (int i = 0; i < conditions.size(); i++) {
+                if (i > 0) {
+                    builder.append(operator);
+                }
+
+                builder.append(conditions.get(i).accept(this));
+            }
+
+            return builder.append(")").toString();
+        }
+
+    }
+
 }
@@ -12,6 +12,7 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.StringJoiner;
 import java.util.UUID;
 
 @UtilityClass
@@ -51,57 +52,62 @@ public class StorageSQLUtil {
      */
     public static String generateSQLTypeDefinition(Class<? extends StorageObject> clazz) {
         try {
-            StringBuilder builder = new StringBuilder();
+            StringJoiner definition = new StringJoiner(", ");
             // Generate an instance of the StorageObject, so we can get the default values for the fields
             StorageObject storageObject = clazz.getConstructor().newInstance();
 
-            boolean isFirst = true;
             for (Field field : clazz.getDeclaredFields()) {
                 if (!field.isAnnotationPresent(StorageField.class)) {
                     continue;
                 }
 
                 StorageField storageField = field.getAnnotation(StorageField.class);
-                String fieldName = storageField.columnName();
-                String sqlType = getSQLType(field.getType());
-
-                // If this isn't the first field, add a comma and space before adding the next field
-                if (!isFirst) {
-                    builder.append(", ");
-                }
-
-                // Make sure that the next field isn't the first field
-                isFirst = false;
-
-                // If the field isn't the id field, just add it to the table definition (e.g. "name VARCHAR(255)")
-                if (!field.isAnnotationPresent(StorageId.class)) {
-                    builder.append("`").append(fieldName).append("` ").append(sqlType);
+                StorageId storageId = field.getAnnotation(StorageId.class);
 
-                    // If the field has a default value, add it to the table definition (e.g. "name VARCHAR(255) DEFAULT 'test'")
-                    field.setAccessible(true);
-                    Object defaultValue = field.get(storageObject);
-                    String defaultValueSQL = convertToSQLType(defaultValue);
+                field.setAccessible(true);
+                Object defaultValue = storageId == null ? field.get(storageObject) : null;
 
-                    if (defaultValueSQL != null && sqlType != "JSON") {
-                        builder.append(" DEFAULT ").append(defaultValueSQL);
-                    }
-                    continue;
-                }
+                definition.add(createColumnDefinition(storageField.columnName(), field.getType(), storageId != null, storageId != null && storageId.automaticallyGenerated(), defaultValue));
+            }
 
-                // If the field is the id field, add it to the table definition and make it the primary key (e.g. "id INT PRIMARY KEY")
-                StorageId storageId = field.getAnnotation(StorageId.class);
-                if (storageId.automaticallyGenerated() && sqlType.equals("INT")) {
-                    builder.append("`").append(fieldName).append("` ").append(sqlType).append(" AUTO_INCREMENT PRIMARY KEY");
-                    continue;
-                }
+            return definition.toString();
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to generate SQL type definition for " + clazz.getName(), ex);
+        }
+    }
 
-                builder.append("`").append(fieldName).append("` ").append(sqlType).append(" PRIMARY KEY");
+    /**
+     * Creates the definition of a single column (e.g. "`name` VARCHAR(255) DEFAULT 'test'"), this is
+     * shared by {@link #generateSQLTypeDefinition(Class)} and the generated mappers.
+     *
+     * @param columnName             The name of the column
+     * @param type                   The type of the field
+     * @param id                     Whether the field is the id field
+     * @param automaticallyGenerated Whether the id is automatically generated
+     * @param defaultValue           The default value of the field (ignored for the id field)
+     * @return The definition of the column
+     */
+    public static String createColumnDefinition(String columnName, Class<?> type, boolean id, boolean automaticallyGenerated, Object defaultValue) {
+        String sqlType = getSQLType(type);
+        StringBuilder builder = new StringBuilder("`").append(columnName).append("` ").append(sqlType);
+
+        // If the field isn't the id field, just add it to the table definition (e.g. "name VARCHAR(255)")
+        if (!id) {
+            // If the field has a default value, add it to the table definition (e.g. "name VARCHAR(255) DEFAULT 'test'")
+            String defaultValueSQL = convertToSQLType(defaultValue);
+            if (defaultValueSQL != null && !sqlType.equals("JSON")) {
+                builder.append(" DEFAULT ").append(defaultValueSQL);
             }
 
             return builder.toString();
-        } catch (Exception ex) {
-            throw new RuntimeException("Failed to generate SQL type definition for " + clazz.getName(), ex);
         }
+
+        // If the field is the id field, make it the primary key (e.g. "id INT PRIMARY KEY")
+        if (automaticallyGenerated && sqlType.equals("INT")) {
+            return builder.append(" AUTO_INCREMENT PRIMARY KEY").toString();
+        }
+
+        return builder.append(" PRIMARY KEY").toString();
     }
 
     /**
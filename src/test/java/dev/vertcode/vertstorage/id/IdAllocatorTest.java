@@ -0,0 +1,85 @@
+package dev.vertcode.vertstorage.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdAllocatorTest {
+
+    @Test
+    void idsAreHandedOutFromTheReservedBlocks() {
+        AtomicInteger reservations = new AtomicInteger();
+        AtomicLong counter = new AtomicLong(1);
+        IdAllocator allocator = new IdAllocator(blockSize -> {
+            reservations.incrementAndGet();
+            return counter.getAndAdd(blockSize);
+        }, 10);
+
+        for (long expected = 1; expected <= 25; expected++) {
+            assertEquals(expected, allocator.nextId());
+        }
+
+        // The backend is only contacted once per block
+        assertEquals(3, reservations.get());
+    }
+
+    @Test
+    void blocksDoNotHaveToFollowEachOther() {
+        // Another node reserved the ids in between
+        List<Long> blocks = new ArrayList<>(List.of(1L, 101L));
+        IdAllocator allocator = new IdAllocator(blockSize -> blocks.remove(0), 2);
+
+        assertEquals(1, allocator.nextId());
+        assertEquals(2, allocator.nextId());
+        assertEquals(101, allocator.nextId());
+        assertEquals(102, allocator.nextId());
+    }
+
+    @Test
+    void concurrentCallsNeverHandOutAnIdTwice() throws Exception {
+        AtomicLong counter = new AtomicLong(1);
+        AtomicInteger reservations = new AtomicInteger();
+        IdAllocator allocator = new IdAllocator(blockSize -> {
+            reservations.incrementAndGet();
+            return counter.getAndAdd(blockSize);
+        }, 50);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    assertTrue(ids.add(allocator.nextId()));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(8000, ids.size());
+        // Every reserved block was used up completely, no block was reserved for nothing
+        assertEquals(8000 / 50, reservations.get());
+    }
+
+    @Test
+    void theBlockSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new IdAllocator(blockSize -> 1, 0));
+    }
+
+}
@@ -0,0 +1,116 @@
+package dev.vertcode.vertstorage.invalidation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvalidationBusTest {
+
+    private final List<InvalidationMessage> published = new CopyOnWriteArrayList<>();
+    private final LoopbackInvalidationChannel channel = new LoopbackInvalidationChannel() {
+        @Override
+        public void publish(InvalidationMessage message) {
+            InvalidationBusTest.this.published.add(message);
+            super.publish(message);
+        }
+    };
+    private final List<InvalidationBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void closeBuses() {
+        for (InvalidationBus bus : this.buses) {
+            bus.close();
+        }
+    }
+
+    @Test
+    void idsReachTheOtherNodesButNotThePublisher() {
+        InvalidationBus publisher = createBus(1, TimeUnit.MINUTES, 500);
+        InvalidationBus other = createBus(1, TimeUnit.MINUTES, 500);
+        List<String> publisherIds = new CopyOnWriteArrayList<>();
+        List<String> otherIds = new CopyOnWriteArrayList<>();
+        publisher.register("players", publisherIds::add);
+        other.register("players", otherIds::add);
+
+        publisher.invalidate("players", "1");
+        publisher.flush();
+
+        assertEquals(List.of("1"), otherIds);
+        assertTrue(publisherIds.isEmpty());
+    }
+
+    @Test
+    void idsAreCollectedIntoOneMessagePerTable() {
+        InvalidationBus bus = createBus(1, TimeUnit.MINUTES, 500);
+
+        bus.invalidate("players", "1");
+        bus.invalidate("players", "2");
+        bus.invalidate("players", "1");
+        bus.invalidate("teams", "red");
+        assertTrue(this.published.isEmpty());
+
+        bus.flush();
+
+        assertEquals(2, this.published.size());
+        for (InvalidationMessage message : this.published) {
+            if (message.getTableName().equals("players")) {
+                assertEquals(List.of("1", "2"), message.getIds());
+            } else {
+                assertEquals(List.of("red"), message.getIds());
+            }
+        }
+    }
+
+    @Test
+    void fullBatchesArePublishedRightAway() {
+        InvalidationBus bus = createBus(1, TimeUnit.MINUTES, 3);
+
+        bus.invalidate("players", "1");
+        bus.invalidate("players", "2");
+        assertTrue(this.published.isEmpty());
+
+        bus.invalidate("players", "3");
+
+        assertEquals(1, this.published.size());
+        assertEquals(List.of("1", "2", "3"), this.published.get(0).getIds());
+    }
+
+    @Test
+    void pendingIdsArePublishedAfterTheBatchDelay() throws Exception {
+        InvalidationBus publisher = createBus(20, TimeUnit.MILLISECONDS, 500);
+        InvalidationBus other = createBus(20, TimeUnit.MILLISECONDS, 500);
+        CountDownLatch received = new CountDownLatch(1);
+        other.register("players", id -> received.countDown());
+
+        publisher.invalidate("players", "1");
+
+        assertTrue(received.await(5, TimeUnit.SECONDS), "The id wasn't published after the batch delay");
+    }
+
+    @Test
+    void messagesSurviveEncoding() {
+        InvalidationMessage message = new InvalidationMessage("node", "players", List.of("1", "two", ""));
+
+        InvalidationMessage decoded = InvalidationMessage.decode(message.encode());
+
+        assertEquals("node", decoded.getSourceId());
+        assertEquals("players", decoded.getTableName());
+        assertEquals(List.of("1", "two", ""), decoded.getIds());
+    }
+
+    private InvalidationBus createBus(long batchDelay, TimeUnit batchDelayUnit, int maximumBatchSize) {
+        InvalidationBus bus = new InvalidationBus(this.channel, batchDelay, batchDelayUnit, maximumBatchSize);
+        this.buses.add(bus);
+
+        return bus;
+    }
+
+}
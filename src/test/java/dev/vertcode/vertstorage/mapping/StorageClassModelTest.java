@@ -0,0 +1,171 @@
+package dev.vertcode.vertstorage.mapping;
+
+import com.google.gson.TypeAdapter;
+import dev.vertcode.vertstorage.annotations.StorageField;
+import dev.vertcode.vertstorage.annotations.StorageId;
+import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageClassModelTest {
+
+    @Test
+    void storageFieldsAreFoundInOrderOfDeclaration() {
+        StorageClassModel<Account> model = StorageClassModel.of(Account.class);
+
+        assertEquals(List.of("id", "owner", "balance"), model.getFields().stream().map(StorageFieldModel::getName).collect(Collectors.toList()));
+        assertEquals("accounts", model.getMetadata().tableName());
+        assertEquals("id", model.getIdField().getName());
+        assertTrue(model.getIdField().isId());
+        assertNull(model.getMapper());
+        // The model is computed once per class
+        assertSame(model, StorageClassModel.of(Account.class));
+    }
+
+    @Test
+    void fieldsCanBeFoundByFieldOrColumnName() throws NoSuchFieldException {
+        StorageClassModel<Account> model = StorageClassModel.of(Account.class);
+
+        assertEquals("owner", model.getField("owner_name").getName());
+        assertEquals("owner", model.getField("owner").getName());
+        assertEquals("owner", model.getFieldByColumn("owner_name").getName());
+        assertEquals("owner", model.getField(Account.class.getDeclaredField("owner")).getName());
+        assertNull(model.getFieldByColumn("owner"));
+        assertNull(model.getField("note"));
+    }
+
+    @Test
+    void fieldsAreAccessedWithoutAMapper() {
+        StorageClassModel<Account> model = StorageClassModel.of(Account.class);
+        Account account = model.newInstance();
+        StorageFieldModel balance = model.getField("balance");
+
+        balance.set(account, 250L);
+
+        assertEquals(250L, account.balance);
+        assertEquals(250L, balance.get(account));
+        assertEquals(long.class, balance.getType());
+    }
+
+    @Test
+    void classesWithoutANoArgsConstructorCannotBeCreated() {
+        StorageClassModel<NoConstructor> model = StorageClassModel.of(NoConstructor.class);
+
+        assertThrows(IllegalStateException.class, model::newInstance);
+    }
+
+    @Test
+    void generatedMapperIsUsedWhenThereIsOne() {
+        StorageClassModel<Mapped> model = StorageClassModel.of(Mapped.class);
+        assertNotNull(model.getMapper());
+
+        Mapped mapped = model.newInstance();
+        assertEquals("created by the mapper", mapped.name);
+
+        model.getField("name").set(mapped, "value");
+        assertEquals("mapped value", mapped.name);
+        assertEquals("mapped value!", model.getField("name").get(mapped));
+    }
+
+    @StorageMetadata(tableName = "accounts")
+    public static class Account {
+
+        @StorageId
+        @StorageField(columnName = "id")
+        public int id;
+
+        @StorageField(columnName = "owner_name")
+        private String owner;
+
+        public String note;
+
+        @StorageField(columnName = "balance")
+        private long balance;
+
+        private Account() {
+        }
+
+    }
+
+    @StorageMetadata(tableName = "no_constructor")
+    public static class NoConstructor {
+
+        @StorageField(columnName = "value")
+        public String value;
+
+        public NoConstructor(String value) {
+            this.value = value;
+        }
+
+    }
+
+    @StorageMetadata(tableName = "mapped")
+    public static class Mapped {
+
+        @StorageField(columnName = "name")
+        public String name;
+
+    }
+
+    /**
+     * Stands in for the mapper the processor generates, it marks the values so the test can tell it was used.
+     */
+    public static class Mapped_StorageMapper implements StorageMapper<Mapped> {
+
+        @Override
+        public Class<Mapped> getType() {
+            return Mapped.class;
+        }
+
+        @Override
+        public Mapped newInstance() {
+            Mapped mapped = new Mapped();
+            mapped.name = "created by the mapper";
+
+            return mapped;
+        }
+
+        @Override
+        public List<String> getColumnNames() {
+            return List.of("name");
+        }
+
+        @Override
+        public Type getGenericType(int index) {
+            return String.class;
+        }
+
+        @Override
+        public @Nullable Object getValue(Mapped object, int index) {
+            return object.name + "!";
+        }
+
+        @Override
+        public void setValue(Mapped object, int index, @Nullable Object value) {
+            object.name = "mapped " + value;
+        }
+
+        @Override
+        public String getTableDefinition() {
+            return "`name` VARCHAR(255)";
+        }
+
+        @Override
+        public TypeAdapter<Mapped> getTypeAdapter() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheSnapshotTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void cachedEntriesAreRestored() throws IOException {
+        Path file = this.folder.resolve("snapshot.bin");
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        for (int key = 1; key <= 100; key++) {
+            cache.put(key, "value-" + key);
+        }
+
+        assertEquals(100, CacheSnapshot.write(cache, file, String::valueOf, OffHeapCacheTierTest.CODEC));
+        // The snapshot is written to a temporary file first and then moved into place
+        assertFalse(Files.exists(this.folder.resolve("snapshot.bin.tmp")));
+
+        ObjectCache<Integer, String> restoredCache = new ObjectCache<>();
+        List<Integer> restoredKeys = CacheSnapshot.read(restoredCache, file, Integer::valueOf, OffHeapCacheTierTest.CODEC);
+
+        assertEquals(100, restoredKeys.size());
+        assertEquals(100, restoredCache.size());
+        for (int key = 1; key <= 100; key++) {
+            assertEquals("value-" + key, restoredCache.get(key));
+        }
+    }
+
+    @Test
+    void restoredEntriesKeepTheirRemainingCacheTime() throws Exception {
+        Path file = this.folder.resolve("snapshot.bin");
+        ObjectCache<Integer, String> cache = new ObjectCache<>(200, TimeUnit.MILLISECONDS);
+        cache.put(1, "one");
+        CacheSnapshot.write(cache, file, String::valueOf, OffHeapCacheTierTest.CODEC);
+
+        ObjectCache<Integer, String> restoredCache = new ObjectCache<>(1, TimeUnit.HOURS);
+        CacheSnapshot.read(restoredCache, file, Integer::valueOf, OffHeapCacheTierTest.CODEC);
+        assertTrue(restoredCache.isCached(1));
+
+        // The entry doesn't get the cache time of the new cache, it expires when the original would have
+        Thread.sleep(400);
+        assertFalse(restoredCache.isCached(1));
+    }
+
+    @Test
+    void entriesThatExpiredSinceTheSnapshotAreSkipped() throws Exception {
+        Path file = this.folder.resolve("snapshot.bin");
+        ObjectCache<Integer, String> cache = new ObjectCache<>(100, TimeUnit.MILLISECONDS);
+        cache.put(1, "one");
+        CacheSnapshot.write(cache, file, String::valueOf, OffHeapCacheTierTest.CODEC);
+
+        Thread.sleep(200);
+        ObjectCache<Integer, String> restoredCache = new ObjectCache<>();
+        List<Integer> restoredKeys = CacheSnapshot.read(restoredCache, file, Integer::valueOf, OffHeapCacheTierTest.CODEC);
+
+        assertTrue(restoredKeys.isEmpty());
+        assertEquals(0, restoredCache.size());
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = this.folder.resolve("other.bin");
+        Files.writeString(file, "not a snapshot");
+
+        assertThrows(IOException.class, () -> CacheSnapshot.read(new ObjectCache<Integer, String>(), file, Integer::valueOf, OffHeapCacheTierTest.CODEC));
+    }
+
+}
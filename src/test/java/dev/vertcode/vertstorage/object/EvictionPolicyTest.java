@@ -0,0 +1,82 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvictionPolicyTest {
+
+    private final List<CacheEntry<Integer, String>> evicted = new ArrayList<>();
+
+    @Test
+    void evictsDownToTheMaximumWeight() {
+        EvictionPolicy<Integer, String> policy = new EvictionPolicy<>(100, this.evicted::add);
+
+        for (int key = 0; key < 250; key++) {
+            policy.onAdd(entry(key, 1));
+        }
+
+        assertEquals(100, policy.getWeightedSize());
+        assertEquals(150, this.evicted.size());
+    }
+
+    @Test
+    void frequentlyUsedEntriesSurviveAScan() {
+        EvictionPolicy<Integer, String> policy = new EvictionPolicy<>(100, this.evicted::add);
+        List<CacheEntry<Integer, String>> hot = new ArrayList<>();
+        for (int key = 0; key < 50; key++) {
+            CacheEntry<Integer, String> entry = entry(key, 1);
+            policy.onAdd(entry);
+            hot.add(entry);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            for (CacheEntry<Integer, String> entry : hot) {
+                policy.onAccess(entry);
+            }
+        }
+
+        // A scan of one-hit wonders must not push the hot entries out
+        for (int key = 1_000; key < 2_000; key++) {
+            policy.onAdd(entry(key, 1));
+        }
+
+        for (CacheEntry<Integer, String> entry : hot) {
+            assertFalse(this.evicted.contains(entry), "Hot entry " + entry.getKey() + " was evicted");
+        }
+    }
+
+    @Test
+    void removedEntriesNoLongerCount() {
+        EvictionPolicy<Integer, String> policy = new EvictionPolicy<>(100, this.evicted::add);
+        CacheEntry<Integer, String> entry = entry(1, 40);
+        policy.onAdd(entry);
+        policy.onAdd(entry(2, 10));
+
+        policy.onRemove(entry);
+
+        assertEquals(10, policy.getWeightedSize());
+        assertTrue(this.evicted.isEmpty());
+    }
+
+    @Test
+    void entriesHeavierThanTheMaximumAreEvicted() {
+        EvictionPolicy<Integer, String> policy = new EvictionPolicy<>(100, this.evicted::add);
+        CacheEntry<Integer, String> entry = entry(1, 150);
+
+        policy.onAdd(entry);
+
+        assertEquals(0, policy.getWeightedSize());
+        assertTrue(this.evicted.contains(entry));
+    }
+
+    private CacheEntry<Integer, String> entry(int key, int weight) {
+        return new CacheEntry<>(key, "value-" + key, 0, CacheEntry.NEVER_EXPIRES, weight);
+    }
+
+}
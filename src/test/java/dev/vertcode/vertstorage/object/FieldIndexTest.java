@@ -0,0 +1,95 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FieldIndexTest {
+
+    @Test
+    void cachedValuesAreIndexedByTheirField() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        FieldIndex<Integer, String> index = new FieldIndex<>(String::length);
+        cache.addListener(index);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+
+        assertEquals(Set.of(1, 2), index.getKeys(3));
+        assertEquals(Set.of(3), index.getKeys(5));
+        assertTrue(index.getKeys(4).isEmpty());
+    }
+
+    @Test
+    void replacedValuesMoveToTheirNewFieldValue() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        FieldIndex<Integer, String> index = new FieldIndex<>(String::length);
+        cache.addListener(index);
+
+        cache.put(1, "one");
+        cache.put(1, "three");
+
+        assertTrue(index.getKeys(3).isEmpty());
+        assertEquals(Set.of(1), index.getKeys(5));
+    }
+
+    @Test
+    void removedValuesAreUnindexed() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        FieldIndex<Integer, String> index = new FieldIndex<>(String::length);
+        cache.addListener(index);
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        cache.remove(1);
+
+        assertEquals(Set.of(2), index.getKeys(3));
+    }
+
+    @Test
+    void evictedValuesAreUnindexed() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(2);
+        FieldIndex<Integer, String> index = new FieldIndex<>(String::length);
+        cache.addListener(index);
+
+        for (int key = 0; key < 10; key++) {
+            cache.put(key, "value");
+        }
+        cache.cleanUp();
+
+        assertEquals(cache.size(), index.getKeys(5).size());
+        for (Integer key : index.getKeys(5)) {
+            assertTrue(cache.isCached(key));
+        }
+    }
+
+    @Test
+    void nullFieldValuesCanBeLookedUp() {
+        FieldIndex<Integer, String> index = new FieldIndex<>(value -> value.isEmpty() ? null : value);
+
+        index.onPut(1, "");
+        index.onPut(2, "value");
+
+        assertEquals(Set.of(1), index.getKeys(null));
+
+        index.clear();
+        assertTrue(index.getKeys(null).isEmpty());
+        assertTrue(index.getKeys("value").isEmpty());
+    }
+
+    @Test
+    void returnedKeysAreACopy() {
+        FieldIndex<Integer, String> index = new FieldIndex<>(String::length);
+        index.onPut(1, "one");
+
+        Set<Integer> keys = index.getKeys(3);
+        index.onPut(2, "two");
+
+        assertEquals(Set.of(1), keys);
+    }
+
+}
@@ -0,0 +1,58 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    @Test
+    void countsTheIncrementsOfAKey() {
+        FrequencySketch sketch = new FrequencySketch(512);
+
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("key");
+        }
+
+        // A Count-Min sketch may overestimate, but never underestimates
+        assertTrue(sketch.frequency("key") >= 5);
+        assertTrue(sketch.frequency("key") <= 6);
+    }
+
+    @Test
+    void frequenciesAreCappedAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(512);
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(42);
+        }
+
+        assertEquals(15, sketch.frequency(42));
+    }
+
+    @Test
+    void unknownKeysHaveAFrequencyOfZero() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        sketch.increment(1);
+
+        assertEquals(0, sketch.frequency(2));
+    }
+
+    @Test
+    void countersAreHalvedOnceTheSampleSizeIsReached() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"));
+
+        // The sample size is 10 times the table size, other keys age the counter of the hot key
+        for (int i = 0; i < 10 * 16; i++) {
+            sketch.increment(i);
+        }
+
+        assertTrue(sketch.frequency("hot") < 15, "The frequency was " + sketch.frequency("hot"));
+    }
+
+}
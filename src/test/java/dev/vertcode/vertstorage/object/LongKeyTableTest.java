@@ -0,0 +1,124 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongKeyTableTest {
+
+    private static final int KEYS = 1000;
+
+    @Test
+    void entriesCanBeFoundAfterTheTableGrows() {
+        LongKeyTable<Long, String> table = new LongKeyTable<>();
+        CacheEntry<Long, String>[] entries = fill(table);
+
+        for (int key = 0; key < KEYS; key++) {
+            assertSame(entries[key], table.get(key));
+        }
+        assertNull(table.get(KEYS));
+        assertNull(table.get(-1));
+    }
+
+    @Test
+    void putReplacesTheEntryOfAKey() {
+        LongKeyTable<Long, String> table = new LongKeyTable<>();
+        CacheEntry<Long, String> replacement = entry(7);
+        table.put(7, entry(7));
+
+        table.put(7, replacement);
+
+        assertSame(replacement, table.get(7));
+    }
+
+    @Test
+    void removingEntriesKeepsTheOtherEntriesReachable() {
+        LongKeyTable<Long, String> table = new LongKeyTable<>();
+        CacheEntry<Long, String>[] entries = fill(table);
+
+        // Removing every other key shifts the following entries of the probe sequences back
+        for (int key = 0; key < KEYS; key += 2) {
+            table.remove(key, entries[key]);
+        }
+
+        for (int key = 0; key < KEYS; key++) {
+            if (key % 2 == 0) {
+                assertNull(table.get(key));
+            } else {
+                assertSame(entries[key], table.get(key));
+            }
+        }
+    }
+
+    @Test
+    void removeOnlyRemovesTheExpectedEntry() {
+        LongKeyTable<Long, String> table = new LongKeyTable<>();
+        CacheEntry<Long, String> current = entry(1);
+        table.put(1, current);
+
+        // The entry was replaced in the meantime, so the removal of the old entry is ignored
+        table.remove(1, entry(1));
+
+        assertSame(current, table.get(1));
+    }
+
+    @Test
+    void clearRemovesAllEntries() {
+        LongKeyTable<Long, String> table = new LongKeyTable<>();
+        fill(table);
+
+        table.clear();
+
+        for (int key = 0; key < KEYS; key++) {
+            assertNull(table.get(key));
+        }
+    }
+
+    @Test
+    void onlyIntegersAndLongsArePrimitiveKeys() {
+        assertTrue(LongKeyTable.isPrimitiveKey(1));
+        assertTrue(LongKeyTable.isPrimitiveKey(1L));
+        assertFalse(LongKeyTable.isPrimitiveKey("1"));
+        assertFalse(LongKeyTable.isPrimitiveKey((short) 1));
+    }
+
+    @Test
+    void cacheLooksUpPrimitiveKeysOnceEnabled() {
+        ObjectCache<Object, String> cache = new ObjectCache<>();
+        cache.put(1, "cached before");
+        assertNull(cache.getPrimitive(1));
+
+        // Entries that are already cached are added to the table as well
+        cache.enablePrimitiveKeys();
+        cache.put(2L, "long key");
+        cache.put("3", "string key");
+
+        assertTrue(cache.usesPrimitiveKeys());
+        assertEquals("cached before", cache.getPrimitive(1));
+        assertEquals("long key", cache.getPrimitive(2));
+        assertNull(cache.getPrimitive(3));
+
+        cache.remove(1);
+        assertNull(cache.getPrimitive(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CacheEntry<Long, String>[] fill(LongKeyTable<Long, String> table) {
+        CacheEntry<Long, String>[] entries = new CacheEntry[KEYS];
+        for (int key = 0; key < KEYS; key++) {
+            entries[key] = entry(key);
+            table.put(key, entries[key]);
+        }
+
+        return entries;
+    }
+
+    private static CacheEntry<Long, String> entry(long key) {
+        return new CacheEntry<>(key, "value-" + key, CacheEntry.NEVER_EXPIRES);
+    }
+
+}
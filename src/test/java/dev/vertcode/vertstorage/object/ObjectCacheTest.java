@@ -0,0 +1,432 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectCacheTest {
+
+    private static final int THREADS = 8;
+    private static final int KEYS_PER_THREAD = 2_000;
+
+    @Test
+    void concurrentWritesToDifferentKeysAreAllKept() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                int key = thread * KEYS_PER_THREAD + i;
+                cache.put(key, "value-" + key);
+            }
+        });
+
+        assertEquals(THREADS * KEYS_PER_THREAD, cache.size());
+        for (int key = 0; key < THREADS * KEYS_PER_THREAD; key++) {
+            assertEquals("value-" + key, cache.get(key));
+        }
+    }
+
+    @Test
+    void concurrentPutsAndRemovesOfTheSameKeysStayConsistent() throws Exception {
+        ObjectCache<Integer, Integer> cache = new ObjectCache<>();
+        FieldIndex<Integer, Integer> index = new FieldIndex<>(value -> value % 2);
+        cache.addListener(index);
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                int key = i % 100;
+                if ((i + thread) % 3 == 0) {
+                    cache.remove(key);
+                } else {
+                    cache.put(key, key);
+                }
+            }
+        });
+
+        // The listeners must have seen the same puts & removes as the map
+        int cached = 0;
+        for (int key = 0; key < 100; key++) {
+            boolean isCached = cache.get(key) != null;
+            assertEquals(isCached, index.getKeys(key % 2).contains(key), "Index of key " + key);
+            if (isCached) {
+                cached++;
+            }
+        }
+
+        assertEquals(cached, cache.size());
+    }
+
+    @Test
+    void concurrentReplacesOnlySucceedOnce() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        cache.put(1, "initial");
+        List<Integer> winners = new CopyOnWriteArrayList<>();
+
+        // Every thread tries to swap the same value, only one of them may see it
+        runConcurrently(thread -> {
+            if (cache.replace(1, "initial", "thread-" + thread)) {
+                winners.add(thread);
+            }
+        });
+
+        assertEquals(1, winners.size());
+        assertEquals("thread-" + winners.get(0), cache.get(1));
+    }
+
+    @Test
+    void conditionalRemoveOnlyRemovesTheExpectedValue() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        cache.put(1, "value");
+
+        assertFalse(cache.remove(1, "other"));
+        assertEquals("value", cache.get(1));
+
+        assertTrue(cache.remove(1, "value"));
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void boundedCacheStaysWithinItsMaximumSizeUnderConcurrentWrites() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(100);
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                cache.put(thread * KEYS_PER_THREAD + i, "value");
+            }
+        });
+        cache.cleanUp();
+
+        assertEquals(100, cache.size());
+        assertEquals(100, cache.getWeightedSize());
+    }
+
+    @Test
+    void weightedCacheEvictsByWeight() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(100, (key, value) -> value.length());
+
+        for (int key = 0; key < 50; key++) {
+            cache.put(key, "0123456789");
+        }
+        cache.cleanUp();
+
+        assertTrue(cache.getWeightedSize() <= 100, "Weighted size " + cache.getWeightedSize());
+        assertEquals(cache.size() * 10L, cache.getWeightedSize());
+    }
+
+    @Test
+    void expiredEntriesAreRemoved() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(50, TimeUnit.MILLISECONDS);
+        cache.put(1, "value");
+        assertEquals("value", cache.get(1));
+
+        Thread.sleep(100);
+
+        // Reads skip expired entries right away, the clean up removes them
+        assertNull(cache.get(1));
+        cache.cleanUp();
+        assertEquals(0, cache.size());
+        assertFalse(cache.isCached(1));
+    }
+
+    @Test
+    void concurrentGetsOfAnUncachedKeyShareOneLoad() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        AtomicInteger loads = new AtomicInteger();
+        List<String> results = new CopyOnWriteArrayList<>();
+
+        runConcurrently(thread -> results.add(cache.get(1, key -> {
+            loads.incrementAndGet();
+            sleep(100);
+            return "loaded";
+        })));
+
+        assertEquals(1, loads.get());
+        assertEquals(THREADS, results.size());
+        assertTrue(results.stream().allMatch("loaded"::equals));
+    }
+
+    @Test
+    void asyncGetsShareThePendingLoad() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        AtomicInteger loads = new AtomicInteger();
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        CacheLoader<Integer, String> loader = key -> {
+            loads.incrementAndGet();
+            return "loaded";
+        };
+
+        CompletableFuture<String> first = cache.getAsync(1, loader, tasks::add);
+        CompletableFuture<String> second = cache.getAsync(1, loader, tasks::add);
+
+        // Only the first get schedules a load, the second one waits for it
+        assertEquals(1, tasks.size());
+        assertFalse(first.isDone() || second.isDone());
+        tasks.poll().run();
+
+        assertEquals("loaded", first.join());
+        assertEquals("loaded", second.join());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadsAreRethrownAndCanBeRetried() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+
+        assertThrows(IllegalStateException.class, () -> cache.get(1, key -> {
+            throw new IllegalStateException("The database is down!");
+        }));
+
+        assertEquals("loaded", cache.get(1, key -> "loaded"));
+        assertEquals(1, cache.getMetrics().getLoadFailures());
+    }
+
+    @Test
+    void rememberedMissIsForgottenByAPut() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        cache.enableNegativeCaching(100, 1, TimeUnit.MINUTES);
+
+        assertNull(cache.get(1, key -> null));
+        assertTrue(cache.isMissing(1));
+
+        cache.put(1, "value");
+        assertFalse(cache.isMissing(1));
+        assertEquals("value", cache.get(1));
+    }
+
+    @Test
+    void rememberedMissesSkipTheLoader() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        cache.enableNegativeCaching(100, 1, TimeUnit.MINUTES);
+        AtomicInteger loads = new AtomicInteger();
+        CacheLoader<Integer, String> loader = key -> {
+            loads.incrementAndGet();
+            return null;
+        };
+
+        assertNull(cache.get(1, loader));
+        assertNull(cache.get(1, loader));
+        assertEquals(1, loads.get());
+
+        // Once the miss is forgotten the loader is asked again
+        cache.forgetMissing(1);
+        assertNull(cache.get(1, loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void rememberedMissesExpire() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        cache.enableNegativeCaching(100, 50, TimeUnit.MILLISECONDS);
+
+        assertNull(cache.get(1, key -> null));
+        assertTrue(cache.isMissing(1));
+
+        Thread.sleep(100);
+
+        assertFalse(cache.isMissing(1));
+    }
+
+    @Test
+    void missIsNotRememberedWhenTheKeyIsPutDuringTheLoad() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        cache.enableNegativeCaching(100, 1, TimeUnit.MINUTES);
+
+        // The key is created while the loader still sees the old state of the database
+        assertNull(cache.get(1, key -> {
+            cache.put(1, "created");
+            cache.remove(1);
+            return null;
+        }));
+
+        assertFalse(cache.isMissing(1));
+    }
+
+    @Test
+    void entriesPastTheRefreshTimeAreRefreshedOnceInTheBackground() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(1, TimeUnit.SECONDS);
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        cache.enableRefreshAhead(0.05, key -> "refreshed", tasks::add);
+        cache.put(1, "initial");
+
+        Thread.sleep(100);
+
+        // Every read returns the current value right away, only the first one starts a refresh
+        for (int i = 0; i < 10; i++) {
+            assertEquals("initial", cache.get(1));
+        }
+        assertEquals(1, tasks.size());
+
+        tasks.poll().run();
+        assertEquals("refreshed", cache.get(1));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    void failedRefreshesKeepTheCurrentValue() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(1, TimeUnit.SECONDS);
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        cache.enableRefreshAhead(0.05, key -> {
+            throw new IllegalStateException("The database is down!");
+        }, tasks::add);
+        cache.put(1, "initial");
+
+        Thread.sleep(100);
+        assertEquals("initial", cache.get(1));
+        tasks.poll().run();
+
+        // The entry isn't refreshed again, it's loaded again once it expires
+        assertEquals("initial", cache.get(1));
+        assertTrue(tasks.isEmpty());
+        assertEquals(1, cache.getMetrics().getLoadFailures());
+    }
+
+    @Test
+    void refreshesOfRemovedValuesRemoveTheEntry() throws Exception {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(1, TimeUnit.SECONDS);
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        cache.enableRefreshAhead(0.05, key -> null, tasks::add);
+        cache.put(1, "initial");
+
+        Thread.sleep(100);
+        cache.get(1);
+        tasks.poll().run();
+
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void getAllOnlyReturnsTheCachedKeys() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+        cache.put(1, "one");
+        cache.put(3, "three");
+
+        Map<Integer, String> values = cache.getAll(List.of(1, 2, 3, 4));
+
+        assertEquals(Map.of(1, "one", 3, "three"), values);
+        assertEquals(2, cache.getMetrics().getMisses());
+    }
+
+    @Test
+    void evictedEntriesAreDemotedAndPromotedBack() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(10);
+        OffHeapCacheTier<Integer, String> secondLevel = new OffHeapCacheTier<>(4096, OffHeapCacheTierTest.CODEC);
+        cache.setSecondLevel(secondLevel);
+        for (int key = 0; key < 50; key++) {
+            cache.put(key, "value-" + key);
+        }
+        cache.cleanUp();
+
+        assertEquals(10, cache.size());
+        assertEquals(40, secondLevel.size());
+
+        // Every value is still there, without asking the loader
+        for (int key = 0; key < 50; key++) {
+            assertEquals("value-" + key, cache.get(key, ignored -> {
+                throw new AssertionError("The value should have been promoted");
+            }));
+        }
+    }
+
+    @Test
+    void getAllPromotesFromTheSecondLevel() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(10);
+        cache.setSecondLevel(new OffHeapCacheTier<>(4096, OffHeapCacheTierTest.CODEC));
+        List<Integer> keys = new ArrayList<>();
+        for (int key = 0; key < 50; key++) {
+            cache.put(key, "value-" + key);
+            keys.add(key);
+        }
+        cache.cleanUp();
+
+        assertEquals(50, cache.getAll(keys).size());
+    }
+
+    @Test
+    void removedKeysAreRemovedFromTheSecondLevel() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>(10);
+        OffHeapCacheTier<Integer, String> secondLevel = new OffHeapCacheTier<>(4096, OffHeapCacheTierTest.CODEC);
+        cache.setSecondLevel(secondLevel);
+        for (int key = 0; key < 50; key++) {
+            cache.put(key, "value-" + key);
+        }
+        cache.cleanUp();
+
+        for (int key = 0; key < 50; key++) {
+            cache.remove(key);
+        }
+
+        assertEquals(0, secondLevel.size());
+        assertNull(cache.get(0, key -> null));
+    }
+
+    @Test
+    void onlyBoundedCachesCanHaveASecondLevel() {
+        ObjectCache<Integer, String> cache = new ObjectCache<>();
+
+        assertThrows(IllegalStateException.class, () -> cache.setSecondLevel(new OffHeapCacheTier<>(4096, OffHeapCacheTierTest.CODEC)));
+    }
+
+    /**
+     * Runs the task on {@link #THREADS} threads at the same time and waits for them to finish.
+     *
+     * @param task The task, gets the number of the thread
+     * @throws Exception If a task failed
+     */
+    private void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int threadNumber = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(threadNumber);
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+
+        void run(int thread);
+
+    }
+
+}
@@ -0,0 +1,110 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapCacheTierTest {
+
+    static final CacheCodec<String> CODEC = new CacheCodec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void storedValuesCanBeReadBack() {
+        OffHeapCacheTier<Integer, String> tier = new OffHeapCacheTier<>(1024, CODEC);
+
+        tier.put(1, "one", CacheEntry.NEVER_EXPIRES);
+        tier.put(2, "two", CacheEntry.NEVER_EXPIRES);
+        tier.put(1, "uno", CacheEntry.NEVER_EXPIRES);
+
+        assertEquals("uno", tier.get(1, 0));
+        assertEquals("two", tier.get(2, 0));
+        assertEquals(2, tier.size());
+    }
+
+    @Test
+    void expiredValuesAreNotReturned() {
+        OffHeapCacheTier<Integer, String> tier = new OffHeapCacheTier<>(1024, CODEC);
+        tier.put(1, "one", 100);
+
+        assertEquals("one", tier.get(1, 99));
+        assertNull(tier.get(1, 100));
+        assertEquals(100, tier.getExpirationTime(1));
+    }
+
+    @Test
+    void removedValuesAreForgotten() {
+        OffHeapCacheTier<Integer, String> tier = new OffHeapCacheTier<>(1024, CODEC);
+        tier.put(1, "one", CacheEntry.NEVER_EXPIRES);
+        tier.put(2, "two", CacheEntry.NEVER_EXPIRES);
+
+        tier.remove(1);
+        assertNull(tier.get(1, 0));
+        assertEquals(CacheEntry.NEVER_EXPIRES, tier.getExpirationTime(1));
+
+        tier.clear();
+        assertNull(tier.get(2, 0));
+        assertEquals(0, tier.size());
+    }
+
+    @Test
+    void theOldestValuesAreOverwrittenWhenTheTierIsFull() {
+        // Two slabs of 16 bytes, every value takes 8 bytes
+        OffHeapCacheTier<Integer, String> tier = new OffHeapCacheTier<>(32, 16, CODEC);
+        for (int key = 0; key < 6; key++) {
+            tier.put(key, "value-0" + key, CacheEntry.NEVER_EXPIRES);
+        }
+
+        assertNull(tier.get(0, 0));
+        assertNull(tier.get(1, 0));
+        for (int key = 2; key < 6; key++) {
+            assertEquals("value-0" + key, tier.get(key, 0));
+        }
+        assertEquals(4, tier.size());
+    }
+
+    @Test
+    void valuesBiggerThanASlabAreNotStored() {
+        OffHeapCacheTier<Integer, String> tier = new OffHeapCacheTier<>(32, 16, CODEC);
+        tier.put(1, "small", CacheEntry.NEVER_EXPIRES);
+
+        // Storing a value that doesn't fit removes the old value, so it can't be read back stale
+        tier.put(1, "this value is way too big", CacheEntry.NEVER_EXPIRES);
+
+        assertNull(tier.get(1, 0));
+    }
+
+    @Test
+    void valuesCanBeStoredInAMappedFile() {
+        OffHeapCacheTier<Integer, String> tier = new OffHeapCacheTier<>(this.folder.resolve("cache.bin"), 64, 32, CODEC);
+
+        tier.put(1, "one", CacheEntry.NEVER_EXPIRES);
+
+        assertEquals("one", tier.get(1, 0));
+        assertEquals(64, tier.getCapacity());
+    }
+
+    @Test
+    void theCapacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapCacheTier<>(0, CODEC));
+    }
+
+}
@@ -0,0 +1,74 @@
+package dev.vertcode.vertstorage.object;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    private final List<CacheEntry<Integer, String>> expired = new ArrayList<>();
+    private final TimerWheel<Integer, String> timerWheel = new TimerWheel<>(0, this.expired::add);
+
+    @Test
+    void entriesExpireOnTheirOwnLevel() {
+        CacheEntry<Integer, String> seconds = schedule(1, TimeUnit.SECONDS.toNanos(1));
+        CacheEntry<Integer, String> minutes = schedule(2, TimeUnit.MINUTES.toNanos(2));
+        CacheEntry<Integer, String> hours = schedule(3, TimeUnit.HOURS.toNanos(3));
+
+        this.timerWheel.advance(TimeUnit.MILLISECONDS.toNanos(1_500));
+        assertEquals(List.of(seconds), this.expired);
+
+        this.timerWheel.advance(TimeUnit.MINUTES.toNanos(3));
+        assertEquals(List.of(seconds, minutes), this.expired);
+
+        this.timerWheel.advance(TimeUnit.HOURS.toNanos(4));
+        assertEquals(List.of(seconds, minutes, hours), this.expired);
+    }
+
+    @Test
+    void entriesThatArentDueAreMovedToAFinerLevel() {
+        CacheEntry<Integer, String> entry = schedule(1, TimeUnit.SECONDS.toNanos(100));
+
+        // The bucket of the entry is passed, but the entry only expires 10 seconds later
+        this.timerWheel.advance(TimeUnit.SECONDS.toNanos(90));
+        assertTrue(this.expired.isEmpty());
+
+        this.timerWheel.advance(TimeUnit.SECONDS.toNanos(101));
+        assertEquals(List.of(entry), this.expired);
+    }
+
+    @Test
+    void descheduledEntriesDontExpire() {
+        CacheEntry<Integer, String> removed = schedule(1, TimeUnit.SECONDS.toNanos(1));
+        CacheEntry<Integer, String> kept = schedule(2, TimeUnit.SECONDS.toNanos(1));
+
+        this.timerWheel.deschedule(removed);
+        this.timerWheel.advance(TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(List.of(kept), this.expired);
+    }
+
+    @Test
+    void advancingOverManyRotationsExpiresEverything() {
+        for (int key = 0; key < 1_000; key++) {
+            schedule(key, TimeUnit.SECONDS.toNanos(key + 1));
+        }
+
+        this.timerWheel.advance(TimeUnit.DAYS.toNanos(30));
+
+        assertEquals(1_000, this.expired.size());
+    }
+
+    private CacheEntry<Integer, String> schedule(int key, long expirationTime) {
+        CacheEntry<Integer, String> entry = new CacheEntry<>(key, "value-" + key, expirationTime);
+        this.timerWheel.schedule(entry);
+
+        return entry;
+    }
+
+}
@@ -0,0 +1,90 @@
+package dev.vertcode.vertstorage.processor;
+
+import dev.vertcode.vertstorage.mapping.StorageClassModel;
+import dev.vertcode.vertstorage.mapping.StorageMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageMapperProcessorTest {
+
+    private static final String SOURCE = String.join("\n",
+            "package test;",
+            "",
+            "import dev.vertcode.vertstorage.annotations.StorageField;",
+            "import dev.vertcode.vertstorage.annotations.StorageId;",
+            "import dev.vertcode.vertstorage.annotations.StorageMetadata;",
+            "",
+            "@StorageMetadata(tableName = \"members\")",
+            "public class Member {",
+            "",
+            "    @StorageId",
+            "    @StorageField(columnName = \"id\")",
+            "    public int id;",
+            "",
+            "    @StorageField(columnName = \"member_rank\")",
+            "    public String rank = \"member\";",
+            "",
+            "    @StorageField(columnName = \"coins\")",
+            "    public long coins = 100;",
+            "",
+            "}",
+            "");
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void generatedMapperGivesTheDefaultValues() throws Exception {
+        Class<?> memberClass = compile();
+        StorageClassModel<?> model = StorageClassModel.of(memberClass);
+        StorageMapper<?> mapper = model.getMapper();
+        assertNotNull(mapper);
+
+        // These are the values the SQL service uses as the column defaults when it updates a table
+        Object defaults = model.newInstance();
+        assertEquals("member", model.getField("member_rank").get(defaults));
+        assertEquals(100L, model.getField("coins").get(defaults));
+
+        model.getField("coins").set(defaults, 250L);
+        assertEquals(250L, model.getField("coins").get(defaults));
+        assertTrue(mapper.getTableDefinition().contains("`member_rank`"));
+    }
+
+    /**
+     * Compiles the source with the processor and loads the compiled class.
+     *
+     * @return The compiled class
+     */
+    private Class<?> compile() throws Exception {
+        Path sourceFile = this.folder.resolve("src/test/Member.java");
+        Path outputFolder = this.folder.resolve("out");
+        Files.createDirectories(sourceFile.getParent());
+        Files.createDirectories(outputFolder);
+        Files.writeString(sourceFile, SOURCE);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int result = compiler.run(null, output, output,
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", StorageMapperProcessor.class.getName(),
+                "-d", outputFolder.toString(),
+                sourceFile.toString());
+        assertEquals(0, result, output.toString());
+
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{outputFolder.toUri().toURL()}, getClass().getClassLoader());
+        return Class.forName("test.Member", true, classLoader);
+    }
+
+}
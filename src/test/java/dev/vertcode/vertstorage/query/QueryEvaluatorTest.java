@@ -0,0 +1,115 @@
+package dev.vertcode.vertstorage.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static dev.vertcode.vertstorage.query.Conditions.and;
+import static dev.vertcode.vertstorage.query.Conditions.between;
+import static dev.vertcode.vertstorage.query.Conditions.eq;
+import static dev.vertcode.vertstorage.query.Conditions.gt;
+import static dev.vertcode.vertstorage.query.Conditions.in;
+import static dev.vertcode.vertstorage.query.Conditions.like;
+import static dev.vertcode.vertstorage.query.Conditions.lt;
+import static dev.vertcode.vertstorage.query.Conditions.ne;
+import static dev.vertcode.vertstorage.query.Conditions.or;
+import static dev.vertcode.vertstorage.query.Conditions.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryEvaluatorTest {
+
+    private final QueryEvaluator<Map<String, Object>> evaluator = new QueryEvaluator<>(fieldName -> object -> object.get(fieldName));
+
+    @Test
+    void comparisonsMatchTheFieldValue() {
+        Map<String, Object> player = player("Steve", 1500L);
+
+        assertTrue(this.evaluator.matches(eq("name", "Steve"), player));
+        assertFalse(this.evaluator.matches(ne("name", "Steve"), player));
+        assertTrue(this.evaluator.matches(gt("score", 1000L), player));
+        assertFalse(this.evaluator.matches(lt("score", 1500L), player));
+        assertTrue(this.evaluator.matches(between("score", 1500L, 2000L), player));
+        assertTrue(this.evaluator.matches(null, player));
+    }
+
+    @Test
+    void numbersOfDifferentTypesAreComparedByTheirValue() {
+        Map<String, Object> player = player("Steve", 1500L);
+
+        assertTrue(this.evaluator.matches(eq("score", 1500), player));
+        assertTrue(this.evaluator.matches(gt("score", 1499.5), player));
+        assertTrue(this.evaluator.matches(in("score", 1, 1500), player));
+    }
+
+    @Test
+    void nullsOnlyMatchEquality() {
+        Map<String, Object> player = player(null, 1500L);
+
+        assertTrue(this.evaluator.matches(eq("name", null), player));
+        assertFalse(this.evaluator.matches(gt("name", "A"), player));
+        assertFalse(this.evaluator.matches(lt("name", "Z"), player));
+        assertFalse(this.evaluator.matches(like("name", "%"), player));
+    }
+
+    @Test
+    void likePatternsMatchTheWholeValue() {
+        Map<String, Object> player = player("Steve_99", 0L);
+
+        assertTrue(this.evaluator.matches(like("name", "St%"), player));
+        assertTrue(this.evaluator.matches(like("name", "Stev__99"), player));
+        assertFalse(this.evaluator.matches(like("name", "teve%"), player));
+
+        // The escaped underscore only matches an underscore
+        assertTrue(this.evaluator.matches(startsWith("name", "Steve_"), player));
+        assertFalse(this.evaluator.matches(startsWith("name", "Steve_"), player("Steve-99", 0L)));
+        // Regex characters in the pattern are literals
+        assertTrue(this.evaluator.matches(like("name", "a.b%"), player("a.b(c)", 0L)));
+        assertFalse(this.evaluator.matches(like("name", "a.b%"), player("axb", 0L)));
+    }
+
+    @Test
+    void andAndOrCombineTheirConditions() {
+        Map<String, Object> player = player("Steve", 1500L);
+
+        assertTrue(this.evaluator.matches(and(eq("name", "Steve"), gt("score", 1000L)), player));
+        assertFalse(this.evaluator.matches(and(eq("name", "Steve"), gt("score", 2000L)), player));
+        assertTrue(this.evaluator.matches(or(eq("name", "Alex"), gt("score", 1000L)), player));
+        assertFalse(this.evaluator.matches(or(eq("name", "Alex"), gt("score", 2000L)), player));
+    }
+
+    @Test
+    void comparatorOrdersByEveryOrderInTurn() {
+        List<Map<String, Object>> players = new ArrayList<>(List.of(
+                player("Steve", 10L),
+                player("Alex", 20L),
+                player("Bob", 10L),
+                player(null, 5L)
+        ));
+
+        players.sort(this.evaluator.createComparator(List.of(new QueryOrder("score", false), new QueryOrder("name", true))));
+        assertEquals(List.of("Alex", "Bob", "Steve", "null"), names(players));
+
+        // Nulls come first in ascending order
+        players.sort(this.evaluator.createComparator(List.of(new QueryOrder("name", true))));
+        assertEquals(List.of("null", "Alex", "Bob", "Steve"), names(players));
+    }
+
+    private static Map<String, Object> player(String name, long score) {
+        Map<String, Object> player = new HashMap<>();
+        player.put("name", name);
+        player.put("score", score);
+
+        return player;
+    }
+
+    private static List<String> names(List<Map<String, Object>> players) {
+        return players.stream().map(player -> String.valueOf(player.get("name"))).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,99 @@
+package dev.vertcode.vertstorage.service;
+
+import dev.vertcode.vertstorage.StorageObject;
+import dev.vertcode.vertstorage.annotations.StorageField;
+import dev.vertcode.vertstorage.annotations.StorageId;
+import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import dev.vertcode.vertstorage.mapping.StorageClassModel;
+import dev.vertcode.vertstorage.mapping.StorageFieldModel;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeTrackerTest {
+
+    private final ChangeTracker<Profile> tracker = createTracker();
+
+    @Test
+    void objectsWithoutASnapshotHaveNoChangedFields() {
+        Profile profile = new Profile(1, "Steve");
+
+        assertNull(this.tracker.getChangedFields(profile, this.tracker.capture(profile)));
+    }
+
+    @Test
+    void unchangedObjectsHaveNoChangedFields() {
+        Profile profile = new Profile(1, "Steve");
+        this.tracker.snapshot(profile);
+
+        assertTrue(this.tracker.getChangedFields(profile, this.tracker.capture(profile)).isEmpty());
+    }
+
+    @Test
+    void changedFieldsAreDetected() {
+        Profile profile = new Profile(1, "Steve");
+        this.tracker.snapshot(profile);
+
+        profile.name = "Alex";
+
+        assertEquals(List.of("name"), names(this.tracker.getChangedFields(profile, this.tracker.capture(profile))));
+    }
+
+    @Test
+    void collectionsChangedInPlaceAreDetected() {
+        Profile profile = new Profile(1, "Steve");
+        this.tracker.snapshot(profile);
+
+        // The snapshot doesn't keep the list itself, otherwise it would change along with the object
+        profile.friends.add("Alex");
+
+        assertEquals(List.of("friends"), names(this.tracker.getChangedFields(profile, this.tracker.capture(profile))));
+    }
+
+    private static ChangeTracker<Profile> createTracker() {
+        List<StorageFieldModel> fields = new ArrayList<>(StorageClassModel.of(Profile.class).getFields());
+        fields.removeIf(StorageFieldModel::isId);
+
+        return new ChangeTracker<>(fields);
+    }
+
+    private static List<String> names(List<Field> fields) {
+        return fields.stream().map(Field::getName).collect(Collectors.toList());
+    }
+
+    @StorageMetadata(tableName = "profiles")
+    public static class Profile extends StorageObject<Integer> {
+
+        @StorageId
+        @StorageField(columnName = "id")
+        public int id;
+
+        @StorageField(columnName = "name")
+        public String name;
+
+        @StorageField(columnName = "friends")
+        public List<String> friends = new ArrayList<>();
+
+        public Profile() {
+        }
+
+        public Profile(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public Integer getIdentifier() {
+            return this.id;
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package dev.vertcode.vertstorage.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageTokenTest {
+
+    @Test
+    void tokenKeepsThePositionOfTheLastObject() {
+        PageToken token = new PageToken(1500L, 42);
+
+        assertEquals(1500L, token.getOrderValue());
+        assertEquals(42, token.getId());
+        assertEquals("PageToken{orderValue=1500, id=42}", token.toString());
+    }
+
+    @Test
+    void pageWithATokenHasANextPage() {
+        PageToken token = new PageToken("b", 2);
+        Page<String> page = new Page<>(List.of("a", "b"), token);
+
+        assertTrue(page.hasNext());
+        assertSame(token, page.getNextToken());
+
+        Page<String> lastPage = new Page<>(List.of("c"), null);
+        assertFalse(lastPage.hasNext());
+        assertNull(lastPage.getNextToken());
+    }
+
+    @Test
+    void itemsOfAPageCannotBeChanged() {
+        List<String> items = new ArrayList<>(List.of("a", "b"));
+        Page<String> page = new Page<>(items, null);
+
+        assertThrows(UnsupportedOperationException.class, () -> page.getItems().add("c"));
+    }
+
+}
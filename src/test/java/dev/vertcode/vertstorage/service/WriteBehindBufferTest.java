@@ -0,0 +1,136 @@
+package dev.vertcode.vertstorage.service;
+
+import dev.vertcode.vertstorage.StorageObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindBufferTest {
+
+    private final List<List<Item>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    void objectsMarkedDirtyTwiceAreWrittenOnceWithTheLatestState() {
+        WriteBehindBuffer<Item> buffer = new WriteBehindBuffer<>(this.batches::add, 1, TimeUnit.HOURS, 100);
+        Item second = new Item(1, "second");
+
+        buffer.markDirty(new Item(1, "first"));
+        buffer.markDirty(second);
+        buffer.markDirty(new Item(2, "other"));
+
+        assertEquals(2, buffer.size());
+        assertSame(second, buffer.getDirty(1));
+        assertEquals(2, buffer.flush());
+
+        assertEquals(1, this.batches.size());
+        assertEquals(0, buffer.size());
+        assertNull(buffer.getDirty(1));
+        buffer.close();
+    }
+
+    @Test
+    void flushesAreSplitIntoBatchesOfTheMaximumDirty() {
+        WriteBehindBuffer<Item> buffer = new WriteBehindBuffer<>(this.batches::add, 1, TimeUnit.HOURS, 2);
+        for (int id = 1; id <= 5; id++) {
+            buffer.markDirty(new Item(id, "value"));
+        }
+
+        // Some objects may have been written by a background flush already, but never more than 2 at once
+        buffer.close();
+
+        assertEquals(5, this.batches.stream().mapToInt(List::size).sum());
+        assertTrue(this.batches.stream().allMatch(batch -> batch.size() <= 2));
+    }
+
+    @Test
+    void reachingTheMaximumDirtyStartsAFlush() throws Exception {
+        CountDownLatch written = new CountDownLatch(1);
+        WriteBehindBuffer<Item> buffer = new WriteBehindBuffer<>(objects -> {
+            this.batches.add(objects);
+            written.countDown();
+        }, 1, TimeUnit.HOURS, 3);
+
+        for (int id = 1; id <= 3; id++) {
+            buffer.markDirty(new Item(id, "value"));
+        }
+
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        assertEquals(3, this.batches.get(0).size());
+        buffer.close();
+    }
+
+    @Test
+    void objectsOfAFailedBatchStayDirty() {
+        WriteBehindBuffer<Item> buffer = new WriteBehindBuffer<>(objects -> {
+            throw new IllegalStateException("The database is down!");
+        }, 1, TimeUnit.HOURS, 100);
+        buffer.markDirty(new Item(1, "value"));
+
+        assertThrows(IllegalStateException.class, buffer::flush);
+
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void discardedObjectsAreNotWritten() {
+        WriteBehindBuffer<Item> buffer = new WriteBehindBuffer<>(this.batches::add, 1, TimeUnit.HOURS, 100);
+        buffer.markDirty(new Item(1, "deleted"));
+        buffer.markDirty(new Item(2, "kept"));
+
+        buffer.discard(1);
+        buffer.close();
+
+        assertEquals(1, this.batches.size());
+        assertEquals(1, this.batches.get(0).size());
+        assertEquals(2, this.batches.get(0).get(0).getIdentifier());
+    }
+
+    @Test
+    void closeWritesTheDirtyObjects() {
+        WriteBehindBuffer<Item> buffer = new WriteBehindBuffer<>(this.batches::add, 1, TimeUnit.HOURS, 100);
+        buffer.markDirty(new Item(1, "value"));
+
+        buffer.close();
+
+        assertEquals(1, this.batches.size());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void theSettingsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindBuffer<Item>(this.batches::add, 0, TimeUnit.SECONDS, 100));
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindBuffer<Item>(this.batches::add, 1, TimeUnit.SECONDS, 0));
+    }
+
+    static class Item extends StorageObject<Integer> {
+
+        private final int id;
+        private final String value;
+
+        Item(int id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public Integer getIdentifier() {
+            return this.id;
+        }
+
+        @Override
+        public String toString() {
+            return "Item{id=" + this.id + ", value='" + this.value + "'}";
+        }
+
+    }
+
+}
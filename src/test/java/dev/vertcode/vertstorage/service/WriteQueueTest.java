@@ -0,0 +1,139 @@
+package dev.vertcode.vertstorage.service;
+
+import dev.vertcode.vertstorage.StorageObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteQueueTest {
+
+    private final List<List<Item>> batches = new CopyOnWriteArrayList<>();
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Test
+    void upsertsOfTheSameIdAreWrittenOnceWithTheLatestState() {
+        WriteQueue<Item> queue = new WriteQueue<>(this.batches::add, this.tasks::add, 500);
+        Item first = new Item(1, "first");
+        Item second = new Item(1, "second");
+
+        CompletableFuture<Void> firstFuture = queue.submit(first);
+        CompletableFuture<Void> secondFuture = queue.submit(second);
+        CompletableFuture<Void> otherFuture = queue.submit(new Item(2, "other"));
+
+        // Only one drain task is scheduled, no matter how many writes are queued
+        assertEquals(1, this.tasks.size());
+        assertEquals(2, queue.size());
+        runTasks();
+
+        assertEquals(1, this.batches.size());
+        assertEquals(2, this.batches.get(0).size());
+        assertSame(second, this.batches.get(0).get(0));
+        assertTrue(firstFuture.isDone() && secondFuture.isDone() && otherFuture.isDone());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void writesAreSplitIntoBatches() {
+        WriteQueue<Item> queue = new WriteQueue<>(this.batches::add, this.tasks::add, 2);
+        for (int id = 1; id <= 5; id++) {
+            queue.submit(new Item(id, "value"));
+        }
+
+        runTasks();
+
+        assertEquals(3, this.batches.size());
+        assertEquals(2, this.batches.get(0).size());
+        assertEquals(2, this.batches.get(1).size());
+        assertEquals(1, this.batches.get(2).size());
+    }
+
+    @Test
+    void discardedWritesAreNotWritten() {
+        WriteQueue<Item> queue = new WriteQueue<>(this.batches::add, this.tasks::add, 500);
+        CompletableFuture<Void> discarded = queue.submit(new Item(1, "deleted"));
+        queue.submit(new Item(2, "kept"));
+
+        queue.discard(1);
+        runTasks();
+
+        assertTrue(discarded.isDone());
+        assertEquals(1, this.batches.size());
+        assertEquals(2, this.batches.get(0).get(0).getIdentifier());
+    }
+
+    @Test
+    void flushWritesThePendingWritesOnTheCallingThread() {
+        // The executor never runs the drain task, like an executor that was shut down
+        WriteQueue<Item> queue = new WriteQueue<>(this.batches::add, task -> {
+        }, 500);
+        CompletableFuture<Void> future = queue.submit(new Item(1, "value"));
+
+        queue.flush();
+
+        assertTrue(future.isDone());
+        assertEquals(1, this.batches.size());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void failedWritesCompleteTheFuturesExceptionally() {
+        WriteQueue<Item> queue = new WriteQueue<>(objects -> {
+            throw new IllegalStateException("The database is down!");
+        }, this.tasks::add, 500);
+        CompletableFuture<Void> future = queue.submit(new Item(1, "value"));
+
+        runTasks();
+
+        ExecutionException ex = assertThrows(ExecutionException.class, future::get);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+
+        // The queue keeps working after a failed batch
+        CompletableFuture<Void> next = queue.submit(new Item(2, "value"));
+        assertFalse(next.isDone());
+        assertEquals(1, this.tasks.size());
+    }
+
+    private void runTasks() {
+        List<Runnable> pending = new ArrayList<>(this.tasks);
+        this.tasks.clear();
+
+        for (Runnable task : pending) {
+            task.run();
+        }
+    }
+
+    static class Item extends StorageObject<Integer> {
+
+        private final int id;
+        private final String value;
+
+        Item(int id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public Integer getIdentifier() {
+            return this.id;
+        }
+
+        @Override
+        public String toString() {
+            return "Item{id=" + this.id + ", value='" + this.value + "'}";
+        }
+
+    }
+
+}
@@ -0,0 +1,488 @@
+package dev.vertcode.vertstorage.service.json;
+
+import dev.vertcode.vertstorage.StorageObject;
+import dev.vertcode.vertstorage.annotations.StorageField;
+import dev.vertcode.vertstorage.annotations.StorageId;
+import dev.vertcode.vertstorage.annotations.StorageMetadata;
+import dev.vertcode.vertstorage.invalidation.InvalidationBus;
+import dev.vertcode.vertstorage.invalidation.InvalidationMessage;
+import dev.vertcode.vertstorage.invalidation.LoopbackInvalidationChannel;
+import dev.vertcode.vertstorage.query.Conditions;
+import dev.vertcode.vertstorage.query.Query;
+import dev.vertcode.vertstorage.service.CacheWarmup;
+import dev.vertcode.vertstorage.service.Page;
+import dev.vertcode.vertstorage.service.StorageExecutors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonStorageServiceTest {
+
+    @TempDir
+    File dataFolder;
+
+    @Test
+    void findAllByFieldComparesValuesByEquality() {
+        JsonStorageService<Player> service = createService();
+        for (int id = 1; id <= 10; id++) {
+            service.upsertInDatabase(new Player(id, id % 2 == 0 ? "red" : "blue", id * 1000L));
+        }
+
+        // A new String instance, so an identity comparison would match nothing
+        List<Player> players = service.findAllInDatabase("team", new String("red"));
+
+        assertEquals(5, players.size());
+        assertTrue(players.stream().allMatch(player -> player.team.equals("red")));
+    }
+
+    @Test
+    void findOneByFieldComparesValuesByEquality() {
+        JsonStorageService<Player> service = createService();
+        service.upsertInDatabase(new Player(1, "blue", 1000L));
+        service.upsertInDatabase(new Player(2, "red", 2000L));
+
+        Player player = service.findOneInDatabase("team", new String("red"));
+
+        assertNotNull(player);
+        assertEquals(2, player.id);
+    }
+
+    @Test
+    void streamAllReadsEveryObject() {
+        JsonStorageService<Player> service = createService();
+        for (int id = 1; id <= 20; id++) {
+            service.upsertInDatabase(new Player(id, id % 4 == 0 ? "red" : "blue", id));
+        }
+
+        try (Stream<Player> stream = service.streamAll()) {
+            assertEquals(20, stream.count());
+        }
+
+        // The stored values are never the same instance as the given value, they're compared by equality
+        try (Stream<Player> stream = service.streamAll("team", new String("red"))) {
+            assertEquals(Set.of(4, 8, 12, 16, 20), stream.map(Player::getIdentifier).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    void streamAllByAnUnknownFieldIsRejected() {
+        JsonStorageService<Player> service = createService();
+
+        assertThrows(IllegalArgumentException.class, () -> service.streamAll("unknown", "value"));
+    }
+
+    @Test
+    void pagesByIdReturnEveryObjectOnce() {
+        JsonStorageService<Player> service = createService();
+        for (int id = 1; id <= 25; id++) {
+            service.upsertInDatabase(new Player(id, "red", id));
+        }
+
+        List<Integer> ids = collectPages(service, "id", 10);
+
+        assertEquals(IntStream.rangeClosed(1, 25).boxed().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void pagesByANonUniqueFieldAreOrderedById() {
+        JsonStorageService<Player> service = createService();
+        for (int id = 1; id <= 12; id++) {
+            // Every score is shared by three players, so pages have to continue in the middle of a score
+            service.upsertInDatabase(new Player(id, "red", (12 - id) / 3));
+        }
+
+        List<Integer> ids = collectPages(service, "score", 5);
+
+        assertEquals(List.of(10, 11, 12, 7, 8, 9, 4, 5, 6, 1, 2, 3), ids);
+    }
+
+    @Test
+    void pagesNeedAPositiveLimitAndAKnownField() {
+        JsonStorageService<Player> service = createService();
+
+        assertThrows(IllegalArgumentException.class, () -> service.findPage(0, "id"));
+        assertThrows(IllegalArgumentException.class, () -> service.findPage(10, "unknown"));
+    }
+
+    @Test
+    void queriesFilterOrderAndLimitTheObjects() {
+        JsonStorageService<Player> service = createService();
+        for (int id = 1; id <= 20; id++) {
+            service.upsertInDatabase(new Player(id, id % 2 == 0 ? "red" : "blue", id * 10L));
+        }
+
+        List<Player> players = service.query(Query.where(Conditions.and(Conditions.eq("team", "red"), Conditions.gt("score", 50)))
+                .orderByDescending("score")
+                .limit(3));
+
+        assertEquals(List.of(20, 18, 16), players.stream().map(Player::getIdentifier).collect(Collectors.toList()));
+    }
+
+    @Test
+    void projectionsOnlyLoadTheSelectedFields() {
+        JsonStorageService<Player> service = createService();
+        service.upsertInDatabase(new Player(1, "red", 1500));
+
+        Player partial = service.findPartial(1, "score");
+
+        assertNotNull(partial);
+        assertTrue(partial.isPartial());
+        assertEquals(1, partial.id);
+        assertEquals(1500, partial.score);
+        assertNull(partial.team);
+
+        // A partial object would overwrite the fields it doesn't have, so it's never cached or upserted
+        assertFalse(service.getCache().isCached(1));
+        assertThrows(IllegalArgumentException.class, () -> service.upsert(partial));
+        assertEquals("red", service.find(1).team);
+    }
+
+    @Test
+    void warmUpByFieldCachesTheMatchingObjects() {
+        JsonStorageService<Player> service = createService();
+        for (int id = 1; id <= 10; id++) {
+            service.upsertInDatabase(new Player(id, id <= 5 ? "red" : "blue", id * 1000L));
+        }
+
+        // The stored values are read back from the files, so they're never the same instance as the given value
+        int cached = service.warmUpCache(CacheWarmup.byField("team", "red").chunkSize(2));
+
+        assertEquals(5, cached);
+        for (int id = 1; id <= 5; id++) {
+            assertTrue(service.getCache().isCached(id));
+        }
+        assertEquals(5, service.getCache().size());
+    }
+
+    @Test
+    void warmUpAllCachesEveryObjectInChunks() {
+        JsonStorageService<Player> service = createService();
+        for (int id = 1; id <= 25; id++) {
+            service.upsertInDatabase(new Player(id, "red", id));
+        }
+
+        int cached = service.warmUpCache(CacheWarmup.all().chunkSize(4));
+
+        assertEquals(25, cached);
+        assertEquals(25, service.getCache().size());
+        assertNotNull(service.find(25));
+    }
+
+    @Test
+    void indexedLookupsAreAnsweredFromAnAuthoritativeCache() {
+        JsonStorageService<Member> service = new JsonStorageService<>(Member.class, this.dataFolder);
+        service.startupService();
+        for (int id = 1; id <= 10; id++) {
+            service.upsertInDatabase(new Member(id, id <= 4 ? "red" : "blue"));
+        }
+
+        service.warmUpCache(CacheWarmup.all());
+        assertTrue(service.isCacheAuthoritative());
+        assertEquals(4, service.findAll("team", "red").size());
+
+        // Objects changed in place are reindexed when they're upserted
+        Member member = service.find(1);
+        member.team = "blue";
+        service.upsert(member);
+
+        assertEquals(3, service.findAll("team", "red").size());
+        assertEquals(7, service.findAll("team", "blue").size());
+        assertEquals("blue", service.findOne("team", "blue").team);
+    }
+
+    @Test
+    void warmUpFinishesOnASingleThreadExecutor() throws Exception {
+        JsonStorageService<Player> service = createService();
+        ExecutorService executor = StorageExecutors.boundedIoPool(1);
+        service.setExecutor(executor);
+        for (int id = 1; id <= 25; id++) {
+            service.upsertInDatabase(new Player(id, "red", id));
+        }
+
+        // The stream is read on the only thread of the executor, so that thread has to cache the chunks too
+        int cached = service.warmUpCacheAsync(CacheWarmup.all().chunkSize(2).executor(executor)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(25, cached);
+        assertEquals(25, service.getCache().size());
+
+        executor.shutdown();
+    }
+
+    @Test
+    void findManyOnlyQueriesTheIdsThatAreNotCached() {
+        List<Object> queriedIds = new ArrayList<>();
+        JsonStorageService<Player> service = new JsonStorageService<>(Player.class, this.dataFolder) {
+            @Override
+            public List<Player> findManyInDatabase(Collection<?> ids) {
+                queriedIds.addAll(ids);
+                return super.findManyInDatabase(ids);
+            }
+        };
+        service.startupService();
+        for (int id = 1; id <= 6; id++) {
+            service.upsertInDatabase(new Player(id, "red", id));
+        }
+        service.find(1);
+        service.find(2);
+
+        List<Player> players = service.findMany(List.of(1, 2, 3, 4, 99));
+
+        assertEquals(Set.of(1, 2, 3, 4), players.stream().map(Player::getIdentifier).collect(Collectors.toSet()));
+        assertEquals(List.of(3, 4, 99), queriedIds);
+        // The queried objects are cached, so the next lookup doesn't query them again
+        assertTrue(service.getCache().isCached(3));
+        assertTrue(service.getCache().isCached(4));
+    }
+
+    @Test
+    void upsertAllAndDeleteAllKeepTheCacheInSync() {
+        JsonStorageService<Player> service = createService();
+        List<Player> players = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            players.add(new Player(id, "red", id));
+        }
+
+        service.upsertAll(players);
+        assertEquals(10, service.findManyInDatabase(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)).size());
+
+        Player cached = service.find(1);
+        service.deleteAll(players.subList(0, 5));
+
+        assertFalse(service.getCache().isCached(cached.getIdentifier()));
+        assertNull(service.find(1));
+        assertEquals(5, service.findAllInDatabase().size());
+    }
+
+    @Test
+    void batchOperationsDoNotWaitOnTheirOwnExecutor() throws Exception {
+        JsonStorageService<Player> service = createService();
+        ExecutorService executor = StorageExecutors.boundedIoPool(1);
+        service.setExecutor(executor);
+
+        List<Player> players = new ArrayList<>();
+        for (int id = 1; id <= 20; id++) {
+            players.add(new Player(id, "red", id));
+        }
+
+        // With a single thread the batch can only finish if the calling thread does the work itself
+        List<Integer> ids = players.stream().map(Player::getIdentifier).collect(Collectors.toList());
+        Future<List<Player>> found = executor.submit(() -> {
+            service.upsertAllInDatabase(players);
+            return service.findManyInDatabase(ids);
+        });
+
+        assertEquals(ids, found.get(10, TimeUnit.SECONDS).stream().map(Player::getIdentifier).collect(Collectors.toList()));
+
+        service.deleteAllInDatabase(players.subList(0, 10));
+        assertEquals(10, service.findManyInDatabase(ids).size());
+
+        executor.shutdown();
+    }
+
+    @Test
+    void dirtyObjectsAreWrittenWhenFlushed() {
+        JsonStorageService<Player> service = createService();
+        service.enableWriteBehind(1, TimeUnit.HOURS, 100);
+
+        Player player = new Player(1, "red", 10);
+        service.markDirty(player);
+        player.score = 20;
+        service.markDirty(player);
+
+        // The dirty object is cached, but not written yet
+        assertEquals(1, service.getDirtyCount());
+        assertNull(service.findInDatabase(1));
+        assertEquals(20, service.find(1).score);
+
+        assertEquals(1, service.flushDirty());
+        assertEquals(0, service.getDirtyCount());
+        assertEquals(20, service.findInDatabase(1).score);
+
+        // Disabling write-behind writes the remaining dirty objects
+        service.markDirty(new Player(2, "blue", 30));
+        service.disableWriteBehind();
+        assertNotNull(service.findInDatabase(2));
+    }
+
+    @Test
+    void cacheSnapshotIsRestoredAfterARestart() {
+        File snapshotFile = new File(this.dataFolder, "snapshot.bin");
+        JsonStorageService<Player> service = new JsonStorageService<>(Player.class, this.dataFolder);
+        service.enableCacheSnapshot(snapshotFile.toPath(), false);
+        service.startupService();
+        for (int id = 1; id <= 5; id++) {
+            service.upsertInDatabase(new Player(id, "red", id));
+            service.find(id);
+        }
+        service.shutdownService();
+        assertTrue(snapshotFile.exists());
+
+        JsonStorageService<Player> restarted = new JsonStorageService<>(Player.class, this.dataFolder);
+        restarted.enableCacheSnapshot(snapshotFile.toPath(), false);
+        restarted.startupService();
+
+        // The snapshot is deleted once it's restored, so it's never restored twice
+        assertEquals(5, restarted.getCache().size());
+        assertEquals(3, restarted.getCache().get(3).score);
+        assertFalse(snapshotFile.exists());
+    }
+
+    @Test
+    void upsertsWithoutChangesAreNotWrittenOrPublished() {
+        List<InvalidationMessage> published = new CopyOnWriteArrayList<>();
+        InvalidationBus invalidationBus = new InvalidationBus(new LoopbackInvalidationChannel() {
+            @Override
+            public void publish(InvalidationMessage message) {
+                published.add(message);
+                super.publish(message);
+            }
+        });
+        JsonStorageService<Player> service = createService();
+        service.enableChangeTracking();
+        service.enableInvalidation(invalidationBus);
+        service.upsertInDatabase(new Player(1, "red", 10));
+
+        Player player = service.find(1);
+        service.upsert(player);
+        invalidationBus.flush();
+        assertTrue(published.isEmpty());
+
+        player.score = 20;
+        service.upsert(player);
+        invalidationBus.flush();
+        assertEquals(1, published.size());
+        assertEquals(20, service.findInDatabase(1).score);
+
+        invalidationBus.close();
+    }
+
+    @Test
+    void nextIdsContinueAfterARestart() {
+        JsonStorageService<Player> service = createService();
+        service.setIdBlockSize(5);
+        service.upsertInDatabase(new Player(10, "red", 0));
+
+        // The first block starts after the highest id in the table
+        assertEquals(11, service.getNextId());
+        assertEquals(12, service.getNextId());
+
+        // The rest of the reserved block is skipped, the ids are never handed out twice
+        JsonStorageService<Player> restarted = createService();
+        assertTrue((Integer) restarted.getNextId() > 15);
+    }
+
+    @Test
+    void sizeBoundedServiceKeepsItsCacheWithinTheMaximumSize() {
+        JsonStorageService<Player> service = new JsonStorageService<>(Player.class, this.dataFolder, 10);
+        service.startupService();
+        for (int id = 1; id <= 30; id++) {
+            service.upsertInDatabase(new Player(id, "red", id));
+        }
+
+        // Every find loads the object into the cache
+        for (int id = 1; id <= 30; id++) {
+            assertNotNull(service.find(id));
+        }
+        service.getCache().cleanUp();
+
+        assertEquals(10, service.getCache().size());
+        assertEquals(10, service.getCache().getMaximumSize());
+        // Evicted objects are loaded again
+        assertNotNull(service.find(1));
+    }
+
+    private List<Integer> collectPages(JsonStorageService<Player> service, String orderByField, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        Page<Player> page = service.findPage(limit, orderByField);
+        while (true) {
+            assertTrue(page.getItems().size() <= limit);
+            page.getItems().forEach(player -> ids.add(player.id));
+            if (!page.hasNext()) {
+                return ids;
+            }
+
+            page = service.findPage(page.getNextToken(), limit, orderByField);
+        }
+    }
+
+    private JsonStorageService<Player> createService() {
+        JsonStorageService<Player> service = new JsonStorageService<>(Player.class, this.dataFolder);
+        service.startupService();
+
+        return service;
+    }
+
+    @StorageMetadata(tableName = "members")
+    public static class Member extends StorageObject<Integer> {
+
+        @StorageId
+        @StorageField(columnName = "id")
+        public int id;
+
+        @StorageField(columnName = "team", indexed = true)
+        public String team;
+
+        public Member() {
+        }
+
+        public Member(int id, String team) {
+            this.id = id;
+            this.team = team;
+        }
+
+        @Override
+        public Integer getIdentifier() {
+            return this.id;
+        }
+
+    }
+
+    @StorageMetadata(tableName = "players")
+    public static class Player extends StorageObject<Integer> {
+
+        @StorageId
+        @StorageField(columnName = "id")
+        public int id;
+
+        @StorageField(columnName = "team")
+        public String team;
+
+        @StorageField(columnName = "score")
+        public long score;
+
+        public Player() {
+        }
+
+        public Player(int id, String team, long score) {
+            this.id = id;
+            this.team = team;
+            this.score = score;
+        }
+
+        @Override
+        public Integer getIdentifier() {
+            return this.id;
+        }
+
+    }
+
+}